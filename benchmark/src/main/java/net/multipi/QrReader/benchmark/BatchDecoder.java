@@ -0,0 +1,417 @@
+package net.multipi.QrReader.benchmark;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import net.multipi.QrReader.BinarizerSelector;
+import net.multipi.QrReader.DecodeContext;
+import net.multipi.QrReader.DecodeMetrics;
+import net.multipi.QrReader.DecodeProfile;
+import net.multipi.QrReader.LargeImageDecoder;
+import net.multipi.QrReader.LatencyHistogram;
+import net.multipi.QrReader.MappedLuminanceSource;
+import net.multipi.QrReader.PreviewGeometry;
+import net.multipi.QrReader.PrintStreamReporter;
+import net.multipi.QrReader.ResolutionLevel;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Headless decoder for captured frames, for regression runs without a device. Decodes raw NV21
+ * preview dumps and PNG/JPEG images with the same {@link DecodeContext} setup as the app's
+ * recognizer (default resolution levels and binarizer selection, full frame or the app's framing
+ * rect), one context per worker thread. Writes one JSON line per file to stdout and a summary to stderr.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar net.multipi.QrReader.benchmark.BatchDecoder [options] path...
+ *   --size WxH     dimensions of raw frames whose file name has no "_WxH" part
+ *   --screen WxH   decode only the framing rect the app would use on this screen
+ *   --threads N    worker threads, all cores by default
+ *   --batch        find every code in the frame, like the app's batch mode
+ *   --profile NAME decode profile, QR by default like the app
+ * </pre>
+ *
+ * Directories are searched recursively. Raw frames are {@code .nv21}, {@code .yuv} or
+ * {@code .raw} files; only their Y plane is read.
+ *
+ * Binary PGM images, and raw images of {@value #LARGE_IMAGE_PIXELS} pixels or more, such as
+ * document scans, are not read onto the heap: they are memory-mapped and decoded tile by tile with
+ * a {@link LargeImageDecoder} on the worker thread, so each worker only holds one tile at a time
+ * whatever the image size. {@code --screen} does not apply to them.
+ */
+public final class BatchDecoder {
+
+    private static final Pattern SIZE = Pattern.compile("(\\d+)x(\\d+)");
+    private static final Pattern SIZE_IN_NAME = Pattern.compile("_(\\d+)x(\\d+)(?:[_.]|$)");
+    private static final long LARGE_IMAGE_PIXELS = 16L * 1024 * 1024;
+    private static final int LARGE_IMAGE_TILE_SIZE = 1024;
+    private static final float LARGE_IMAGE_TILE_OVERLAP = 0.25f;
+
+    private final int defaultWidth;
+    private final int defaultHeight;
+    private final int screenWidth;
+    private final int screenHeight;
+    private final boolean batch;
+    private final DecodeProfile profile;
+    private final PrintStream out;
+    private final ResolutionLevel[] levels = ResolutionLevel.createDefaultLevels();
+    private final BinarizerSelector binarizerSelector = BinarizerSelector.createDefault();
+    private final DecodeMetrics metrics = new DecodeMetrics();
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+    private final LatencyHistogram readLatency = new LatencyHistogram();
+    private final AtomicLong fileCount = new AtomicLong();
+    private final AtomicLong decodedCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong largeCount = new AtomicLong();
+    private final LargeImageDecoder largeImageDecoder;
+
+    private final ThreadLocal<DecodeContext> contexts = new ThreadLocal<DecodeContext>() {
+        @Override
+        protected DecodeContext initialValue() {
+            DecodeContext context = new DecodeContext(null, levels, profile);
+            context.setBinarizerSelector(binarizerSelector);
+            context.setMetrics(metrics);
+            return context;
+        }
+    };
+
+    BatchDecoder(int defaultWidth, int defaultHeight, int screenWidth, int screenHeight, boolean batch, DecodeProfile profile,
+                 PrintStream out) {
+        this.defaultWidth = defaultWidth;
+        this.defaultHeight = defaultHeight;
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        this.batch = batch;
+        this.profile = profile;
+        this.out = out;
+        // The file workers already use every core, so each one decodes its own tiles.
+        largeImageDecoder = new LargeImageDecoder(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        }, LARGE_IMAGE_TILE_SIZE, LARGE_IMAGE_TILE_OVERLAP, profile);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int[] size = {0, 0};
+        int[] screen = {0, 0};
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean batch = false;
+        DecodeProfile profile = DecodeProfile.QR;
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--size".equals(arg) && i + 1 < args.length) {
+                size = parseSize(args[++i]);
+            } else if ("--screen".equals(arg) && i + 1 < args.length) {
+                screen = parseSize(args[++i]);
+            } else if ("--threads".equals(arg) && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if ("--batch".equals(arg)) {
+                batch = true;
+            } else if ("--profile".equals(arg) && i + 1 < args.length) {
+                profile = DecodeProfile.forName(args[++i]);
+                if (profile == null) {
+                    usage("Unknown profile " + args[i]);
+                }
+            } else if (arg.startsWith("--")) {
+                usage("Unknown option " + arg);
+            } else {
+                collect(new File(arg), files);
+            }
+        }
+        if (size == null || screen == null || threads < 1) {
+            usage("Bad option value");
+        }
+        if (files.isEmpty()) {
+            usage("No input files");
+        }
+        BatchDecoder decoder = new BatchDecoder(size[0], size[1], screen[0], screen[1], batch, profile, System.out);
+        decoder.run(files, threads, System.err);
+    }
+
+    void run(List<File> files, int threads, PrintStream summary) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        metrics.startSession(System.nanoTime());
+        long start = System.nanoTime();
+        for (final File file : files) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    decodeFile(file);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        double seconds = (System.nanoTime() - start) / 1.0e9;
+        out.flush();
+
+        long n = fileCount.get();
+        summary.println(String.format(Locale.US, "%d files, %d decoded (%.1f%%), %d errors in %.2f s, %.1f files/s, %d worker(s)",
+                n, decodedCount.get(), n == 0 ? 0.0 : decodedCount.get() * 100.0 / n, errorCount.get(),
+                seconds, n / seconds, threads));
+        summary.println("profile: " + profile);
+        summary.println("read: " + readLatency);
+        summary.println("decode: " + decodeLatency);
+        for (ResolutionLevel level : levels) {
+            summary.println("level " + level);
+        }
+        summary.println("binarizers: " + binarizerSelector);
+        if (largeCount.get() > 0) {
+            summary.println("large images: " + largeCount.get() + ", " + largeImageDecoder);
+        }
+        new PrintStreamReporter(summary).report(metrics);
+    }
+
+    private void decodeFile(File file) {
+        fileCount.incrementAndGet();
+        StringBuilder line = new StringBuilder(256);
+        line.append("{\"file\":");
+        appendString(line, file.getPath());
+        try {
+            long readStart = System.nanoTime();
+            int[] dimensions = new int[2];
+            MappedLuminanceSource mapped = null;
+            byte[] luminance = null;
+            if (isPgm(file)) {
+                mapped = MappedLuminanceSource.openPgm(file);
+                dimensions[0] = mapped.getWidth();
+                dimensions[1] = mapped.getHeight();
+            } else if (isRaw(file)) {
+                rawSize(file, dimensions);
+                if ((long) dimensions[0] * dimensions[1] >= LARGE_IMAGE_PIXELS) {
+                    mapped = MappedLuminanceSource.open(file, dimensions[0], dimensions[1], 0);
+                } else {
+                    luminance = readRaw(file, dimensions[0], dimensions[1]);
+                }
+            } else {
+                luminance = readImage(file, dimensions);
+            }
+            long readNanos = System.nanoTime() - readStart;
+            readLatency.record(readNanos);
+
+            int width = dimensions[0];
+            int height = dimensions[1];
+            long decodeStart = System.nanoTime();
+            Result[] results;
+            if (mapped != null) {
+                largeCount.incrementAndGet();
+                if (batch) {
+                    results = largeImageDecoder.decodeAll(mapped);
+                } else {
+                    Result result = largeImageDecoder.decode(mapped);
+                    results = result == null ? new Result[0] : new Result[] {result};
+                }
+            } else {
+                DecodeContext context = contexts.get();
+                if (screenWidth > 0) {
+                    context.setGeometry(PreviewGeometry.create(width, height, screenWidth, screenHeight));
+                } else {
+                    context.setGeometry(width, height, 0, 0, width, height);
+                }
+                if (batch) {
+                    results = context.decodeMultiple(luminance);
+                } else {
+                    Result result = context.decode(luminance);
+                    results = result == null ? new Result[0] : new Result[] {result};
+                }
+            }
+            long decodeNanos = System.nanoTime() - decodeStart;
+            decodeLatency.record(decodeNanos);
+            if (results.length > 0) {
+                decodedCount.incrementAndGet();
+            }
+
+            line.append(",\"width\":").append(width).append(",\"height\":").append(height)
+                    .append(",\"status\":\"").append(results.length > 0 ? "decoded" : "none").append('"')
+                    .append(",\"readMillis\":").append(String.format(Locale.US, "%.3f", readNanos / 1.0e6))
+                    .append(",\"decodeMillis\":").append(String.format(Locale.US, "%.3f", decodeNanos / 1.0e6))
+                    .append(",\"results\":[");
+            for (int i = 0; i < results.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                appendResult(line, results[i]);
+            }
+            line.append(']');
+        } catch (IOException e) {
+            errorCount.incrementAndGet();
+            line.append(",\"status\":\"error\",\"error\":");
+            appendString(line, e.getMessage());
+        } catch (RuntimeException e) {
+            errorCount.incrementAndGet();
+            line.append(",\"status\":\"error\",\"error\":");
+            appendString(line, e.toString());
+        }
+        line.append('}');
+        synchronized (out) {
+            out.println(line);
+        }
+    }
+
+    /**
+     * Stores the size of the raw frame in {@code file} in {@code dimensions}.
+     */
+    private void rawSize(File file, int[] dimensions) throws IOException {
+        int width = defaultWidth;
+        int height = defaultHeight;
+        Matcher matcher = SIZE_IN_NAME.matcher(file.getName());
+        if (matcher.find()) {
+            width = Integer.parseInt(matcher.group(1));
+            height = Integer.parseInt(matcher.group(2));
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IOException("Unknown frame size; name the file *_WxH.nv21 or pass --size");
+        }
+        if (file.length() < (long) width * height) {
+            throw new IOException("File is smaller than a " + width + 'x' + height + " Y plane");
+        }
+        dimensions[0] = width;
+        dimensions[1] = height;
+    }
+
+    private static byte[] readRaw(File file, int width, int height) throws IOException {
+        byte[] luminance = new byte[width * height];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(luminance);
+        } finally {
+            in.close();
+        }
+        return luminance;
+    }
+
+    private static byte[] readImage(File file, int[] dimensions) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        if (image == null) {
+            throw new IOException("Unsupported image format");
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+        byte[] luminance = new byte[width * height];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                int pixel = row[x];
+                // Same weighting as ZXing's RGBLuminanceSource
+                luminance[offset + x] = (byte) ((((pixel >> 16) & 0xff) + ((pixel >> 7) & 0x1fe) + (pixel & 0xff)) >> 2);
+            }
+        }
+        dimensions[0] = width;
+        dimensions[1] = height;
+        return luminance;
+    }
+
+    private static void appendResult(StringBuilder line, Result result) {
+        line.append("{\"text\":");
+        appendString(line, result.getText());
+        line.append(",\"format\":\"").append(result.getBarcodeFormat()).append("\",\"points\":[");
+        ResultPoint[] points = result.getResultPoints();
+        if (points != null) {
+            for (int i = 0; i < points.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append(String.format(Locale.US, "[%.1f,%.1f]", points[i].getX(), points[i].getY()));
+            }
+        }
+        line.append("]}");
+    }
+
+    private static void appendString(StringBuilder line, String value) {
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+    private static boolean isRaw(File file) {
+        String name = file.getName().toLowerCase(Locale.US);
+        return name.endsWith(".nv21") || name.endsWith(".yuv") || name.endsWith(".raw");
+    }
+
+    private static boolean isPgm(File file) {
+        return file.getName().toLowerCase(Locale.US).endsWith(".pgm");
+    }
+
+    private static boolean isSupported(File file) {
+        String name = file.getName().toLowerCase(Locale.US);
+        return isRaw(file) || isPgm(file) || name.endsWith(".png") || name.endsWith(".jpg") || name.endsWith(".jpeg");
+    }
+
+    private static void collect(File file, List<File> files) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    collect(child, files);
+                }
+            }
+        } else if (isSupported(file)) {
+            files.add(file);
+        }
+    }
+
+    private static int[] parseSize(String value) {
+        Matcher matcher = SIZE.matcher(value);
+        if (!matcher.matches()) {
+            return null;
+        }
+        return new int[] {Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))};
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: BatchDecoder [--size WxH] [--screen WxH] [--threads N] [--batch] [--profile NAME] path...");
+        System.exit(2);
+    }
+}
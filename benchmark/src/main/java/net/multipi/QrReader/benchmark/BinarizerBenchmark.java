@@ -0,0 +1,65 @@
+package net.multipi.QrReader.benchmark;
+
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+import net.multipi.QrReader.PlanarYUVLuminanceSource;
+import net.multipi.QrReader.ReusableHybridBinarizer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link HybridBinarizer} against {@link ReusableHybridBinarizer} on the same crop, with the
+ * global histogram binarizer for scale. Both hybrid variants start from a buffered source, as in
+ * DecodeContext, so the difference is the binarizer alone. Run with {@code -prof gc}: the reusable
+ * one should allocate nothing per op once its scratch is sized, while ZXing's allocates the cropped
+ * matrix, the block arrays and the black matrix every time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BinarizerBenchmark {
+
+    private static final int CODE_SIZE = 240;
+
+    @Param({"FULL", "FRAMING", "TIGHT"})
+    public SyntheticFrames.Crop crop;
+
+    private PlanarYUVLuminanceSource source;
+    private final ReusableHybridBinarizer.Scratch scratch = new ReusableHybridBinarizer.Scratch();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        byte[] frame = SyntheticFrames.nv21(CODE_SIZE, 4, 1, 42L);
+        int[] rect = crop.rect(CODE_SIZE);
+        source = new PlanarYUVLuminanceSource(frame, SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                rect[0], rect[1], rect[2], rect[3], false, new byte[rect[2] * rect[3]]);
+    }
+
+    @Benchmark
+    public BitMatrix hybrid() throws NotFoundException {
+        return new HybridBinarizer(source).getBlackMatrix();
+    }
+
+    @Benchmark
+    public BitMatrix reusableHybrid() throws NotFoundException {
+        return new ReusableHybridBinarizer(source, scratch).getBlackMatrix();
+    }
+
+    @Benchmark
+    public BitMatrix globalHistogram() throws NotFoundException {
+        return new GlobalHistogramBinarizer(source).getBlackMatrix();
+    }
+}
@@ -0,0 +1,88 @@
+package net.multipi.QrReader.benchmark;
+
+import com.google.zxing.Result;
+import net.multipi.QrReader.BinarizerSelector;
+import net.multipi.QrReader.DecodeContext;
+import net.multipi.QrReader.ResolutionLevel;
+import net.multipi.QrReader.ResultCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The full frame-to-result path a decode worker runs: luminance source, HybridBinarizer and
+ * {@code MultiFormatReader.decodeWithState}, using the same {@link DecodeContext} as the app.
+ * Run with {@code -prof gc} to get bytes allocated per op ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecodeBenchmark {
+
+    private DecodeContext context;
+    private DecodeContext multiResolutionContext;
+    private DecodeContext adaptiveContext;
+    private DecodeContext cachedContext;
+    private byte[] frame;
+
+    @Setup(Level.Trial)
+    public void setUp(FrameState state) {
+        context = new DecodeContext(null);
+        context.setGeometry(SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                state.left, state.top, state.width, state.height);
+        multiResolutionContext = new DecodeContext(null,
+                new ResolutionLevel[] {new ResolutionLevel(2), new ResolutionLevel(1)});
+        multiResolutionContext.setGeometry(SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                state.left, state.top, state.width, state.height);
+        adaptiveContext = new DecodeContext(null);
+        adaptiveContext.setBinarizerSelector(BinarizerSelector.createDefault());
+        adaptiveContext.setGeometry(SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                state.left, state.top, state.width, state.height);
+        cachedContext = new DecodeContext(null);
+        cachedContext.setResultCache(ResultCache.createDefault());
+        cachedContext.setGeometry(SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                state.left, state.top, state.width, state.height);
+        frame = state.frame;
+    }
+
+    @Benchmark
+    public Result decodeWithState() {
+        return context.decode(frame);
+    }
+
+    /**
+     * 2x subsampled pass first, full resolution only when the coarse pass saw finder patterns.
+     */
+    @Benchmark
+    public Result decodeMultiResolution() {
+        return multiResolutionContext.decode(frame);
+    }
+
+    /**
+     * Full resolution with {@link BinarizerSelector}: the global histogram binarizer first while it
+     * keeps winning, the hybrid one as fallback.
+     */
+    @Benchmark
+    public Result decodeAdaptiveBinarizer() {
+        return adaptiveContext.decode(frame);
+    }
+
+    /**
+     * The same frame over and over with a {@link ResultCache}, as when a code is held in view: mostly
+     * cache hits, each confirmed by decoding just the code's region at full resolution. Frames
+     * without a code always miss.
+     */
+    @Benchmark
+    public Result decodeCached() {
+        return cachedContext.decode(frame);
+    }
+}
@@ -0,0 +1,42 @@
+package net.multipi.QrReader.benchmark;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * One synthetic preview frame per parameter combination, shared by all benchmark threads.
+ */
+@State(Scope.Benchmark)
+public class FrameState {
+
+    @Param({"120", "240", "336"})
+    public int codeSize;
+
+    @Param({"0", "4", "8"})
+    public double noise;
+
+    @Param({"0", "1", "2"})
+    public int blur;
+
+    @Param({"FULL", "FRAMING", "TIGHT"})
+    public SyntheticFrames.Crop crop;
+
+    public byte[] frame;
+    public int left;
+    public int top;
+    public int width;
+    public int height;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        frame = SyntheticFrames.nv21(codeSize, noise, blur, 42L);
+        int[] rect = crop.rect(codeSize);
+        left = rect[0];
+        top = rect[1];
+        width = rect[2];
+        height = rect[3];
+    }
+}
@@ -0,0 +1,80 @@
+package net.multipi.QrReader.benchmark;
+
+import net.multipi.QrReader.PlanarYUVLuminanceSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Access patterns of {@link PlanarYUVLuminanceSource} as seen by the binarizers. Run with
+ * {@code -prof gc} to get bytes allocated per op ({@code gc.alloc.rate.norm}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LuminanceSourceBenchmark {
+
+    private PlanarYUVLuminanceSource source;
+    private PlanarYUVLuminanceSource bufferedSource;
+    private byte[] row;
+    private int width;
+    private int height;
+
+    @Setup(Level.Trial)
+    public void setUp(FrameState state) {
+        source = new PlanarYUVLuminanceSource(state.frame, SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                state.left, state.top, state.width, state.height, false);
+        bufferedSource = new PlanarYUVLuminanceSource(state.frame, SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                state.left, state.top, state.width, state.height, false, new byte[state.width * state.height]);
+        row = new byte[state.width];
+        width = state.width;
+        height = state.height;
+    }
+
+    /**
+     * Reads every row once into a reused buffer, like GlobalHistogramBinarizer does.
+     */
+    @Benchmark
+    public int getRow() {
+        int sum = 0;
+        for (int y = 0; y < height; y++) {
+            byte[] r = source.getRow(y, row);
+            sum += r[y % width];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public byte[] getMatrix() {
+        return source.getMatrix();
+    }
+
+    /**
+     * getMatrix with a caller-supplied matrix buffer, as used by DecodeContext.
+     */
+    @Benchmark
+    public byte[] getMatrixBuffered() {
+        return bufferedSource.getMatrix();
+    }
+
+    @Benchmark
+    public LuminanceSource crop() {
+        return source.crop(width / 4, height / 4, width / 2, height / 2);
+    }
+
+    @Benchmark
+    public int[] renderThumbnail() {
+        return source.renderThumbnail();
+    }
+}
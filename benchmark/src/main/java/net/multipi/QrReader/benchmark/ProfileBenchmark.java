@@ -0,0 +1,69 @@
+package net.multipi.QrReader.benchmark;
+
+import com.google.zxing.Result;
+import net.multipi.QrReader.DecodeContext;
+import net.multipi.QrReader.DecodeProfile;
+import net.multipi.QrReader.ResolutionLevel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+/**
+ * Cost of each {@link DecodeProfile} on a frame with a QR code, the same code printed light on
+ * dark, and a frame without any code. The last one is what most preview frames look like, so
+ * it shows what an extra format or TRY_HARDER costs while the user is still aiming.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProfileBenchmark {
+
+    private static final int CODE_SIZE = 240;
+
+    @Param({"QR", "QR_THOROUGH", "QR_DATA_MATRIX", "ALL_FORMATS"})
+    public String profile;
+
+    @Param({"qr", "inverted", "empty"})
+    public String content;
+
+    private DecodeContext context;
+    private byte[] frame;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        frame = SyntheticFrames.nv21(CODE_SIZE, 4, 1, 42L);
+        int lumaSize = SyntheticFrames.FRAME_WIDTH * SyntheticFrames.FRAME_HEIGHT;
+        if ("inverted".equals(content)) {
+            for (int i = 0; i < lumaSize; i++) {
+                frame[i] = (byte) ~frame[i];
+            }
+        } else if ("empty".equals(content)) {
+            Random random = new Random(42L);
+            for (int i = 0; i < lumaSize; i++) {
+                frame[i] = (byte) (160 + random.nextInt(32));
+            }
+        }
+        int[] rect = SyntheticFrames.Crop.FRAMING.rect(CODE_SIZE);
+        context = new DecodeContext(null, new ResolutionLevel[] {new ResolutionLevel(1)},
+                DecodeProfile.forName(profile));
+        context.setGeometry(SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                rect[0], rect[1], rect[2], rect[3]);
+    }
+
+    @Benchmark
+    public Result decode() {
+        return context.decode(frame);
+    }
+}
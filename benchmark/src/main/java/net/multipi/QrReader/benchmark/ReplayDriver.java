@@ -0,0 +1,224 @@
+package net.multipi.QrReader.benchmark;
+
+import com.google.zxing.Result;
+import net.multipi.QrReader.BinarizerSelector;
+import net.multipi.QrReader.DecodeContext;
+import net.multipi.QrReader.DecodeMetrics;
+import net.multipi.QrReader.DecodeProfile;
+import net.multipi.QrReader.DecodeScheduler;
+import net.multipi.QrReader.FrameQualityFilter;
+import net.multipi.QrReader.FrameRecordingReader;
+import net.multipi.QrReader.LatencyHistogram;
+import net.multipi.QrReader.PrintStreamReporter;
+import net.multipi.QrReader.ResolutionLevel;
+import net.multipi.QrReader.ResultCache;
+import net.multipi.QrReader.RoiTracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a recording made with {@code FrameRecorder} through the app's scan pipeline on the JVM:
+ * a fixed set of frame buffers standing in for the camera's callback buffers, a
+ * {@link DecodeScheduler} with the app's worker count, and per-worker {@link DecodeContext}s with
+ * the app's resolution levels, quality filter, ROI tracker, binarizer selection and result cache.
+ * Prints latency and hit-rate figures to compare before and after a change.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar net.multipi.QrReader.benchmark.ReplayDriver [options] recording
+ *   --max-rate     feed frames as fast as buffers free up instead of at the recorded pace
+ *   --workers N    decode workers, cores - 1 by default like the app
+ *   --buffers N    frame buffers, 3 by default like the app
+ *   --profile NAME decode profile, QR by default like the app
+ * </pre>
+ *
+ * At the recorded pace a frame that arrives while every buffer is busy is dropped, as the camera
+ * would. At maximum rate the reader waits for a free buffer and for the previous frame to be
+ * picked up by a worker, so no frame is dropped and runs are repeatable.
+ */
+public final class ReplayDriver {
+
+    private final int workers;
+    private final int buffers;
+    private final boolean maxRate;
+    private final DecodeProfile profile;
+    private final ResolutionLevel[] levels = ResolutionLevel.createDefaultLevels();
+    private final FrameQualityFilter qualityFilter = FrameQualityFilter.createDefault();
+    private final RoiTracker roiTracker = RoiTracker.createDefault();
+    private final BinarizerSelector binarizerSelector = BinarizerSelector.createDefault();
+    private final ResultCache resultCache = ResultCache.createDefault();
+    private final DecodeMetrics metrics = new DecodeMetrics();
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final BlockingQueue<FrameRecordingReader.Frame> freeFrames;
+    /** At maximum rate, held from submitting a frame until a worker takes it. */
+    private final Semaphore pendingPermit = new Semaphore(1);
+
+    private final ThreadLocal<DecodeContext> contexts = new ThreadLocal<DecodeContext>() {
+        @Override
+        protected DecodeContext initialValue() {
+            DecodeContext context = new DecodeContext(null, levels, profile);
+            context.setQualityFilter(qualityFilter);
+            context.setRoiTracker(roiTracker);
+            context.setBinarizerSelector(binarizerSelector);
+            context.setMetrics(metrics);
+            context.setResultCache(resultCache);
+            return context;
+        }
+    };
+
+    ReplayDriver(int workers, int buffers, boolean maxRate, DecodeProfile profile) {
+        this.workers = workers;
+        this.buffers = buffers;
+        this.maxRate = maxRate;
+        this.profile = profile;
+        freeFrames = new ArrayBlockingQueue<FrameRecordingReader.Frame>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            freeFrames.add(new FrameRecordingReader.Frame());
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        int buffers = 3;
+        boolean maxRate = false;
+        DecodeProfile profile = DecodeProfile.QR;
+        File recording = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--max-rate".equals(arg)) {
+                maxRate = true;
+            } else if ("--workers".equals(arg) && i + 1 < args.length) {
+                workers = Integer.parseInt(args[++i]);
+            } else if ("--buffers".equals(arg) && i + 1 < args.length) {
+                buffers = Integer.parseInt(args[++i]);
+            } else if ("--profile".equals(arg) && i + 1 < args.length) {
+                profile = DecodeProfile.forName(args[++i]);
+                if (profile == null) {
+                    usage("Unknown profile " + args[i]);
+                }
+            } else if (arg.startsWith("--") || recording != null) {
+                usage("Unexpected argument " + arg);
+            } else {
+                recording = new File(arg);
+            }
+        }
+        if (recording == null || workers < 1 || buffers < 1) {
+            usage("A recording and positive --workers and --buffers are required");
+        }
+        new ReplayDriver(workers, buffers, maxRate, profile).run(recording, System.out);
+    }
+
+    void run(File recording, PrintStream summary) throws IOException, InterruptedException {
+        DecodeScheduler<FrameRecordingReader.Frame> scheduler = new DecodeScheduler<FrameRecordingReader.Frame>(
+                workers, new Handler());
+        scheduler.setMetrics(metrics);
+        scheduler.start();
+        metrics.startSession(System.nanoTime());
+
+        FrameRecordingReader reader = new FrameRecordingReader(recording);
+        FrameRecordingReader.Frame incoming = new FrameRecordingReader.Frame();
+        long frameCount = 0;
+        long bufferDrops = 0;
+        long firstTimestamp = 0;
+        long start = System.nanoTime();
+        try {
+            while (true) {
+                FrameRecordingReader.Frame frame = maxRate ? freeFrames.take() : incoming;
+                if (!reader.read(frame)) {
+                    if (maxRate) {
+                        freeFrames.add(frame);
+                    }
+                    break;
+                }
+                if (frameCount++ == 0) {
+                    firstTimestamp = frame.getTimestamp();
+                }
+                if (!maxRate) {
+                    long delay = frame.getTimestamp() - firstTimestamp - (System.nanoTime() - start);
+                    if (delay > 0) {
+                        Thread.sleep(delay / 1000000L, (int) (delay % 1000000L));
+                    }
+                    FrameRecordingReader.Frame buffer = freeFrames.poll();
+                    if (buffer == null) {
+                        bufferDrops++;
+                        continue;
+                    }
+                    // The free buffer becomes the next read target; the filled one goes to the scheduler.
+                    incoming = buffer;
+                } else {
+                    pendingPermit.acquire();
+                }
+                scheduler.submit(frame);
+            }
+        } finally {
+            reader.close();
+        }
+        // Every buffer comes back once its frame is decoded or dropped.
+        for (int i = 0; i < buffers; i++) {
+            freeFrames.take();
+        }
+        double seconds = (System.nanoTime() - start) / 1.0e9;
+        scheduler.shutdown(0);
+
+        long decoded = decodeLatency.getCount();
+        summary.println(String.format(Locale.US,
+                "%d frames in %.2f s (%s pace), %d dropped for lack of a buffer, %d replaced in the scheduler",
+                frameCount, seconds, maxRate ? "maximum" : "recorded", bufferDrops, scheduler.getDroppedCount()));
+        summary.println(String.format(Locale.US, "%d frames decoded by %d worker(s), %.1f frames/s, %d with a code (%.1f%%)",
+                decoded, workers, decoded / seconds, hitCount.get(), decoded == 0 ? 0.0 : hitCount.get() * 100.0 / decoded));
+        summary.println("profile: " + profile);
+        summary.println("decode: " + decodeLatency);
+        for (ResolutionLevel level : levels) {
+            summary.println("level " + level);
+        }
+        summary.println("quality filter: " + qualityFilter);
+        summary.println("ROI tracker: " + roiTracker);
+        summary.println("binarizers: " + binarizerSelector);
+        summary.println("result cache: " + resultCache);
+        new PrintStreamReporter(summary).report(metrics);
+    }
+
+    private final class Handler implements DecodeScheduler.FrameHandler<FrameRecordingReader.Frame> {
+
+        @Override
+        public void decodeFrame(FrameRecordingReader.Frame frame) {
+            if (maxRate) {
+                pendingPermit.release();
+            }
+            try {
+                DecodeContext context = contexts.get();
+                frame.applyGeometry(context);
+                long start = System.nanoTime();
+                Result result = context.decode(frame.getLuminance());
+                decodeLatency.record(System.nanoTime() - start);
+                if (result != null) {
+                    hitCount.incrementAndGet();
+                    resultCache.report(result, System.nanoTime() / 1000000L);
+                }
+            } finally {
+                freeFrames.add(frame);
+            }
+        }
+
+        @Override
+        public void frameDropped(FrameRecordingReader.Frame frame) {
+            if (maxRate) {
+                pendingPermit.release();
+            }
+            freeFrames.add(frame);
+        }
+    }
+
+    private static void usage(String message) {
+        System.err.println(message);
+        System.err.println("Usage: ReplayDriver [--max-rate] [--workers N] [--buffers N] [--profile NAME] recording");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,119 @@
+package net.multipi.QrReader.benchmark;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+import net.multipi.QrReader.DecodeContext;
+import net.multipi.QrReader.PlanarYUVLuminanceSource;
+import net.multipi.QrReader.RotatedLuminanceSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link RotatedLuminanceSource} against the usual alternative, rotating the framing rect into a
+ * new array and wrapping that in a {@link PlanarYUVLuminanceSource}. Both produce the same upright
+ * matrix. Run with {@code -prof gc} to see the per-frame copy.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RotationBenchmark {
+
+    private static final int CODE_SIZE = 240;
+
+    @Param({"90", "180", "270"})
+    public int rotation;
+
+    private byte[] frame;
+    private byte[] matrixBuffer;
+    private byte[] row;
+    private int left;
+    private int top;
+    private int width;
+    private int height;
+    private DecodeContext context;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        frame = SyntheticFrames.nv21(CODE_SIZE, 0, 0, 42L);
+        int[] rect = SyntheticFrames.Crop.FRAMING.rect(CODE_SIZE);
+        left = rect[0];
+        top = rect[1];
+        width = rect[2];
+        height = rect[3];
+        matrixBuffer = new byte[width * height];
+        row = new byte[Math.max(width, height)];
+        context = new DecodeContext(null);
+        context.setGeometry(SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT, left, top, width, height, rotation);
+    }
+
+    @Benchmark
+    public byte[] rotatedView() {
+        return new RotatedLuminanceSource(frame, SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                left, top, width, height, rotation, 1, matrixBuffer).getMatrix();
+    }
+
+    @Benchmark
+    public byte[] rotatedCopy() {
+        boolean sideways = RotatedLuminanceSource.isSideways(rotation);
+        int rotatedWidth = sideways ? height : width;
+        int rotatedHeight = sideways ? width : height;
+        byte[] rotated = rotate(frame, SyntheticFrames.FRAME_WIDTH, left, top, width, height, rotation);
+        return new PlanarYUVLuminanceSource(rotated, rotatedWidth, rotatedHeight, 0, 0, rotatedWidth, rotatedHeight,
+                false).getMatrix();
+    }
+
+    /**
+     * Every row once, like GlobalHistogramBinarizer; sideways rotations read down the columns.
+     */
+    @Benchmark
+    public int rotatedViewRows() {
+        LuminanceSource source = new RotatedLuminanceSource(frame, SyntheticFrames.FRAME_WIDTH,
+                SyntheticFrames.FRAME_HEIGHT, left, top, width, height, rotation, 1, null);
+        int sum = 0;
+        for (int y = 0; y < source.getHeight(); y++) {
+            sum += source.getRow(y, row)[y % source.getWidth()];
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public Result decodeRotated() {
+        return context.decode(frame);
+    }
+
+    private static byte[] rotate(byte[] yuv, int dataWidth, int left, int top, int width, int height, int rotation) {
+        byte[] rotated = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            int in = (top + y) * dataWidth + left;
+            switch (rotation) {
+                case 90:
+                    for (int x = 0, out = height - 1 - y; x < width; x++, out += height) {
+                        rotated[out] = yuv[in + x];
+                    }
+                    break;
+                case 180:
+                    for (int x = 0, out = (height - y) * width - 1; x < width; x++, out--) {
+                        rotated[out] = yuv[in + x];
+                    }
+                    break;
+                default:
+                    for (int x = 0, out = (width - 1) * height + y; x < width; x++, out -= height) {
+                        rotated[out] = yuv[in + x];
+                    }
+                    break;
+            }
+        }
+        return rotated;
+    }
+}
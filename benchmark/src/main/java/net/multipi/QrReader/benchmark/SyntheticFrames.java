@@ -0,0 +1,137 @@
+package net.multipi.QrReader.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Builds NV21 preview frames with a QR code rendered into the Y plane, so benchmarks can run
+ * without a camera. Frames are deterministic for a given set of parameters.
+ */
+public final class SyntheticFrames {
+
+    public static final int FRAME_WIDTH = 1280;
+    public static final int FRAME_HEIGHT = 720;
+    public static final String CONTENTS = "https://multipi.net/QrReader/benchmark";
+
+    private static final int LIGHT = 200;
+    private static final int DARK = 40;
+    private static final int NEUTRAL_CHROMA = 128;
+
+    /**
+     * Framing rects in preview coordinates, as {left, top, width, height}.
+     */
+    public enum Crop {
+        /** The whole preview frame. */
+        FULL,
+        /** 50% of each dimension, centered; what ViewfinderView picks on a 1280x720 screen. */
+        FRAMING,
+        /** Just the code plus a small margin. */
+        TIGHT;
+
+        public int[] rect(int codeSize) {
+            switch (this) {
+                case FULL:
+                    return new int[] {0, 0, FRAME_WIDTH, FRAME_HEIGHT};
+                case FRAMING:
+                    return centered(FRAME_WIDTH / 2, FRAME_HEIGHT / 2);
+                default:
+                    int side = Math.min(codeSize + codeSize / 4, FRAME_HEIGHT);
+                    return centered(side, side);
+            }
+        }
+
+        private static int[] centered(int width, int height) {
+            return new int[] {(FRAME_WIDTH - width) / 2, (FRAME_HEIGHT - height) / 2, width, height};
+        }
+    }
+
+    private SyntheticFrames() {
+    }
+
+    /**
+     * @param codeSize   side of the rendered code in pixels, quiet zone included
+     * @param noise      standard deviation of the gaussian noise added to every Y sample
+     * @param blurRadius radius of the box blur applied to the Y plane, 0 for none
+     */
+    public static byte[] nv21(int codeSize, double noise, int blurRadius, long seed) {
+        return nv21(codeSize, noise, blurRadius, seed, 0.5f, 0.5f);
+    }
+
+    /**
+     * @param centerX horizontal position of the code's center, as a fraction of the frame width
+     * @param centerY vertical position of the code's center, as a fraction of the frame height
+     */
+    public static byte[] nv21(int codeSize, double noise, int blurRadius, long seed, float centerX, float centerY) {
+        int[] y = new int[FRAME_WIDTH * FRAME_HEIGHT];
+        Arrays.fill(y, LIGHT);
+        BitMatrix code = encode(codeSize);
+        int codeLeft = Math.max(0, Math.min(FRAME_WIDTH - code.getWidth(),
+                Math.round(FRAME_WIDTH * centerX) - code.getWidth() / 2));
+        int codeTop = Math.max(0, Math.min(FRAME_HEIGHT - code.getHeight(),
+                Math.round(FRAME_HEIGHT * centerY) - code.getHeight() / 2));
+        for (int row = 0; row < code.getHeight(); row++) {
+            int offset = (codeTop + row) * FRAME_WIDTH + codeLeft;
+            for (int col = 0; col < code.getWidth(); col++) {
+                if (code.get(col, row)) {
+                    y[offset + col] = DARK;
+                }
+            }
+        }
+        if (blurRadius > 0) {
+            boxBlur(y, blurRadius);
+        }
+
+        byte[] frame = new byte[FRAME_WIDTH * FRAME_HEIGHT * 3 / 2];
+        Random random = new Random(seed);
+        for (int i = 0; i < y.length; i++) {
+            int value = y[i];
+            if (noise > 0) {
+                value += (int) Math.round(random.nextGaussian() * noise);
+            }
+            frame[i] = (byte) Math.max(0, Math.min(255, value));
+        }
+        Arrays.fill(frame, y.length, frame.length, (byte) NEUTRAL_CHROMA);
+        return frame;
+    }
+
+    private static BitMatrix encode(int codeSize) {
+        try {
+            return new QRCodeWriter().encode(CONTENTS, BarcodeFormat.QR_CODE, codeSize, codeSize);
+        } catch (WriterException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void boxBlur(int[] y, int radius) {
+        int[] tmp = new int[y.length];
+        int window = 2 * radius + 1;
+        for (int row = 0; row < FRAME_HEIGHT; row++) {
+            int offset = row * FRAME_WIDTH;
+            for (int col = 0; col < FRAME_WIDTH; col++) {
+                int sum = 0;
+                for (int k = -radius; k <= radius; k++) {
+                    sum += y[offset + clamp(col + k, FRAME_WIDTH)];
+                }
+                tmp[offset + col] = sum / window;
+            }
+        }
+        for (int row = 0; row < FRAME_HEIGHT; row++) {
+            for (int col = 0; col < FRAME_WIDTH; col++) {
+                int sum = 0;
+                for (int k = -radius; k <= radius; k++) {
+                    sum += tmp[clamp(row + k, FRAME_HEIGHT) * FRAME_WIDTH + col];
+                }
+                y[row * FRAME_WIDTH + col] = sum / window;
+            }
+        }
+    }
+
+    private static int clamp(int value, int size) {
+        return value < 0 ? 0 : value >= size ? size - 1 : value;
+    }
+}
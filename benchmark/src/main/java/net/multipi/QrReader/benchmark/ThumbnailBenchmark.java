@@ -0,0 +1,86 @@
+package net.multipi.QrReader.benchmark;
+
+import net.multipi.QrReader.DecodeContext;
+import net.multipi.QrReader.DecoderOverlay;
+import net.multipi.QrReader.PlanarYUVLuminanceSource;
+import net.multipi.QrReader.PreviewGeometry;
+import net.multipi.QrReader.RotatedLuminanceSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The thumbnail kernels behind {@link DecoderOverlay}, on the framing rect of a 1280x720 preview:
+ * the allocating {@link PlanarYUVLuminanceSource#renderThumbnail()}, the same kernel into a reused
+ * buffer, the rotated one the overlay uses, and an overlay update for a frame where nothing
+ * changed, which is what most frames cost once the scene is steady. Run with {@code -prof gc}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ThumbnailBenchmark {
+
+    private static final int SCREEN_WIDTH = 1280;
+    private static final int SCREEN_HEIGHT = 720;
+
+    @Param({"1", "2", "4"})
+    public int factor;
+
+    @Param({"0", "90"})
+    public int rotation;
+
+    private byte[] frame;
+    private PreviewGeometry geometry;
+    private PlanarYUVLuminanceSource source;
+    private int[] pixels;
+    private DecodeContext context;
+    private DecoderOverlay overlay;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        frame = SyntheticFrames.nv21(240, 4, 1, 42L);
+        geometry = PreviewGeometry.create(SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                SCREEN_WIDTH, SCREEN_HEIGHT, rotation);
+        source = new PlanarYUVLuminanceSource(frame, SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                geometry.getPreviewLeft(), geometry.getPreviewTop(),
+                geometry.getPreviewFramingWidth(), geometry.getPreviewFramingHeight(), false);
+        pixels = new int[source.getWidth() * source.getHeight()];
+        context = new DecodeContext(null);
+        context.setGeometry(geometry);
+        overlay = new DecoderOverlay(factor);
+        overlay.update(frame, geometry, context, 0);
+    }
+
+    @Benchmark
+    public int[] renderThumbnail() {
+        return source.renderThumbnail();
+    }
+
+    @Benchmark
+    public int[] renderThumbnailReused() {
+        return source.renderThumbnail(factor, pixels);
+    }
+
+    @Benchmark
+    public int[] renderRotated() {
+        return new RotatedLuminanceSource(frame, SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                geometry.getPreviewLeft(), geometry.getPreviewTop(),
+                geometry.getPreviewFramingWidth(), geometry.getPreviewFramingHeight(), rotation, factor, null)
+                .renderThumbnail(pixels);
+    }
+
+    @Benchmark
+    public boolean overlayUnchanged() {
+        return overlay.update(frame, geometry, context, 0);
+    }
+}
@@ -0,0 +1,115 @@
+package net.multipi.QrReader.benchmark;
+
+import com.google.zxing.Result;
+import net.multipi.QrReader.DecodeContext;
+import net.multipi.QrReader.DecodeProfile;
+import net.multipi.QrReader.PlanarYUVLuminanceSource;
+import net.multipi.QrReader.ResolutionLevel;
+import net.multipi.QrReader.TiledDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A small code near a corner of a full-frame framing rect: what one full-rect pass misses, what
+ * TRY_HARDER costs to find it, and {@link TiledDecoder} on grids of tiles with 1 to 8 threads
+ * (the calling thread plus a pool of {@code threads - 1}). Scaling with threads needs that many
+ * free cores on the machine running the benchmark.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TiledDecodeBenchmark {
+
+    private static final int CODE_SIZE = 90;
+    private static final float CODE_CENTER_X = 0.1f;
+    private static final float CODE_CENTER_Y = 0.85f;
+
+    private byte[] frame;
+    private DecodeContext singlePass;
+    private DecodeContext tryHarder;
+
+    @State(Scope.Thread)
+    public static class Tiles {
+
+        @Param({"2x2", "3x3", "4x4"})
+        public String grid;
+
+        @Param({"1", "2", "4", "8"})
+        public int threads;
+
+        ExecutorService executor;
+        TiledDecoder decoder;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            String[] size = grid.split("x");
+            executor = Executors.newFixedThreadPool(Math.max(1, threads - 1));
+            decoder = new TiledDecoder(threads == 1 ? new CallerRunsExecutor() : executor,
+                    Integer.parseInt(size[0]), Integer.parseInt(size[1]), 0.25f, DecodeProfile.QR);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            executor.shutdown();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        frame = SyntheticFrames.nv21(CODE_SIZE, 0, 0, 42L, CODE_CENTER_X, CODE_CENTER_Y);
+        singlePass = fullFrameContext(DecodeProfile.QR);
+        tryHarder = fullFrameContext(DecodeProfile.QR_THOROUGH);
+    }
+
+    /**
+     * Misses the code; shows what a full-rect pass costs.
+     */
+    @Benchmark
+    public Result singlePass() {
+        return singlePass.decode(frame);
+    }
+
+    @Benchmark
+    public Result singlePassTryHarder() {
+        return tryHarder.decode(frame);
+    }
+
+    @Benchmark
+    public Result tiled(Tiles tiles) {
+        return tiles.decoder.decode(new PlanarYUVLuminanceSource(frame, SyntheticFrames.FRAME_WIDTH,
+                SyntheticFrames.FRAME_HEIGHT, 0, 0, SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT, false));
+    }
+
+    private static DecodeContext fullFrameContext(DecodeProfile profile) {
+        DecodeContext context = new DecodeContext(null, new ResolutionLevel[] {new ResolutionLevel(1)}, profile);
+        context.setGeometry(SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                0, 0, SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT);
+        return context;
+    }
+
+    /**
+     * Runs every tile on the calling thread, for the single-threaded baseline.
+     */
+    private static final class CallerRunsExecutor implements Executor {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    }
+}
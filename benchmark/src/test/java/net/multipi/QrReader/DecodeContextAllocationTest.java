@@ -0,0 +1,86 @@
+package net.multipi.QrReader;
+
+import net.multipi.QrReader.benchmark.SyntheticFrames;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that a reused {@link DecodeContext} does not allocate per frame beyond what ZXing needs for
+ * a result. A frame decoded with a fresh reader, a copied crop and a new hybrid binarizer allocates
+ * well over 100 KB; the bounds below are a few KB, so any per-frame buffer creeping back in fails.
+ */
+public class DecodeContextAllocationTest {
+
+    private static final int WARMUP_FRAMES = 300;
+    private static final int MEASURED_FRAMES = 200;
+    /** ZXing's detector and decoder objects, the result text and points. */
+    private static final long MAX_DECODED_BYTES = 8 * 1024;
+    /** A few result point and source objects. */
+    private static final long MAX_MISSED_BYTES = 1024;
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void decodedFrameAllocatesOnlyTheResult() {
+        byte[] frame = SyntheticFrames.nv21(240, 4, 1, 42L);
+        long perFrame = bytesPerFrame(context(0), frame, true);
+        assertTrue(perFrame + " bytes per frame", perFrame <= MAX_DECODED_BYTES);
+    }
+
+    @Test
+    public void rotatedFrameAllocatesOnlyTheResult() {
+        byte[] frame = SyntheticFrames.nv21(240, 4, 1, 42L);
+        long perFrame = bytesPerFrame(context(90), frame, true);
+        assertTrue(perFrame + " bytes per frame", perFrame <= MAX_DECODED_BYTES);
+    }
+
+    @Test
+    public void missedFrameAllocatesAlmostNothing() {
+        byte[] frame = SyntheticFrames.nv21(240, 4, 1, 42L);
+        Arrays.fill(frame, 0, SyntheticFrames.FRAME_WIDTH * SyntheticFrames.FRAME_HEIGHT, (byte) 128);
+        long perFrame = bytesPerFrame(context(0), frame, false);
+        assertTrue(perFrame + " bytes per frame", perFrame <= MAX_MISSED_BYTES);
+    }
+
+    private static DecodeContext context(int rotation) {
+        DecodeContext context = new DecodeContext(null, ResolutionLevel.createDefaultLevels(), DecodeProfile.QR);
+        int side = SyntheticFrames.FRAME_HEIGHT;
+        context.setGeometry(SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                (SyntheticFrames.FRAME_WIDTH - side) / 2, 0, side, side, rotation);
+        return context;
+    }
+
+    private long bytesPerFrame(DecodeContext context, byte[] frame, boolean decodes) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            context.decode(frame);
+        }
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            context.decode(frame);
+        }
+        long perFrame = (threads.getThreadAllocatedBytes(thread) - before) / MEASURED_FRAMES;
+        if (decodes) {
+            assertNotNull(context.decode(frame));
+        } else {
+            assertNull(context.decode(frame));
+        }
+        return perFrame;
+    }
+}
@@ -0,0 +1,269 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import net.multipi.QrReader.benchmark.SyntheticFrames;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DecodeContextTest {
+
+    private static final int FRAMES = 4 * DecodeContext.ALL_LEVELS_INTERVAL;
+
+    @Test
+    public void emptyCoarsePassStillReachesFullResolutionPeriodically() {
+        ResolutionLevel[] levels = ResolutionLevel.createDefaultLevels();
+        DecodeContext context = context(levels);
+        byte[] frame = emptyFrame();
+        for (int i = 0; i < FRAMES; i++) {
+            context.decode(frame);
+        }
+        assertEquals(FRAMES, levels[0].getAttempts());
+        assertEquals(FRAMES / DecodeContext.ALL_LEVELS_INTERVAL, levels[1].getAttempts());
+    }
+
+    @Test
+    public void trackedWindowAlwaysReachesFullResolution() {
+        ResolutionLevel[] levels = ResolutionLevel.createDefaultLevels();
+        DecodeContext context = context(levels);
+        // Enough misses in a row are allowed that the window stays narrowed for every frame.
+        RoiTracker tracker = new RoiTracker(160, FRAMES + 1);
+        tracker.hit(300, 300, 400, 400);
+        context.setRoiTracker(tracker);
+        byte[] frame = emptyFrame();
+        for (int i = 0; i < FRAMES; i++) {
+            context.decode(frame);
+        }
+        assertEquals(FRAMES, levels[0].getAttempts());
+        assertEquals(FRAMES, levels[1].getAttempts());
+    }
+
+    @Test
+    public void framesWithoutACodeAreNotScored() {
+        BinarizerSelector selector = new BinarizerSelector(0);
+        DecodeContext context = context(new ResolutionLevel[] {new ResolutionLevel(1)});
+        context.setBinarizerSelector(selector);
+        byte[] frame = emptyFrame();
+        for (int i = 0; i < FRAMES; i++) {
+            assertNull(context.decode(frame));
+        }
+        assertEquals(0, selector.getAttempts(BinarizerSelector.Kind.GLOBAL_HISTOGRAM));
+        assertEquals(0, selector.getAttempts(BinarizerSelector.Kind.HYBRID));
+        assertEquals(BinarizerSelector.Kind.GLOBAL_HISTOGRAM, selector.getPreferred());
+    }
+
+    @Test
+    public void nearMissIsRetriedWithTheOtherBinarizer() {
+        BinarizerSelector selector = new BinarizerSelector(0);
+        DecodeContext context = fullFrameContext();
+        context.setBinarizerSelector(selector);
+        assertNotNull(context.decode(unevenlyLitFrame()));
+        assertEquals(1, selector.getAttempts(BinarizerSelector.Kind.GLOBAL_HISTOGRAM));
+        assertEquals(0, selector.getWins(BinarizerSelector.Kind.GLOBAL_HISTOGRAM));
+        assertEquals(1, selector.getWins(BinarizerSelector.Kind.HYBRID));
+    }
+
+    /**
+     * Evenly lit codes, then a stretch where only the hybrid binarizer reads them, then even light
+     * again: the preference follows both changes.
+     */
+    @Test
+    public void preferenceFollowsChangingLight() {
+        BinarizerSelector selector = new BinarizerSelector(4);
+        DecodeContext context = fullFrameContext();
+        context.setBinarizerSelector(selector);
+        byte[] even = SyntheticFrames.nv21(240, 2, 0, 1L);
+        byte[] uneven = unevenlyLitFrame();
+
+        decodeAll(context, even, 24);
+        assertEquals(BinarizerSelector.Kind.GLOBAL_HISTOGRAM, selector.getPreferred());
+        decodeAll(context, uneven, 40);
+        assertEquals(BinarizerSelector.Kind.HYBRID, selector.getPreferred());
+        decodeAll(context, even, 48);
+        assertEquals(BinarizerSelector.Kind.GLOBAL_HISTOGRAM, selector.getPreferred());
+    }
+
+    @Test
+    public void invertedCodeIsOnlyReadByProfilesThatAllowIt() {
+        byte[] frame = SyntheticFrames.nv21(240, 2, 0, 3L);
+        for (int i = 0; i < SyntheticFrames.FRAME_WIDTH * SyntheticFrames.FRAME_HEIGHT; i++) {
+            frame[i] = (byte) ~frame[i];
+        }
+        ResolutionLevel[] levels = {new ResolutionLevel(1)};
+        assertNull(context(levels, DecodeProfile.QR).decode(frame));
+        assertNotNull(context(levels, DecodeProfile.QR_THOROUGH).decode(frame));
+    }
+
+    @Test
+    public void cachedResultIsConfirmedByDecodingItsRegion() {
+        ResolutionLevel[] levels = ResolutionLevel.createDefaultLevels();
+        DecodeContext context = context(levels);
+        ResultCache cache = ResultCache.createDefault();
+        context.setResultCache(cache);
+        byte[] frame = SyntheticFrames.nv21(240, 2, 0, 1L);
+        Result decoded = context.decode(frame);
+        assertNotNull(decoded);
+        long attempts = levels[0].getAttempts() + levels[1].getAttempts();
+
+        Result confirmed = context.decode(frame);
+        assertNotNull(confirmed);
+        assertEquals(decoded.getText(), confirmed.getText());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0, cache.getRejectedCount());
+        // Only the code's region was decoded, not the levels.
+        assertEquals(attempts, levels[0].getAttempts() + levels[1].getAttempts());
+        int[] roi = new int[4];
+        context.getRoi(roi);
+        assertTrue(roi[2] < SyntheticFrames.FRAME_HEIGHT && roi[3] < SyntheticFrames.FRAME_HEIGHT);
+        ResultPoint[] expected = decoded.getResultPoints();
+        ResultPoint[] points = confirmed.getResultPoints();
+        assertEquals(expected.length, points.length);
+        for (int i = 0; i < points.length; i++) {
+            assertEquals(expected[i].getX(), points[i].getX(), 1.0f);
+            assertEquals(expected[i].getY(), points[i].getY(), 1.0f);
+        }
+    }
+
+    @Test
+    public void cachedResultIsNotReturnedForAFrameWithoutTheCode() {
+        DecodeContext context = context(ResolutionLevel.createDefaultLevels());
+        // Every region matches, as when a fingerprint collides.
+        ResultCache cache = new ResultCache(8, 10000L, 10000L, 0L, 64);
+        context.setResultCache(cache);
+        assertNotNull(context.decode(SyntheticFrames.nv21(240, 2, 0, 1L)));
+
+        assertNull(context.decode(emptyFrame()));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getRejectedCount());
+        // The rejected code is not offered again.
+        assertEquals(0, cache.size());
+        assertNull(context.decode(emptyFrame()));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    /**
+     * At 4x subsampling the small code is lost, so only the tiled pass at full resolution can read
+     * it, and only if it also tries the inverted frame.
+     */
+    @Test
+    public void tiledPassReadsInvertedCodesAndIsTimed() {
+        byte[] frame = SyntheticFrames.nv21(120, 2, 0, 5L);
+        for (int i = 0; i < SyntheticFrames.FRAME_WIDTH * SyntheticFrames.FRAME_HEIGHT; i++) {
+            frame[i] = (byte) (255 - (frame[i] & 0xff));
+        }
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            DecodeContext normal = context(new ResolutionLevel[] {new ResolutionLevel(4)}, DecodeProfile.QR);
+            normal.setTiledDecoder(new TiledDecoder(pool, 3, 3, 0.5f, DecodeProfile.QR));
+            assertNull(normal.decode(frame));
+
+            DecodeContext inverted = context(new ResolutionLevel[] {new ResolutionLevel(4)},
+                    DecodeProfile.QR_THOROUGH);
+            DecodeMetrics metrics = new DecodeMetrics();
+            inverted.setMetrics(metrics);
+            inverted.setTiledDecoder(new TiledDecoder(pool, 3, 3, 0.5f, DecodeProfile.QR_THOROUGH));
+            Result result = inverted.decode(frame);
+            assertNotNull(result);
+            assertEquals(SyntheticFrames.CONTENTS, result.getText());
+            assertEquals(1, metrics.getHistogram(DecodeMetrics.Stage.TILED_DECODE).getCount());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void tiledHitIsReportedToTheTrackerAndTheViewfinder() {
+        byte[] frame = SyntheticFrames.nv21(120, 2, 0, 5L);
+        final List<ResultPoint> found = new ArrayList<ResultPoint>();
+        ResultPointCallback viewfinder = new ResultPointCallback() {
+            @Override
+            public void foundPossibleResultPoint(ResultPoint point) {
+                found.add(point);
+            }
+        };
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            DecodeContext context = new DecodeContext(viewfinder, new ResolutionLevel[] {new ResolutionLevel(4)},
+                    DecodeProfile.QR);
+            int side = SyntheticFrames.FRAME_HEIGHT;
+            context.setGeometry(SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                    (SyntheticFrames.FRAME_WIDTH - side) / 2, 0, side, side);
+            RoiTracker tracker = RoiTracker.createDefault();
+            context.setRoiTracker(tracker);
+            TiledDecoder tiledDecoder = new TiledDecoder(pool, 3, 3, 0.5f, DecodeProfile.QR);
+            context.setTiledDecoder(tiledDecoder);
+            Result result = context.decode(frame);
+            assertNotNull(result);
+            assertEquals(1, tiledDecoder.getHitCount());
+
+            ResultPoint[] points = result.getResultPoints();
+            assertTrue(found.size() >= points.length);
+            assertEquals(Arrays.asList(points), found.subList(found.size() - points.length, found.size()));
+            int[] roi = new int[4];
+            assertTrue(tracker.getRoi(side, side, roi));
+            for (ResultPoint point : points) {
+                assertTrue(point.toString(), point.getX() >= roi[0] && point.getX() <= roi[0] + roi[2]);
+                assertTrue(point.toString(), point.getY() >= roi[1] && point.getY() <= roi[1] + roi[3]);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static DecodeContext context(ResolutionLevel[] levels) {
+        return context(levels, DecodeProfile.QR);
+    }
+
+    private static DecodeContext context(ResolutionLevel[] levels, DecodeProfile profile) {
+        DecodeContext context = new DecodeContext(null, levels, profile);
+        int side = SyntheticFrames.FRAME_HEIGHT;
+        context.setGeometry(SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                (SyntheticFrames.FRAME_WIDTH - side) / 2, 0, side, side);
+        return context;
+    }
+
+    private static DecodeContext fullFrameContext() {
+        DecodeContext context = context(new ResolutionLevel[] {new ResolutionLevel(1)});
+        context.setGeometry(SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT,
+                0, 0, SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT);
+        return context;
+    }
+
+    private static void decodeAll(DecodeContext context, byte[] frame, int count) {
+        for (int i = 0; i < count; i++) {
+            assertNotNull(context.decode(frame));
+        }
+    }
+
+    /**
+     * Light falling off from right to left: the global threshold cuts the code in two, but still
+     * finds finder patterns.
+     */
+    private static byte[] unevenlyLitFrame() {
+        byte[] frame = SyntheticFrames.nv21(240, 2, 0, 1L);
+        for (int y = 0; y < SyntheticFrames.FRAME_HEIGHT; y++) {
+            for (int x = 0; x < SyntheticFrames.FRAME_WIDTH; x++) {
+                int i = y * SyntheticFrames.FRAME_WIDTH + x;
+                frame[i] = (byte) Math.min(255, (frame[i] & 0xff) / 2 + x / 10);
+            }
+        }
+        return frame;
+    }
+
+    private static byte[] emptyFrame() {
+        byte[] frame = new byte[SyntheticFrames.FRAME_WIDTH * SyntheticFrames.FRAME_HEIGHT * 3 / 2];
+        Arrays.fill(frame, (byte) 128);
+        return frame;
+    }
+}
@@ -0,0 +1,109 @@
+package net.multipi.QrReader;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DecodeMetricsTest {
+
+    private static final long MILLIS = 1000000L;
+    private static final long SESSION_START = 5000 * MILLIS;
+
+    @Test
+    public void countsFramesByOutcome() {
+        DecodeMetrics metrics = recordedSession();
+        assertEquals(5, metrics.getFramesIn());
+        assertEquals(1, metrics.getFramesDropped());
+        assertEquals(1, metrics.getFramesSkipped());
+        assertEquals(1, metrics.getFramesFailed());
+        assertEquals(2, metrics.getFramesDecoded());
+    }
+
+    @Test
+    public void recordsTheIntervalBetweenArrivals() {
+        DecodeMetrics metrics = recordedSession();
+        LatencyHistogram intervals = metrics.getHistogram(DecodeMetrics.Stage.FRAME_INTERVAL);
+        assertEquals(4, intervals.getCount());
+        assertEquals(40.0, intervals.getMaxMillis(), 0.0);
+        assertEquals(25.0, intervals.getMeanMillis(), 1e-9);
+    }
+
+    @Test
+    public void timeToFirstDecodeIsFromTheSessionStart() {
+        DecodeMetrics metrics = new DecodeMetrics();
+        metrics.startSession(SESSION_START);
+        assertEquals(-1.0, metrics.getTimeToFirstDecodeMillis(), 0.0);
+        metrics.frameFailed();
+        assertEquals(-1.0, metrics.getTimeToFirstDecodeMillis(), 0.0);
+        metrics.frameDecoded(SESSION_START + 250 * MILLIS);
+        metrics.frameDecoded(SESSION_START + 900 * MILLIS);
+        assertEquals(250.0, metrics.getTimeToFirstDecodeMillis(), 0.0);
+
+        // A new session measures again, and its first interval does not span the pause.
+        metrics.startSession(SESSION_START + 2000 * MILLIS);
+        assertEquals(-1.0, metrics.getTimeToFirstDecodeMillis(), 0.0);
+        metrics.frameArrived(SESSION_START + 2010 * MILLIS);
+        assertEquals(0, metrics.getHistogram(DecodeMetrics.Stage.FRAME_INTERVAL).getCount());
+        metrics.frameDecoded(SESSION_START + 2100 * MILLIS);
+        assertEquals(100.0, metrics.getTimeToFirstDecodeMillis(), 0.0);
+    }
+
+    @Test
+    public void resetClearsCountersAndHistograms() {
+        DecodeMetrics metrics = recordedSession();
+        metrics.reset();
+        assertEquals(0, metrics.getFramesIn());
+        assertEquals(0, metrics.getFramesDropped());
+        assertEquals(0, metrics.getFramesSkipped());
+        assertEquals(0, metrics.getFramesFailed());
+        assertEquals(0, metrics.getFramesDecoded());
+        assertEquals(-1.0, metrics.getTimeToFirstDecodeMillis(), 0.0);
+        for (DecodeMetrics.Stage stage : DecodeMetrics.Stage.values()) {
+            assertEquals(stage.toString(), 0, metrics.getHistogram(stage).getCount());
+        }
+    }
+
+    @Test
+    public void printStreamReporterPrintsCountersThenOneLinePerStage() throws UnsupportedEncodingException {
+        DecodeMetrics metrics = recordedSession();
+        metrics.record(DecodeMetrics.Stage.DECODE, 3 * MILLIS);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        new PrintStreamReporter(new PrintStream(bytes, true, "UTF-8")).report(metrics);
+
+        String[] lines = bytes.toString("UTF-8").split("\\r?\\n");
+        DecodeMetrics.Stage[] stages = DecodeMetrics.Stage.values();
+        assertEquals(1 + stages.length, lines.length);
+        assertEquals("frames in=5 dropped=1 skipped=1 failed=1 decoded=2 firstDecode=" +
+                String.format("%.1fms", 130.0), lines[0]);
+        for (int i = 0; i < stages.length; i++) {
+            assertTrue(lines[i + 1], lines[i + 1].startsWith(stages[i] + ": n="));
+        }
+        assertTrue(lines[1], lines[1].startsWith("FRAME_INTERVAL: n=4 "));
+        assertTrue(lines[1 + DecodeMetrics.Stage.DECODE.ordinal()],
+                lines[1 + DecodeMetrics.Stage.DECODE.ordinal()].startsWith("DECODE: n=1 "));
+    }
+
+    /**
+     * Five frames 10, 20, 30 and 40 ms apart: one dropped by the scheduler, one skipped by the
+     * quality filter, one failed and two decoded, the first 130 ms into the session.
+     */
+    private static DecodeMetrics recordedSession() {
+        DecodeMetrics metrics = new DecodeMetrics();
+        metrics.startSession(SESSION_START);
+        long[] arrivals = {100, 110, 130, 160, 200};
+        for (long arrival : arrivals) {
+            metrics.frameArrived(SESSION_START + arrival * MILLIS);
+        }
+        metrics.frameDropped();
+        metrics.frameSkipped();
+        metrics.frameFailed();
+        metrics.frameDecoded(SESSION_START + 130 * MILLIS);
+        metrics.frameDecoded(SESSION_START + 210 * MILLIS);
+        return metrics;
+    }
+}
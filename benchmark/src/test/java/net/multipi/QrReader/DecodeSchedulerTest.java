@@ -0,0 +1,177 @@
+package net.multipi.QrReader;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DecodeSchedulerTest {
+
+    private static final long TIMEOUT = 5000L;
+
+    private final BlockingQueue<Integer> decoded = new LinkedBlockingQueue<Integer>();
+    private final BlockingQueue<Integer> dropped = new LinkedBlockingQueue<Integer>();
+    private final CountDownLatch firstStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseFirst = new CountDownLatch(1);
+    private DecodeScheduler<Integer> scheduler;
+
+    /**
+     * Records frames; frame 0 blocks its worker until {@link #releaseFirst} opens, so the tests can
+     * submit frames while every worker is busy.
+     */
+    private final DecodeScheduler.FrameHandler<Integer> handler = new DecodeScheduler.FrameHandler<Integer>() {
+        @Override
+        public void decodeFrame(Integer frame) {
+            if (frame == 0) {
+                firstStarted.countDown();
+                // Like a decode, this does not stop when shutdown() interrupts the worker.
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        releaseFirst.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            decoded.add(frame);
+        }
+
+        @Override
+        public void frameDropped(Integer frame) {
+            dropped.add(frame);
+        }
+    };
+
+    @After
+    public void tearDown() {
+        releaseFirst.countDown();
+        if (scheduler != null) {
+            scheduler.shutdown(TIMEOUT);
+        }
+    }
+
+    @Test
+    public void newestFrameReplacesPendingOne() throws InterruptedException {
+        scheduler = new DecodeScheduler<Integer>(1, handler);
+        scheduler.start();
+        assertTrue(scheduler.submit(0));
+        assertTrue(firstStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        for (int frame = 1; frame <= 4; frame++) {
+            assertTrue(scheduler.submit(frame));
+        }
+        releaseFirst.countDown();
+
+        assertEquals(Integer.valueOf(0), decoded.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(Integer.valueOf(4), decoded.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(3, dropped.size());
+        assertEquals(Integer.valueOf(1), dropped.poll());
+        assertEquals(Integer.valueOf(2), dropped.poll());
+        assertEquals(Integer.valueOf(3), dropped.poll());
+        assertEquals(5, scheduler.getSubmittedCount());
+        assertEquals(3, scheduler.getDroppedCount());
+    }
+
+    @Test
+    public void everyFrameIsDecodedOrDroppedOnce() throws InterruptedException {
+        final int frames = 20000;
+        scheduler = new DecodeScheduler<Integer>(3, handler);
+        releaseFirst.countDown();
+        scheduler.start();
+        Thread[] producers = new Thread[2];
+        for (int p = 0; p < producers.length; p++) {
+            final int first = p * frames + 1;
+            producers[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int frame = first; frame < first + frames; frame++) {
+                        scheduler.submit(frame);
+                    }
+                }
+            });
+            producers[p].start();
+        }
+        for (Thread producer : producers) {
+            producer.join(TIMEOUT);
+        }
+        scheduler.shutdown(TIMEOUT);
+        assertFalse(scheduler.isRunning());
+
+        List<Integer> seen = new ArrayList<Integer>(decoded);
+        seen.addAll(dropped);
+        Collections.sort(seen);
+        assertEquals(producers.length * frames, seen.size());
+        for (int i = 0; i < seen.size(); i++) {
+            assertEquals(i + 1, seen.get(i).intValue());
+        }
+        assertEquals(producers.length * frames, scheduler.getSubmittedCount());
+        assertEquals(decoded.size(), scheduler.getDecodedCount());
+        assertEquals(dropped.size(), scheduler.getDroppedCount());
+    }
+
+    @Test
+    public void shutdownDropsPendingAndLaterFrames() throws InterruptedException {
+        scheduler = new DecodeScheduler<Integer>(1, handler);
+        DecodeMetrics metrics = new DecodeMetrics();
+        scheduler.setMetrics(metrics);
+        scheduler.start();
+        scheduler.submit(0);
+        assertTrue(firstStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        scheduler.submit(1);
+
+        scheduler.shutdown(0);
+        assertFalse(scheduler.isRunning());
+        assertEquals(Integer.valueOf(1), dropped.poll());
+        assertFalse(scheduler.submit(2));
+        assertEquals(Integer.valueOf(2), dropped.poll());
+
+        // The frame in progress still finishes, and nothing else is decoded after it.
+        releaseFirst.countDown();
+        assertEquals(Integer.valueOf(0), decoded.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertNull(decoded.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(2, scheduler.getSubmittedCount());
+        // Frame 2 went straight back to the handler: late frames are not counted as arrived or dropped.
+        assertEquals(1, scheduler.getDroppedCount());
+        assertEquals(2, metrics.getFramesIn());
+        assertEquals(1, metrics.getFramesDropped());
+    }
+
+    @Test
+    public void shutdownWaitsForFramesInProgress() throws InterruptedException {
+        scheduler = new DecodeScheduler<Integer>(1, handler);
+        scheduler.start();
+        scheduler.submit(0);
+        assertTrue(firstStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                releaseFirst.countDown();
+            }
+        }).start();
+
+        scheduler.shutdown(TIMEOUT);
+        assertEquals(1, scheduler.getDecodedCount());
+        assertEquals(Integer.valueOf(0), decoded.poll());
+    }
+}
@@ -0,0 +1,220 @@
+package net.multipi.QrReader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Drives the controller with a fake clock: every call gets {@link #now}, which only the test moves.
+ */
+public class FocusControllerTest {
+
+    private static final long INTERVAL = 1000L;
+    private static final long MAX_INTERVAL = 4000L;
+    private static final long MIN_GAP = 300L;
+    private static final long TIMEOUT = 2000L;
+    private static final int NEAR_MISS_LIMIT = 3;
+    private static final int BLURRY_LIMIT = 3;
+
+    private int requests;
+    private long now;
+    private final FocusController controller = new FocusController(new FocusController.Listener() {
+        @Override
+        public void focusRequested() {
+            requests++;
+        }
+    }, INTERVAL, MAX_INTERVAL, MIN_GAP, TIMEOUT, NEAR_MISS_LIMIT, BLURRY_LIMIT);
+
+    @Test
+    public void startFocusesThenWaitsForThePeriodicRefocus() {
+        controller.start(now);
+        assertEquals(1, requests);
+        assertTrue(controller.isFocusing());
+        assertEquals(TIMEOUT, controller.getDelay(now));
+
+        now = 100;
+        controller.focusCompleted(true, now);
+        assertFalse(controller.isFocusing());
+        assertEquals(INTERVAL, controller.getDelay(now));
+
+        now += INTERVAL - 1;
+        controller.tick(now);
+        assertEquals(1, requests);
+        assertEquals(1, controller.getDelay(now));
+        now++;
+        controller.tick(now);
+        assertEquals(2, requests);
+        assertTrue(controller.isFocusing());
+    }
+
+    @Test
+    public void cycleThatDoesNotCompleteIsRequestedAgain() {
+        controller.start(now);
+        now = TIMEOUT - 1;
+        controller.tick(now);
+        assertEquals(1, requests);
+        now = TIMEOUT;
+        controller.tick(now);
+        assertEquals(2, requests);
+        assertTrue(controller.isFocusing());
+        // The timeout starts over with the new request.
+        assertEquals(TIMEOUT, controller.getDelay(now));
+    }
+
+    @Test
+    public void failedFocusIsRetriedAfterTheMinimumGap() {
+        controller.start(now);
+        controller.focusCompleted(false, now);
+        assertFalse(controller.isFocusing());
+        assertEquals(MIN_GAP, controller.getDelay(now));
+        now += MIN_GAP;
+        controller.tick(now);
+        assertEquals(2, requests);
+        assertTrue(controller.isFocusing());
+    }
+
+    @Test
+    public void decodesBackOffThePeriodicRefocusUpToTheMaximum() {
+        focused();
+        long[] expected = {2000L, 4000L, 4000L};
+        for (long interval : expected) {
+            now += 10;
+            controller.frameDecoded(now);
+            assertEquals(interval, controller.getInterval());
+            assertEquals(interval, controller.getDelay(now));
+        }
+        // The backed-off interval also applies after the next periodic refocus.
+        now += MAX_INTERVAL;
+        controller.tick(now);
+        assertEquals(2, requests);
+        controller.focusCompleted(true, now);
+        assertEquals(MAX_INTERVAL, controller.getDelay(now));
+    }
+
+    @Test
+    public void streakOfNearMissesRefocusesEarlyAndResetsTheBackoff() {
+        focused();
+        controller.frameDecoded(now);
+        controller.frameDecoded(now);
+        assertEquals(4000L, controller.getInterval());
+
+        now = MIN_GAP;
+        for (int i = 0; i < NEAR_MISS_LIMIT - 1; i++) {
+            controller.nearMiss(now);
+        }
+        assertEquals(1, requests);
+        controller.nearMiss(now);
+        assertEquals(2, requests);
+        assertTrue(controller.isFocusing());
+        assertEquals(INTERVAL, controller.getInterval());
+
+        controller.focusCompleted(true, now);
+        assertEquals(INTERVAL, controller.getDelay(now));
+    }
+
+    @Test
+    public void decodeBreaksANearMissStreak() {
+        focused();
+        now = MIN_GAP;
+        for (int i = 0; i < NEAR_MISS_LIMIT - 1; i++) {
+            controller.nearMiss(now);
+        }
+        controller.frameDecoded(now);
+        for (int i = 0; i < NEAR_MISS_LIMIT - 1; i++) {
+            controller.nearMiss(now);
+        }
+        assertEquals(1, requests);
+        assertFalse(controller.isFocusing());
+    }
+
+    @Test
+    public void noEarlyRefocusWithinTheMinimumGap() {
+        focused();
+        now = MIN_GAP - 1;
+        for (int i = 0; i < 3 * NEAR_MISS_LIMIT; i++) {
+            controller.nearMiss(now);
+            controller.frameSharpness(i == 0 ? 100 : 10, now);
+        }
+        assertEquals(1, requests);
+        // The streaks carry on, so the next miss past the gap refocuses.
+        now = MIN_GAP;
+        controller.nearMiss(now);
+        assertEquals(2, requests);
+    }
+
+    @Test
+    public void streakOfBlurryFramesRefocusesEarly() {
+        focused();
+        now = MIN_GAP;
+        controller.frameSharpness(100, now);
+        controller.frameSharpness(40, now);
+        controller.frameSharpness(40, now);
+        // Not below half the peak: the streak starts over.
+        controller.frameSharpness(60, now);
+        controller.frameSharpness(40, now);
+        controller.frameSharpness(40, now);
+        assertEquals(1, requests);
+        controller.frameSharpness(40, now);
+        assertEquals(2, requests);
+        assertTrue(controller.isFocusing());
+    }
+
+    @Test
+    public void framesWhileFocusingAreIgnored() {
+        controller.start(now);
+        for (int i = 0; i < 3 * NEAR_MISS_LIMIT; i++) {
+            now += MIN_GAP;
+            controller.nearMiss(now);
+            controller.frameSharpness(i == 0 ? 100 : 10, now);
+            controller.frameDecoded(now);
+        }
+        assertEquals(1, requests);
+        assertEquals(INTERVAL, controller.getInterval());
+    }
+
+    @Test
+    public void stoppedControllerRequestsNothing() {
+        focused();
+        controller.stop();
+        assertEquals(-1, controller.getDelay(now));
+        now = 10 * MAX_INTERVAL;
+        controller.tick(now);
+        for (int i = 0; i < NEAR_MISS_LIMIT; i++) {
+            controller.nearMiss(now);
+        }
+        controller.focusCompleted(true, now);
+        assertEquals(1, requests);
+        assertEquals(-1, controller.getDelay(now));
+
+        controller.start(now);
+        assertEquals(2, requests);
+        assertEquals(INTERVAL, controller.getInterval());
+    }
+
+    @Test
+    public void rejectsBadIntervals() {
+        try {
+            new FocusController(null, 0, MAX_INTERVAL, MIN_GAP, TIMEOUT, NEAR_MISS_LIMIT, BLURRY_LIMIT);
+            fail("Accepted a zero interval");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new FocusController(null, INTERVAL, INTERVAL - 1, MIN_GAP, TIMEOUT, NEAR_MISS_LIMIT, BLURRY_LIMIT);
+            fail("Accepted a maximum below the interval");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /**
+     * Starts the controller and completes the first cycle at time 0.
+     */
+    private void focused() {
+        now = 0;
+        controller.start(now);
+        controller.focusCompleted(true, now);
+        assertEquals(1, requests);
+    }
+}
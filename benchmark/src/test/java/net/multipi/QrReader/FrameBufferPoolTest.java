@@ -0,0 +1,132 @@
+package net.multipi.QrReader;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FrameBufferPoolTest {
+
+    private static final int DEPTH = 3;
+    private static final int SIZE = 16;
+    private static final long TIMEOUT = 5000L;
+
+    @Test
+    public void borrowsUpToDepthThenNull() {
+        FrameBufferPool pool = new FrameBufferPool(DEPTH, SIZE);
+        assertEquals(DEPTH, pool.getAvailableCount());
+        byte[][] borrowed = new byte[DEPTH][];
+        for (int i = 0; i < DEPTH; i++) {
+            borrowed[i] = pool.borrow();
+            assertNotNull(borrowed[i]);
+            assertEquals(SIZE, borrowed[i].length);
+        }
+        assertNull(pool.borrow());
+        assertEquals(0, pool.getAvailableCount());
+
+        pool.release(borrowed[1]);
+        assertEquals(1, pool.getAvailableCount());
+        assertSame(borrowed[1], pool.borrow());
+    }
+
+    @Test
+    public void rejectsForeignAndExtraBuffers() {
+        FrameBufferPool pool = new FrameBufferPool(DEPTH, SIZE);
+        byte[] buffer = pool.borrow();
+        try {
+            pool.release(new byte[SIZE + 1]);
+            fail("Released a buffer of the wrong size");
+        } catch (IllegalArgumentException expected) {
+        }
+        pool.release(buffer);
+        try {
+            pool.release(buffer);
+            fail("Released more buffers than borrowed");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(DEPTH, pool.getAvailableCount());
+    }
+
+    /**
+     * Wires the pool to a scheduler the way {@code QKActivity} does and checks that every buffer comes
+     * back, whether its frame was decoded, failed to decode, replaced by a newer one, pending at
+     * shutdown or submitted after it.
+     */
+    @Test
+    public void everyPathReturnsTheBuffer() throws InterruptedException {
+        final FrameBufferPool pool = new FrameBufferPool(DEPTH, SIZE);
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirst = new CountDownLatch(1);
+        final AtomicInteger failed = new AtomicInteger();
+        DecodeScheduler<byte[]> scheduler = new DecodeScheduler<byte[]>(1, new DecodeScheduler.FrameHandler<byte[]>() {
+            @Override
+            public void decodeFrame(byte[] frame) {
+                try {
+                    if (frame[0] == 1) {
+                        firstStarted.countDown();
+                        releaseFirst.await();
+                    } else if (frame[0] == 2) {
+                        throw new IllegalStateException("Decoder failure");
+                    }
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                } finally {
+                    pool.release(frame);
+                }
+            }
+
+            @Override
+            public void frameDropped(byte[] frame) {
+                pool.release(frame);
+            }
+        });
+        scheduler.start();
+
+        // A decode that throws.
+        assertTrue(scheduler.submit(frame(pool, 2)));
+        waitForDecoded(scheduler, 1);
+        assertEquals(1, failed.get());
+        assertEquals(DEPTH, pool.getAvailableCount());
+
+        // One frame in progress, one replaced by another that is still pending at shutdown.
+        scheduler.submit(frame(pool, 1));
+        assertTrue(firstStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        scheduler.submit(frame(pool, 3));
+        scheduler.submit(frame(pool, 3));
+        // The replaced frame is back already.
+        assertEquals(1, pool.getAvailableCount());
+        scheduler.shutdown(0);
+        releaseFirst.countDown();
+        waitForDecoded(scheduler, 2);
+        assertEquals(DEPTH, pool.getAvailableCount());
+
+        // After shutdown.
+        assertFalse(scheduler.submit(frame(pool, 3)));
+        assertEquals(DEPTH, pool.getAvailableCount());
+        assertEquals(2, scheduler.getDroppedCount());
+    }
+
+    private static byte[] frame(FrameBufferPool pool, int tag) {
+        byte[] frame = pool.borrow();
+        assertNotNull(frame);
+        frame[0] = (byte) tag;
+        return frame;
+    }
+
+    private static void waitForDecoded(DecodeScheduler<?> scheduler, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (scheduler.getDecodedCount() < count) {
+            assertTrue("Frame was not decoded in time", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package net.multipi.QrReader;
+
+import net.multipi.QrReader.benchmark.SyntheticFrames;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scores synthetic frames inside a centered square framing rect, as the scanner would, and feeds
+ * the scores to a filter with the default thresholds.
+ */
+public class FrameQualityFilterTest {
+
+    private static final int SIDE = SyntheticFrames.FRAME_HEIGHT;
+    private static final int LEFT = (SyntheticFrames.FRAME_WIDTH - SIDE) / 2;
+    private static final int MIN_SHARPNESS = 20;
+    private static final int MAX_DUPLICATES = 5;
+
+    private final FrameQualityFilter filter = FrameQualityFilter.createDefault();
+
+    @Test
+    public void blurredFramesAreRejected() {
+        int sharp = sharpness(SyntheticFrames.nv21(240, 1, 0, 1L));
+        int blurred = sharpness(SyntheticFrames.nv21(240, 1, 8, 1L));
+        assertTrue("Sharp frame scored " + sharp, sharp >= MIN_SHARPNESS);
+        assertTrue("Blurred frame scored " + blurred, blurred < MIN_SHARPNESS);
+        assertTrue(filter.accept(sharp, 1L));
+        assertFalse(filter.accept(blurred, 1L));
+        assertEquals(2, filter.getEvaluatedCount());
+        assertEquals(1, filter.getBlurryCount());
+        assertEquals(0.5, filter.getRejectRate(), 0.0);
+    }
+
+    @Test
+    public void repeatedFramesShareAFingerprint() {
+        long first = fingerprint(SyntheticFrames.nv21(240, 2, 0, 1L));
+        // The same scene with fresh sensor noise.
+        long repeated = fingerprint(SyntheticFrames.nv21(240, 2, 0, 2L));
+        // The code moved to the left of the framing rect.
+        long moved = fingerprint(SyntheticFrames.nv21(240, 2, 0, 1L, 0.35f, 0.5f));
+        assertTrue(Long.toBinaryString(first ^ repeated), Long.bitCount(first ^ repeated) <= 2);
+        assertTrue(Long.toBinaryString(first ^ moved), Long.bitCount(first ^ moved) > 2);
+    }
+
+    @Test
+    public void repeatsOfAFailedFrameAreRejectedUpToTheLimit() {
+        byte[] frame = SyntheticFrames.nv21(240, 2, 0, 1L);
+        int sharpness = sharpness(frame);
+        long fingerprint = fingerprint(frame);
+        long moved = fingerprint(SyntheticFrames.nv21(240, 2, 0, 1L, 0.35f, 0.5f));
+        assertTrue(filter.accept(sharpness, fingerprint));
+        filter.frameFailed(fingerprint);
+
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < MAX_DUPLICATES; i++) {
+                assertFalse("Repeat " + i, filter.accept(sharpness, fingerprint ^ (1L << i)));
+            }
+            // One repeat gets through after the limit, and the count starts over.
+            assertTrue(filter.accept(sharpness, fingerprint));
+        }
+        assertEquals(2 * MAX_DUPLICATES, filter.getDuplicateCount());
+        // A different scene is not a repeat.
+        assertTrue(filter.accept(sharpness, moved));
+    }
+
+    @Test
+    public void decodeForgetsTheFailedFrame() {
+        byte[] frame = SyntheticFrames.nv21(240, 2, 0, 1L);
+        int sharpness = sharpness(frame);
+        long fingerprint = fingerprint(frame);
+        filter.frameFailed(fingerprint);
+        assertFalse(filter.accept(sharpness, fingerprint));
+        filter.frameDecoded();
+        assertTrue(filter.accept(sharpness, fingerprint));
+        assertEquals(1, filter.getDuplicateCount());
+    }
+
+    private static int sharpness(byte[] frame) {
+        return FrameQualityFilter.sharpness(frame, SyntheticFrames.FRAME_WIDTH, LEFT, 0, SIDE, SIDE);
+    }
+
+    private static long fingerprint(byte[] frame) {
+        return FrameQualityFilter.fingerprint(frame, SyntheticFrames.FRAME_WIDTH, LEFT, 0, SIDE, SIDE);
+    }
+}
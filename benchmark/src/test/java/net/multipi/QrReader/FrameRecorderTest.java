@@ -0,0 +1,128 @@
+package net.multipi.QrReader;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FrameRecorderTest {
+
+    private static final int FRAMES = 3;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void framesReadBackAsRecorded() throws IOException {
+        PreviewGeometry[] geometries = {
+                PreviewGeometry.create(320, 240, 1920, 1080),
+                PreviewGeometry.create(320, 240, 1080, 1920, 90),
+                PreviewGeometry.create(176, 144, 800, 480, 270),
+        };
+        byte[][] frames = new byte[FRAMES][];
+        File file = folder.newFile("capture.qrfr");
+        FrameRecorder recorder = new FrameRecorder(file, FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            PreviewGeometry geometry = geometries[i];
+            frames[i] = PlanarYUVLuminanceSourceTest.randomFrame(geometry.getPreviewWidth(),
+                    geometry.getPreviewHeight(), i);
+            assertTrue(recorder.record(frames[i], geometry, 1000000000L + i * 33333333L));
+        }
+        recorder.close();
+        assertEquals(FRAMES, recorder.getRecordedCount());
+        assertEquals(0, recorder.getSkippedCount());
+
+        FrameRecordingReader reader = new FrameRecordingReader(file);
+        FrameRecordingReader.Frame frame = new FrameRecordingReader.Frame();
+        for (int i = 0; i < FRAMES; i++) {
+            PreviewGeometry geometry = geometries[i];
+            assertTrue(reader.read(frame));
+            assertEquals(1000000000L + i * 33333333L, frame.getTimestamp());
+            assertEquals(geometry.getPreviewWidth(), frame.getDataWidth());
+            assertEquals(geometry.getPreviewHeight(), frame.getDataHeight());
+            assertEquals(geometry.getPreviewLeft(), frame.getLeft());
+            assertEquals(geometry.getPreviewTop(), frame.getTop());
+            assertEquals(geometry.getPreviewFramingWidth(), frame.getWidth());
+            assertEquals(geometry.getPreviewFramingHeight(), frame.getHeight());
+            assertEquals(geometry.getRotation(), frame.getRotation());
+            // Only the Y plane is recorded; the buffer is kept when the next frame is smaller.
+            int size = geometry.getPreviewWidth() * geometry.getPreviewHeight();
+            assertArrayEquals(Arrays.copyOf(frames[i], size), Arrays.copyOf(frame.getLuminance(), size));
+        }
+        assertFalse(reader.read(frame));
+        reader.close();
+    }
+
+    @Test
+    public void recordingCutOffMidFrameIsRejected() throws IOException {
+        File file = folder.newFile("truncated.qrfr");
+        PreviewGeometry geometry = PreviewGeometry.create(320, 240, 1920, 1080);
+        FrameRecorder recorder = new FrameRecorder(file, 1);
+        recorder.record(PlanarYUVLuminanceSourceTest.randomFrame(320, 240, 1L), geometry, 1L);
+        recorder.close();
+        RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+        try {
+            truncated.setLength(truncated.length() - 100);
+        } finally {
+            truncated.close();
+        }
+
+        FrameRecordingReader reader = new FrameRecordingReader(file);
+        try {
+            reader.read(new FrameRecordingReader.Frame());
+            fail("Read a truncated frame");
+        } catch (IOException expected) {
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void recordingCutOffInTheHeaderIsRejected() throws IOException {
+        assertRejected(header(FrameRecorder.MAGIC), "a header without a version");
+    }
+
+    @Test
+    public void unsupportedVersionIsRejected() throws IOException {
+        assertRejected(header(FrameRecorder.MAGIC, FrameRecorder.VERSION + 1), "a newer version");
+        assertRejected(header(FrameRecorder.MAGIC, 0), "version 0");
+    }
+
+    @Test
+    public void otherFilesAreRejected() throws IOException {
+        assertRejected(header(0x89504e47, 0x0d0a1a0a), "a PNG signature");
+    }
+
+    private File header(int... values) throws IOException {
+        File file = folder.newFile();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            for (int value : values) {
+                out.writeInt(value);
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void assertRejected(File file, String what) {
+        try {
+            new FrameRecordingReader(file).close();
+            fail("Accepted " + what);
+        } catch (IOException expected) {
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.LuminanceSource;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class InvertedLuminanceSourceTest {
+
+    private static final int DATA_WIDTH = 37;
+    private static final int DATA_HEIGHT = 23;
+
+    private final byte[] yuv = PlanarYUVLuminanceSourceTest.randomFrame(DATA_WIDTH, DATA_HEIGHT, 11L);
+
+    @Test
+    public void rowsAndMatrixAreInverted() {
+        LuminanceSource plain = new PlanarYUVLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT, 3, 2, 30, 20, false);
+        InvertedLuminanceSource inverted = new InvertedLuminanceSource(plain, null);
+        assertEquals(plain.getWidth(), inverted.getWidth());
+        assertEquals(plain.getHeight(), inverted.getHeight());
+        byte[] row = new byte[plain.getWidth()];
+        for (int y = 0; y < plain.getHeight(); y++) {
+            byte[] expected = plain.getRow(y, null);
+            byte[] actual = inverted.getRow(y, row);
+            for (int x = 0; x < plain.getWidth(); x++) {
+                assertEquals((byte) ~expected[x], actual[x]);
+            }
+        }
+        byte[] expected = plain.getMatrix();
+        byte[] actual = inverted.getMatrix();
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals((byte) ~expected[i], actual[i]);
+        }
+    }
+
+    @Test
+    public void matrixIsInvertedInPlaceWhenTheDelegateSharesTheBuffer() {
+        byte[] matrixBuffer = new byte[30 * 20];
+        LuminanceSource plain = new PlanarYUVLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT, 3, 2, 30, 20, false,
+                matrixBuffer);
+        byte[] expected = plain.getMatrix().clone();
+        byte[] actual = new InvertedLuminanceSource(plain, matrixBuffer).getMatrix();
+        assertSame(matrixBuffer, actual);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals((byte) ~expected[i], actual[i]);
+        }
+    }
+
+    @Test
+    public void tooSmallBufferIsNotUsed() {
+        byte[] matrixBuffer = new byte[10];
+        LuminanceSource plain = new PlanarYUVLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT, 3, 2, 30, 20, false);
+        assertNotSame(matrixBuffer, new InvertedLuminanceSource(plain, matrixBuffer).getMatrix());
+    }
+
+    @Test
+    public void cropStaysInverted() {
+        LuminanceSource plain = new PlanarYUVLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT, 0, 0,
+                DATA_WIDTH, DATA_HEIGHT, false);
+        LuminanceSource cropped = new InvertedLuminanceSource(plain, null).crop(4, 5, 10, 8);
+        byte[] expected = plain.crop(4, 5, 10, 8).getMatrix();
+        byte[] actual = cropped.getMatrix();
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals((byte) ~expected[i], actual[i]);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes a 384 MB scan, over ten times the heap. The pom runs this class on its own with a
+ * small {@code -Xmx}, so reading the image onto the heap, or any tile much larger than
+ * {@link #TILE_SIZE}, fails with an {@link OutOfMemoryError}.
+ */
+public class LargeImageDecoderTest {
+
+    private static final int WIDTH = 24000;
+    private static final int HEIGHT = 16000;
+    private static final int TILE_SIZE = 1024;
+    private static final int CODE_SIZE = 360;
+    private static final int CODE_LEFT = 17321;
+    private static final int CODE_TOP = 11127;
+    private static final String CONTENTS = "https://multipi.net/QrReader/large-image";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void decodesAScanLargerThanTheHeap() throws IOException, WriterException {
+        assertTrue("Run with a heap smaller than the image, as the pom does",
+                Runtime.getRuntime().maxMemory() < (long) WIDTH * HEIGHT);
+        File file = folder.newFile("scan.pgm");
+        writeScan(file);
+
+        Executor direct = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        LargeImageDecoder decoder = new LargeImageDecoder(direct, TILE_SIZE, 0.25f, DecodeProfile.QR);
+        MappedLuminanceSource image = MappedLuminanceSource.openPgm(file);
+        assertEquals(WIDTH, image.getWidth());
+        assertEquals(HEIGHT, image.getHeight());
+        Result result = decoder.decode(image);
+        assertNotNull(decoder.toString(), result);
+        assertEquals(CONTENTS, result.getText());
+        // Result points are in the coordinates of the full image, inside the code.
+        for (ResultPoint point : result.getResultPoints()) {
+            assertTrue(point.toString(), point.getX() > CODE_LEFT && point.getX() < CODE_LEFT + CODE_SIZE);
+            assertTrue(point.toString(), point.getY() > CODE_TOP && point.getY() < CODE_TOP + CODE_SIZE);
+        }
+    }
+
+    /**
+     * Writes a page of noisy paper with lines of "text" and one code, a row at a time so the image
+     * is never on the heap.
+     */
+    private static void writeScan(File file) throws IOException, WriterException {
+        BitMatrix code = new QRCodeWriter().encode(CONTENTS, BarcodeFormat.QR_CODE, CODE_SIZE, CODE_SIZE);
+        Random random = new Random(53L);
+        byte[] row = new byte[WIDTH];
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+        try {
+            out.write(("P5\n# synthetic scan\n" + WIDTH + " " + HEIGHT + "\n255\n").getBytes("US-ASCII"));
+            for (int y = 0; y < HEIGHT; y++) {
+                int codeY = y - CODE_TOP;
+                boolean textLine = y / 40 % 3 == 0 && y % 40 < 12;
+                for (int x = 0; x < WIDTH; x++) {
+                    int codeX = x - CODE_LEFT;
+                    int value = 202 + random.nextInt(16);
+                    if (codeX >= 0 && codeY >= 0 && codeX < code.getWidth() && codeY < code.getHeight()) {
+                        if (code.get(codeX, codeY)) {
+                            value = 35 + random.nextInt(16);
+                        }
+                    } else if (textLine && x / 25 % 4 != 0 && !nearCode(codeX, codeY, code)) {
+                        value = 60;
+                    }
+                    row[x] = (byte) value;
+                }
+                out.write(row);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static boolean nearCode(int codeX, int codeY, BitMatrix code) {
+        return codeX >= -50 && codeY >= -50 && codeX < code.getWidth() + 50 && codeY < code.getHeight() + 50;
+    }
+}
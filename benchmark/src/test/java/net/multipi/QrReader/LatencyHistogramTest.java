@@ -0,0 +1,81 @@
+package net.multipi.QrReader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    private static final long MILLIS = 1000000L;
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getMeanMillis(), 0.0);
+        assertEquals(0.0, histogram.getPercentileMillis(50), 0.0);
+        assertEquals(0.0, histogram.getMaxMillis(), 0.0);
+    }
+
+    /**
+     * 3 ms falls in the [2048, 4096) us bucket, 10 ms in [8192, 16384) us and 100 ms in
+     * [65536, 131072) us, whose bound is capped at the maximum.
+     */
+    @Test
+    public void percentilesAreTheUpperBoundsOfTheirBuckets() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(3 * MILLIS);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(10 * MILLIS);
+        }
+        histogram.record(100 * MILLIS);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(4.6, histogram.getMeanMillis(), 1e-9);
+        assertEquals(100.0, histogram.getMaxMillis(), 0.0);
+        assertEquals(4.096, histogram.getPercentileMillis(50), 1e-9);
+        assertEquals(4.096, histogram.getPercentileMillis(90), 1e-9);
+        assertEquals(16.384, histogram.getPercentileMillis(91), 1e-9);
+        assertEquals(16.384, histogram.getPercentileMillis(99), 1e-9);
+        assertEquals(100.0, histogram.getPercentileMillis(100), 0.0);
+    }
+
+    @Test
+    public void bucketBoundaries() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // Under 2 us, and negative durations, go to the first bucket.
+        histogram.record(-5);
+        histogram.record(1999);
+        assertEquals(0.001999, histogram.getPercentileMillis(100), 1e-12);
+        histogram.reset();
+        // 2 us starts the second bucket, [2, 4) us.
+        histogram.record(2000);
+        histogram.record(4000);
+        assertEquals(0.004, histogram.getPercentileMillis(50), 1e-12);
+        assertEquals(0.004, histogram.getPercentileMillis(100), 1e-12);
+    }
+
+    @Test
+    public void durationsBeyondTheLastBucketAreKept() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE / 2);
+        assertEquals(1, histogram.getCount());
+        assertEquals(histogram.getMaxMillis(), histogram.getPercentileMillis(50), 0.0);
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(3 * MILLIS);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getMaxMillis(), 0.0);
+        assertEquals(0.0, histogram.getPercentileMillis(99), 0.0);
+        histogram.record(MILLIS);
+        assertEquals(1.0, histogram.getMeanMillis(), 1e-9);
+        assertTrue(histogram.toString(), histogram.toString().startsWith("n=1 "));
+    }
+}
@@ -0,0 +1,175 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.LuminanceSource;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class PlanarYUVLuminanceSourceTest {
+
+    private static final int DATA_WIDTH = 37;
+    private static final int DATA_HEIGHT = 23;
+
+    /** A Y plane followed by a half-size chroma plane, as in NV21. */
+    private final byte[] yuv = randomFrame(DATA_WIDTH, DATA_HEIGHT, 7L);
+
+    @Test
+    public void rowsAndMatrixMatchTheCrop() {
+        Random random = new Random(11L);
+        for (int i = 0; i < 500; i++) {
+            int width = 1 + random.nextInt(DATA_WIDTH);
+            int height = 1 + random.nextInt(DATA_HEIGHT);
+            int left = random.nextInt(DATA_WIDTH - width + 1);
+            int top = random.nextInt(DATA_HEIGHT - height + 1);
+            boolean mirrored = random.nextBoolean();
+            PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT,
+                    left, top, width, height, mirrored);
+            assertMatches(source, left, top, width, height, mirrored);
+        }
+    }
+
+    @Test
+    public void cropsOfCropsMatch() {
+        Random random = new Random(13L);
+        for (int i = 0; i < 500; i++) {
+            int width = 1 + random.nextInt(DATA_WIDTH);
+            int height = 1 + random.nextInt(DATA_HEIGHT);
+            int left = random.nextInt(DATA_WIDTH - width + 1);
+            int top = random.nextInt(DATA_HEIGHT - height + 1);
+            boolean mirrored = random.nextBoolean();
+            LuminanceSource source = new PlanarYUVLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT,
+                    left, top, width, height, mirrored);
+
+            int cropWidth = 1 + random.nextInt(width);
+            int cropHeight = 1 + random.nextInt(height);
+            int cropLeft = random.nextInt(width - cropWidth + 1);
+            int cropTop = random.nextInt(height - cropHeight + 1);
+            LuminanceSource crop = source.crop(cropLeft, cropTop, cropWidth, cropHeight);
+            assertEquals(cropWidth, crop.getWidth());
+            assertEquals(cropHeight, crop.getHeight());
+            for (int y = 0; y < cropHeight; y++) {
+                byte[] row = crop.getRow(y, null);
+                for (int x = 0; x < cropWidth; x++) {
+                    assertEquals(source.getRow(cropTop + y, null)[cropLeft + x], row[x]);
+                }
+            }
+            assertMatrix(crop.getMatrix(), crop);
+        }
+    }
+
+    @Test
+    public void fullWidthTopCropAliasesTheFrame() {
+        PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT,
+                0, 0, DATA_WIDTH, DATA_HEIGHT - 5, false, new byte[DATA_WIDTH * DATA_HEIGHT]);
+        byte[] matrix = source.getMatrix();
+        assertSame(yuv, matrix);
+        assertMatches(source, 0, 0, DATA_WIDTH, DATA_HEIGHT - 5, false);
+    }
+
+    @Test
+    public void otherCropsCopyIntoTheMatrixBuffer() {
+        byte[] buffer = new byte[DATA_WIDTH * DATA_HEIGHT];
+        // Full width below the top: one copy into the buffer.
+        PlanarYUVLuminanceSource lower = new PlanarYUVLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT,
+                0, 3, DATA_WIDTH, 10, false, buffer);
+        assertSame(buffer, lower.getMatrix());
+        assertMatches(lower, 0, 3, DATA_WIDTH, 10, false);
+        // Full width from the top but mirrored: rows have to be reversed, so no aliasing.
+        PlanarYUVLuminanceSource mirrored = new PlanarYUVLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT,
+                0, 0, DATA_WIDTH, DATA_HEIGHT, true, buffer);
+        assertSame(buffer, mirrored.getMatrix());
+        assertMatches(mirrored, 0, 0, DATA_WIDTH, DATA_HEIGHT, true);
+        // A buffer that is too small is not used.
+        PlanarYUVLuminanceSource large = new PlanarYUVLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT,
+                1, 1, DATA_WIDTH - 1, DATA_HEIGHT - 1, false, new byte[10]);
+        assertMatches(large, 1, 1, DATA_WIDTH - 1, DATA_HEIGHT - 1, false);
+    }
+
+    @Test
+    public void cropDoesNotShareTheMatrixBuffer() {
+        byte[] buffer = new byte[DATA_WIDTH * DATA_HEIGHT];
+        PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT,
+                2, 2, 20, 15, false, buffer);
+        byte[] parentMatrix = source.getMatrix();
+        byte[] cropMatrix = source.crop(1, 1, 10, 10).getMatrix();
+        assertNotSame(parentMatrix, cropMatrix);
+        assertMatrix(parentMatrix, source);
+    }
+
+    @Test
+    public void getRowReusesLargeEnoughRows() {
+        PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT,
+                4, 5, 10, 6, false);
+        byte[] row = new byte[12];
+        assertSame(row, source.getRow(2, row));
+        assertNotSame(row, source.getRow(2, new byte[9]));
+        try {
+            source.getRow(6, row);
+            fail("Read a row below the crop");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void thumbnailSamplesTheCrop() {
+        for (boolean mirrored : new boolean[] {false, true}) {
+            PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT,
+                    3, 2, 31, 19, mirrored);
+            for (int factor = 1; factor <= 3; factor++) {
+                int[] pixels = source.renderThumbnail(factor, null);
+                int width = source.getWidth() / factor;
+                for (int y = 0; y < source.getHeight() / factor; y++) {
+                    byte[] row = source.getRow(y * factor, null);
+                    for (int x = 0; x < width; x++) {
+                        int grey = row[x * factor] & 0xff;
+                        assertEquals(0xFF000000 | grey * 0x00010101, pixels[y * width + x]);
+                    }
+                }
+                assertSame(pixels, source.renderThumbnail(factor, pixels));
+            }
+        }
+    }
+
+    private void assertMatches(LuminanceSource source, int left, int top, int width, int height, boolean mirrored) {
+        assertEquals(width, source.getWidth());
+        assertEquals(height, source.getHeight());
+        byte[] row = null;
+        for (int y = 0; y < height; y++) {
+            row = source.getRow(y, row);
+            for (int x = 0; x < width; x++) {
+                assertEquals(pixel(left, top, width, mirrored, x, y), row[x]);
+            }
+        }
+        byte[] matrix = source.getMatrix();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                assertEquals(pixel(left, top, width, mirrored, x, y), matrix[y * width + x]);
+            }
+        }
+    }
+
+    private static void assertMatrix(byte[] matrix, LuminanceSource source) {
+        int width = source.getWidth();
+        for (int y = 0; y < source.getHeight(); y++) {
+            byte[] row = source.getRow(y, null);
+            for (int x = 0; x < width; x++) {
+                assertEquals(row[x], matrix[y * width + x]);
+            }
+        }
+    }
+
+    private byte pixel(int left, int top, int width, boolean mirrored, int x, int y) {
+        return yuv[(top + y) * DATA_WIDTH + left + (mirrored ? width - 1 - x : x)];
+    }
+
+    static byte[] randomFrame(int width, int height, long seed) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        new Random(seed).nextBytes(frame);
+        return frame;
+    }
+}
@@ -0,0 +1,111 @@
+package net.multipi.QrReader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PreviewGeometryTest {
+
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+    private static final int[][] PREVIEW_SIZES = {{1280, 720}, {640, 480}, {1920, 1080}, {800, 600}};
+    private static final int[][] SCREEN_SIZES = {{1920, 1080}, {1080, 1920}, {800, 480}, {480, 800}, {2560, 1440}};
+
+    @Test
+    public void uprightPhoneWithLandscapeCamera() {
+        PreviewGeometry geometry = PreviewGeometry.create(1280, 720, 1080, 1920, 90);
+        assertEquals(270, geometry.getFramingLeft());
+        assertEquals(690, geometry.getFramingTop());
+        assertEquals(810, geometry.getFramingRight());
+        assertEquals(1230, geometry.getFramingBottom());
+        // On screen the framing rect covers [180, 540) x [460, 820) of the 720x1280 preview; a
+        // clockwise quarter turn shows data column x as screen row x and data row y as column 719 - y.
+        assertEquals(460, geometry.getPreviewLeft());
+        assertEquals(180, geometry.getPreviewTop());
+        assertEquals(820, geometry.getPreviewRight());
+        assertEquals(540, geometry.getPreviewBottom());
+        assertEquals(360, geometry.getShownFramingWidth());
+        assertEquals(360, geometry.getShownFramingHeight());
+    }
+
+    @Test
+    public void unrotatedPreviewOfScreenSizeIsTheFramingRect() {
+        PreviewGeometry geometry = PreviewGeometry.create(1920, 1080, 1920, 1080);
+        assertEquals(geometry.getFramingLeft(), geometry.getPreviewLeft());
+        assertEquals(geometry.getFramingTop(), geometry.getPreviewTop());
+        assertEquals(geometry.getFramingRight(), geometry.getPreviewRight());
+        assertEquals(geometry.getFramingBottom(), geometry.getPreviewBottom());
+    }
+
+    /**
+     * For every rotation, the preview rect, turned the way the preview is shown, lands on the
+     * framing rect scaled from the screen to the shown preview.
+     */
+    @Test
+    public void previewRectShowsAsTheFramingRect() {
+        for (int rotation : ROTATIONS) {
+            for (int[] preview : PREVIEW_SIZES) {
+                for (int[] screen : SCREEN_SIZES) {
+                    PreviewGeometry geometry = PreviewGeometry.create(preview[0], preview[1], screen[0], screen[1],
+                            rotation);
+                    assertShowsAsFramingRect(geometry);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rejectsOtherRotations() {
+        try {
+            PreviewGeometry.create(1280, 720, 1920, 1080, 45);
+            fail("Accepted a rotation of 45 degrees");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static void assertShowsAsFramingRect(PreviewGeometry geometry) {
+        String message = geometry.toString();
+        int previewWidth = geometry.getPreviewWidth();
+        int previewHeight = geometry.getPreviewHeight();
+        boolean sideways = RotatedLuminanceSource.isSideways(geometry.getRotation());
+        int shownWidth = sideways ? previewHeight : previewWidth;
+        int shownHeight = sideways ? previewWidth : previewHeight;
+        int left = geometry.getFramingLeft() * shownWidth / geometry.getScreenWidth();
+        int top = geometry.getFramingTop() * shownHeight / geometry.getScreenHeight();
+        int right = geometry.getFramingRight() * shownWidth / geometry.getScreenWidth();
+        int bottom = geometry.getFramingBottom() * shownHeight / geometry.getScreenHeight();
+
+        assertTrue(message, geometry.getPreviewLeft() >= 0 && geometry.getPreviewTop() >= 0);
+        assertTrue(message, geometry.getPreviewRight() <= previewWidth);
+        assertTrue(message, geometry.getPreviewBottom() <= previewHeight);
+        assertEquals(message, right - left, geometry.getShownFramingWidth());
+        assertEquals(message, bottom - top, geometry.getShownFramingHeight());
+
+        // Opposite corners of the preview rect, shown on screen, are opposite corners of the framing rect.
+        int[] first = shown(geometry, geometry.getPreviewLeft(), geometry.getPreviewTop());
+        int[] last = shown(geometry, geometry.getPreviewRight() - 1, geometry.getPreviewBottom() - 1);
+        assertEquals(message, left, Math.min(first[0], last[0]));
+        assertEquals(message, top, Math.min(first[1], last[1]));
+        assertEquals(message, right - 1, Math.max(first[0], last[0]));
+        assertEquals(message, bottom - 1, Math.max(first[1], last[1]));
+    }
+
+    /**
+     * @return where data pixel (x, y) is shown, in preview pixels of the rotated preview
+     */
+    private static int[] shown(PreviewGeometry geometry, int x, int y) {
+        int width = geometry.getPreviewWidth();
+        int height = geometry.getPreviewHeight();
+        switch (geometry.getRotation()) {
+            case 0:
+                return new int[] {x, y};
+            case 90:
+                return new int[] {height - 1 - y, x};
+            case 180:
+                return new int[] {width - 1 - x, height - 1 - y};
+            default:
+                return new int[] {y, width - 1 - x};
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package net.multipi.QrReader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RecentResultsTest {
+
+    private static final long WINDOW = 2000L;
+
+    @Test
+    public void contentIsNewOnlyOnceWithinTheWindow() {
+        RecentResults results = new RecentResults(8, WINDOW);
+        assertTrue(results.add("a", 0));
+        assertFalse(results.add("a", 1999));
+        assertTrue(results.add("b", 2000));
+        assertEquals(2, results.size());
+    }
+
+    @Test
+    public void everySightingRestartsTheWindow() {
+        RecentResults results = new RecentResults(8, WINDOW);
+        assertTrue(results.add("a", 0));
+        // A label held in view is seen again and again, but reported once.
+        for (long now = 1000; now <= 10000; now += 1000) {
+            assertFalse("At " + now, results.add("a", now));
+        }
+        // Out of view for a whole window, it is new again.
+        assertTrue(results.add("a", 10000 + WINDOW));
+        assertEquals(1, results.getEvictedCount());
+    }
+
+    @Test
+    public void leastRecentlySeenContentIsEvictedOverCapacity() {
+        RecentResults results = new RecentResults(2, WINDOW);
+        assertTrue(results.add("a", 0));
+        assertTrue(results.add("b", 1));
+        assertFalse(results.add("a", 2));
+        assertTrue(results.add("c", 3));
+        assertEquals(2, results.size());
+        assertEquals(1, results.getEvictedCount());
+        // b was forgotten, a was not.
+        assertFalse(results.add("a", 4));
+        assertTrue(results.add("b", 5));
+    }
+
+    @Test
+    public void clearForgetsEverything() {
+        RecentResults results = new RecentResults(8, WINDOW);
+        results.add("a", 0);
+        results.clear();
+        assertEquals(0, results.size());
+        assertTrue(results.add("a", 1));
+    }
+
+    @Test
+    public void rejectsZeroCapacity() {
+        try {
+            new RecentResults(0, WINDOW);
+            fail("Accepted a zero capacity");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every code is cached for the same region of a small random frame, each from a frame of its own, so
+ * a lookup in one code's frame matches that code and no other.
+ */
+public class ResultCacheTest {
+
+    private static final int SIZE = 64;
+    private static final long LONG_TIME = 1000000L;
+
+    private final Result a = result("a");
+    private final Result b = result("b");
+    private final Result c = result("c");
+    private final byte[] frameA = PlanarYUVLuminanceSourceTest.randomFrame(SIZE, SIZE, 1L);
+    private final byte[] frameB = PlanarYUVLuminanceSourceTest.randomFrame(SIZE, SIZE, 2L);
+    private final byte[] frameC = PlanarYUVLuminanceSourceTest.randomFrame(SIZE, SIZE, 3L);
+
+    @Test
+    public void evictsTheLeastRecentlySeenCodeOverCapacity() {
+        ResultCache cache = new ResultCache(2, LONG_TIME, LONG_TIME, 0L, 3);
+        put(cache, a, frameA, 0);
+        put(cache, b, frameB, 1);
+        // Seeing a again makes b the least recently seen.
+        assertSame(a, lookup(cache, frameA, 2));
+        put(cache, c, frameC, 3);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictedCount());
+        assertNull(lookup(cache, frameB, 4));
+        assertSame(a, lookup(cache, frameA, 5));
+        assertSame(c, lookup(cache, frameC, 6));
+    }
+
+    @Test
+    public void expiresCodesNotSeenForTheTtl() {
+        ResultCache cache = new ResultCache(8, 1000L, LONG_TIME, 0L, 3);
+        put(cache, a, frameA, 0);
+        assertSame(a, lookup(cache, frameA, 999));
+        // The hit counts as a sighting, so the entry lives on.
+        assertSame(a, lookup(cache, frameA, 1998));
+        assertNull(lookup(cache, frameA, 2998));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictedCount());
+    }
+
+    @Test
+    public void offersACodeOnlyUntilItIsDueForRevalidation() {
+        ResultCache cache = new ResultCache(8, LONG_TIME, 500L, 0L, 3);
+        put(cache, a, frameA, 0);
+        assertSame(a, lookup(cache, frameA, 499));
+        assertNull(lookup(cache, frameA, 500));
+        assertEquals(1, cache.size());
+        put(cache, a, frameA, 600);
+        assertSame(a, lookup(cache, frameA, 700));
+    }
+
+    @Test
+    public void matchesFingerprintsWithinTheHammingDistance() {
+        ResultCache cache = new ResultCache(8, LONG_TIME, LONG_TIME, 0L, 3);
+        long fingerprint = FrameQualityFilter.fingerprint(frameA, SIZE, 0, 0, SIZE, SIZE);
+        cache.put(a, 0, 0, SIZE, SIZE, fingerprint ^ 0x8000000000000101L, 0);
+        assertSame(a, lookup(cache, frameA, 1));
+        cache.put(a, 0, 0, SIZE, SIZE, fingerprint ^ 0x8000000000000301L, 2);
+        assertNull(lookup(cache, frameA, 3));
+    }
+
+    @Test
+    public void prefersTheClosestMatch() {
+        ResultCache cache = new ResultCache(8, LONG_TIME, LONG_TIME, 0L, 3);
+        long fingerprint = FrameQualityFilter.fingerprint(frameA, SIZE, 0, 0, SIZE, SIZE);
+        cache.put(a, 0, 0, SIZE, SIZE, fingerprint ^ 3L, 0);
+        cache.put(b, 0, 0, SIZE, SIZE, fingerprint ^ 1L, 0);
+        cache.put(c, 0, 0, SIZE, SIZE, fingerprint ^ 7L, 0);
+        assertSame(b, lookup(cache, frameA, 1));
+    }
+
+    @Test
+    public void countsHitsAndLookups() {
+        ResultCache cache = new ResultCache(8, LONG_TIME, LONG_TIME, 0L, 3);
+        assertEquals(0.0, cache.getHitRate(), 0.0);
+        put(cache, a, frameA, 0);
+        assertSame(a, lookup(cache, frameA, 1));
+        assertNull(lookup(cache, frameB, 2));
+        assertNull(lookup(cache, frameC, 3));
+        assertNull(lookup(cache, frameB, 4));
+        assertEquals(4, cache.getLookupCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(0.25, cache.getHitRate(), 0.0);
+        assertEquals(0, cache.getEvictedCount());
+    }
+
+    @Test
+    public void rejectedCandidateIsNotOfferedAgain() {
+        ResultCache cache = new ResultCache(8, LONG_TIME, LONG_TIME, 0L, 3);
+        put(cache, a, frameA, 0);
+        cache.reject(lookup(cache, frameA, 1));
+        assertEquals(1, cache.getRejectedCount());
+        assertNull(lookup(cache, frameA, 2));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void suppressesRepeatReportsWithinTheWindow() {
+        ResultCache cache = new ResultCache(8, LONG_TIME, LONG_TIME, 3000L, 3);
+        put(cache, a, frameA, 0);
+        assertTrue(cache.report(a, 0));
+        assertFalse(cache.report(a, 2999));
+        assertTrue(cache.report(a, 3000));
+        assertFalse(cache.report(a, 3001));
+        // A code that is not cached is always reported.
+        assertTrue(cache.report(b, 3002));
+        assertTrue(cache.report(b, 3003));
+        assertEquals(4, cache.getReportedCount());
+        assertEquals(2, cache.getSuppressedCount());
+    }
+
+    private static void put(ResultCache cache, Result result, byte[] frame, long now) {
+        cache.put(result, 0, 0, SIZE, SIZE, FrameQualityFilter.fingerprint(frame, SIZE, 0, 0, SIZE, SIZE), now);
+    }
+
+    private static Result lookup(ResultCache cache, byte[] frame, long now) {
+        return cache.lookup(frame, SIZE, SIZE, now);
+    }
+
+    private static Result result(String text) {
+        return new Result(text, null, new ResultPoint[0], BarcodeFormat.QR_CODE);
+    }
+}
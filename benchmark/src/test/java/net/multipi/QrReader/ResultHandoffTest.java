@@ -0,0 +1,190 @@
+package net.multipi.QrReader;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResultHandoffTest {
+
+    private static final int WORKERS = 4;
+    private static final int ROUNDS = 500;
+    private static final int SESSIONS = 2000;
+
+    @Test
+    public void sessionDeliversOnceAndRejectsStaleTokens() {
+        final AtomicInteger received = new AtomicInteger();
+        ResultHandoff<String> handoff = new ResultHandoff<String>(new ResultHandoff.Receiver<String>() {
+            @Override
+            public void receive(String result) {
+                received.incrementAndGet();
+            }
+        });
+        assertFalse(handoff.publish(handoff.getSession(), "before any session"));
+        long first = handoff.open();
+        assertTrue(handoff.isOpen(first));
+        assertTrue(handoff.publish(first, "a"));
+        assertFalse(handoff.isOpen(first));
+        assertFalse(handoff.publish(first, "b"));
+
+        long second = handoff.open();
+        assertFalse(handoff.publish(first, "from the first session"));
+        handoff.close();
+        assertFalse(handoff.isOpen(second));
+        assertFalse(handoff.publish(second, "after close"));
+        assertTrue(handoff.publish(handoff.open(), "c"));
+
+        assertEquals(2, received.get());
+        assertEquals(2, handoff.getPublishedCount());
+        assertEquals(4, handoff.getRejectedCount());
+    }
+
+    /**
+     * All workers publish to the same session at once; exactly one of them delivers.
+     */
+    @Test(timeout = 60000)
+    public void racingWorkersDeliverExactlyOnce() throws Exception {
+        final AtomicInteger received = new AtomicInteger();
+        final ResultHandoff<Integer> handoff = new ResultHandoff<Integer>(new ResultHandoff.Receiver<Integer>() {
+            @Override
+            public void receive(Integer result) {
+                received.incrementAndGet();
+            }
+        });
+        final CyclicBarrier start = new CyclicBarrier(WORKERS + 1);
+        final CyclicBarrier end = new CyclicBarrier(WORKERS + 1);
+        final AtomicInteger wins = new AtomicInteger();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicLong token = new AtomicLong();
+        Thread[] workers = new Thread[WORKERS];
+        for (int w = 0; w < WORKERS; w++) {
+            final int id = w;
+            workers[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int round = 0; round < ROUNDS; round++) {
+                            start.await();
+                            if (handoff.publish(token.get(), id)) {
+                                wins.incrementAndGet();
+                            }
+                            end.await();
+                        }
+                    } catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            });
+            workers[w].start();
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            token.set(handoff.open());
+            start.await();
+            end.await();
+            assertEquals("Round " + round, round + 1, wins.get());
+            assertEquals("Round " + round, round + 1, received.get());
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        assertNull(failure.get());
+        assertEquals(ROUNDS, handoff.getPublishedCount());
+        assertEquals((long) ROUNDS * (WORKERS - 1), handoff.getRejectedCount());
+    }
+
+    /**
+     * Workers keep publishing results for whatever session they last read, as decode workers do,
+     * while sessions are opened, won and sometimes closed under them. Each session that is left open
+     * is delivered once, with a result for its own token; a closed one at most once.
+     */
+    @Test(timeout = 120000)
+    public void sessionsOpenedAndClosedUnderPublishingWorkers() throws Exception {
+        final Map<Long, Long> delivered = new ConcurrentHashMap<Long, Long>();
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final ResultHandoff<Long> handoff = new ResultHandoff<Long>(new ResultHandoff.Receiver<Long>() {
+            @Override
+            public void receive(Long result) {
+                if (delivered.put(result, result) != null) {
+                    failure.compareAndSet(null, new AssertionError("Session " + result + " delivered twice"));
+                }
+            }
+        });
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicLong attempts = new AtomicLong();
+        final CountDownLatch started = new CountDownLatch(WORKERS);
+        Thread[] workers = new Thread[WORKERS];
+        for (int w = 0; w < WORKERS; w++) {
+            workers[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    long frames = 0;
+                    while (!done.get()) {
+                        long token = handoff.getSession();
+                        // Decoding takes a while, so the session may have moved on by the time
+                        // the result is in.
+                        if (++frames % 3 == 0) {
+                            Thread.yield();
+                        }
+                        if (token > 0) {
+                            handoff.publish(token, token);
+                            attempts.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            workers[w].start();
+        }
+        started.await();
+
+        Set<Long> closed = new HashSet<Long>();
+        for (int i = 0; i < SESSIONS; i++) {
+            long token = handoff.open();
+            if (i % 4 == 3) {
+                Thread.yield();
+                handoff.close();
+                assertFalse(handoff.isOpen(token));
+                closed.add(token);
+            } else {
+                // Left open, the session has to be won by one of the workers; a lost result shows
+                // up as the test timing out here.
+                while (!delivered.containsKey(token)) {
+                    Thread.yield();
+                }
+                assertFalse(handoff.isOpen(token));
+            }
+        }
+        done.set(true);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        // Closed sessions may have been won before the close, but nothing else was delivered.
+        int deliveredClosed = 0;
+        for (Long token : delivered.keySet()) {
+            assertTrue("Unknown session " + token, token > 0 && token <= SESSIONS);
+            if (closed.contains(token)) {
+                deliveredClosed++;
+            }
+        }
+        assertEquals(SESSIONS - closed.size() + deliveredClosed, delivered.size());
+        assertEquals(delivered.size(), handoff.getPublishedCount());
+        assertEquals(attempts.get(), handoff.getPublishedCount() + handoff.getRejectedCount());
+    }
+}
@@ -0,0 +1,107 @@
+package net.multipi.QrReader;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ResultPointRingTest {
+
+    private static final int CAPACITY = 16;
+    private static final int WRITERS = 3;
+    private static final int POINTS_PER_WRITER = 200000;
+
+    @Test
+    public void snapshotIsNewestFirstAndSkipsOldPoints() {
+        ResultPointRing ring = new ResultPointRing(4);
+        float[] xs = new float[4];
+        float[] ys = new float[4];
+        float[] ages = new float[4];
+        assertEquals(0, ring.snapshot(100, 50, xs, ys, ages));
+        for (int i = 1; i <= 6; i++) {
+            ring.add(i, 10 * i, 10 * i);
+        }
+        assertEquals(6, ring.getWriteCount());
+        // Points 1 and 2 were overwritten, point 3 is older than 25.
+        assertEquals(3, ring.snapshot(60, 25, xs, ys, ages));
+        assertEquals(6.0f, xs[0], 0.0f);
+        assertEquals(60.0f, ys[0], 0.0f);
+        assertEquals(0.0f, ages[0], 0.0f);
+        assertEquals(5.0f, xs[1], 0.0f);
+        assertEquals(0.4f, ages[1], 1e-6f);
+        assertEquals(4.0f, xs[2], 0.0f);
+
+        ring.clear();
+        assertEquals(0, ring.snapshot(60, 25, xs, ys, ages));
+    }
+
+    /**
+     * {@link #WRITERS} decode threads add points at once while the UI thread takes snapshots. Writer
+     * {@code w} adds its {@code i}-th point as ({@code x}, {@code -x}) at time {@code x}, where
+     * {@code x = i * WRITERS + w}. Every point read has to be whole, with its own timestamp, and each
+     * snapshot has to hold at most the capacity in points, each writer's newest first.
+     */
+    @Test
+    public void concurrentWritersNeverHandTheReaderTornOrReorderedPoints() throws InterruptedException {
+        final ResultPointRing ring = new ResultPointRing(CAPACITY);
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger(WRITERS);
+        Thread[] writers = new Thread[WRITERS];
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            writers[w] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 1; i <= POINTS_PER_WRITER; i++) {
+                            int x = i * WRITERS + writer;
+                            ring.add(x, -x, x);
+                            if (i % 64 == 0) {
+                                Thread.yield();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                }
+            });
+            writers[w].start();
+        }
+        start.countDown();
+
+        long now = (POINTS_PER_WRITER + 1) * WRITERS;
+        long maxAge = now;
+        float[] xs = new float[CAPACITY + 4];
+        float[] ys = new float[CAPACITY + 4];
+        float[] ages = new float[CAPACITY + 4];
+        float[] previous = new float[WRITERS];
+        long snapshots = 0;
+        while (running.get() > 0 || snapshots == 0) {
+            int count = ring.snapshot(now, maxAge, xs, ys, ages);
+            assertTrue("Snapshot of " + count + " points", count <= CAPACITY);
+            Arrays.fill(previous, Float.MAX_VALUE);
+            for (int k = 0; k < count; k++) {
+                assertEquals("Torn point", -xs[k], ys[k], 0.0f);
+                assertEquals("Point with another point's timestamp",
+                        (float) (now - (long) xs[k]) / maxAge, ages[k], 0.0f);
+                int writer = (int) xs[k] % WRITERS;
+                assertTrue("Points out of order: " + previous[writer] + " before " + xs[k],
+                        xs[k] < previous[writer]);
+                previous[writer] = xs[k];
+            }
+            snapshots++;
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        assertEquals((long) POINTS_PER_WRITER * WRITERS, ring.getWriteCount());
+        assertEquals(CAPACITY, ring.snapshot(now, maxAge, xs, ys, ages));
+    }
+}
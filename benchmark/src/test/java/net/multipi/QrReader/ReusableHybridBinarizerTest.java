@@ -0,0 +1,190 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import net.multipi.QrReader.benchmark.SyntheticFrames;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Compares every black matrix with {@link HybridBinarizer}'s, bit for bit, over a corpus of random
+ * frames, crops and sources, all binarized with one scratch as a decode worker would.
+ */
+public class ReusableHybridBinarizerTest {
+
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+
+    private final ReusableHybridBinarizer.Scratch scratch = new ReusableHybridBinarizer.Scratch();
+
+    /**
+     * Frames of random sizes, so the Y plane's stride differs from the crop's width, and crops of
+     * random sizes and positions, most of them not a multiple of the block size so the last block
+     * row and column overlap the ones before.
+     */
+    @Test
+    public void randomCropsOfRandomFramesMatch() throws NotFoundException {
+        Random random = new Random(31L);
+        for (int i = 0; i < 300; i++) {
+            int dataWidth = 40 + random.nextInt(400);
+            int dataHeight = 40 + random.nextInt(300);
+            byte[] frame = frame(random, dataWidth, dataHeight, i % 3);
+            int width = 40 + random.nextInt(dataWidth - 39);
+            int height = 40 + random.nextInt(dataHeight - 39);
+            int left = random.nextInt(dataWidth - width + 1);
+            int top = random.nextInt(dataHeight - height + 1);
+            boolean mirrored = i % 5 == 0;
+            assertSameMatrix(new PlanarYUVLuminanceSource(frame, dataWidth, dataHeight,
+                    left, top, width, height, mirrored));
+        }
+    }
+
+    @Test
+    public void blockOverlapSizesMatch() throws NotFoundException {
+        Random random = new Random(37L);
+        byte[] frame = frame(random, 200, 120, 1);
+        // Multiples of the block size, one over, and one under.
+        int[] sizes = {40, 41, 47, 48, 49, 63, 64, 65, 119};
+        for (int width : sizes) {
+            for (int height : sizes) {
+                if (height > 120) {
+                    continue;
+                }
+                assertSameMatrix(new PlanarYUVLuminanceSource(frame, 200, 120, 3, 0, width, height, false));
+            }
+        }
+    }
+
+    @Test
+    public void rotatedSubsampledAndInvertedSourcesMatch() throws NotFoundException {
+        Random random = new Random(41L);
+        int dataWidth = SyntheticFrames.FRAME_WIDTH;
+        int dataHeight = SyntheticFrames.FRAME_HEIGHT;
+        for (int i = 0; i < 12; i++) {
+            byte[] frame = SyntheticFrames.nv21(100 + random.nextInt(400), random.nextDouble() * 40,
+                    random.nextInt(3), random.nextLong());
+            int width = 80 + random.nextInt(dataWidth - 79);
+            int height = 80 + random.nextInt(dataHeight - 79);
+            int left = random.nextInt(dataWidth - width + 1);
+            int top = random.nextInt(dataHeight - height + 1);
+            int rotation = ROTATIONS[i % ROTATIONS.length];
+            int factor = 1 + random.nextInt(2);
+            assertSameMatrix(new RotatedLuminanceSource(frame, dataWidth, dataHeight, left, top, width, height,
+                    rotation, factor, null));
+            assertSameMatrix(new SubsampledLuminanceSource(frame, dataWidth, dataHeight, left, top, width, height,
+                    factor + 1, null));
+            assertSameMatrix(new InvertedLuminanceSource(new PlanarYUVLuminanceSource(frame, dataWidth, dataHeight,
+                    left, top, width, height, false), null));
+        }
+    }
+
+    /**
+     * Under 40 pixels either way both fall back to the global histogram, which may find no black
+     * point at all.
+     */
+    @Test
+    public void smallSourcesFallBackTheSameWay() {
+        Random random = new Random(43L);
+        for (int i = 0; i < 100; i++) {
+            int width = 1 + random.nextInt(60);
+            int height = 1 + random.nextInt(60);
+            byte[] frame = frame(random, width, height, i % 3);
+            LuminanceSource source = new PlanarYUVLuminanceSource(frame, width, height, 0, 0, width, height, false);
+            try {
+                assertSameMatrix(source);
+            } catch (NotFoundException e) {
+                try {
+                    new ReusableHybridBinarizer(source, scratch).getBlackMatrix();
+                    fail("Only HybridBinarizer threw for " + width + "x" + height);
+                } catch (NotFoundException expected) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Alternating between sizes, as between resolution levels, reuses each size's matrix, and a
+     * reused matrix holds nothing of the frame it was last filled from.
+     */
+    @Test
+    public void scratchReusesMatricesAcrossSizes() throws NotFoundException {
+        Random random = new Random(47L);
+        int[][] sizes = {{320, 240}, {160, 120}, {96, 80}};
+        for (int round = 0; round < 4; round++) {
+            for (int[] size : sizes) {
+                byte[] frame = frame(random, size[0], size[1], round % 3);
+                assertSameMatrix(new PlanarYUVLuminanceSource(frame, size[0], size[1], 0, 0, size[0], size[1], false));
+            }
+        }
+        assertEquals(sizes.length, scratch.getAllocatedCount());
+        assertTrue(scratch.getReusedCount() >= 3 * sizes.length);
+
+        byte[] frame = frame(random, 96, 80, 1);
+        LuminanceSource source = new PlanarYUVLuminanceSource(frame, 96, 80, 0, 0, 96, 80, false);
+        Binarizer binarizer = new ReusableHybridBinarizer(source, scratch);
+        assertSame(binarizer.getBlackMatrix(), binarizer.getBlackMatrix());
+    }
+
+    private void assertSameMatrix(LuminanceSource source) throws NotFoundException {
+        String message = source.getClass().getSimpleName() + " " + source.getWidth() + "x" + source.getHeight();
+        BitMatrix expected = new HybridBinarizer(source).getBlackMatrix();
+        Binarizer binarizer = new ReusableHybridBinarizer(source, scratch);
+        BitMatrix actual = binarizer.getBlackMatrix();
+        assertEquals(message, expected.getWidth(), actual.getWidth());
+        assertEquals(message, expected.getHeight(), actual.getHeight());
+        assertTrue(message, expected.equals(actual));
+
+        // Rows go through the global histogram like HybridBinarizer's, into a reused row.
+        Binarizer reference = new HybridBinarizer(source);
+        BitArray row = null;
+        for (int y = 0; y < source.getHeight(); y += 7) {
+            BitArray expectedRow;
+            try {
+                expectedRow = reference.getBlackRow(y, null);
+            } catch (NotFoundException e) {
+                continue;
+            }
+            row = binarizer.getBlackRow(y, row);
+            for (int x = 0; x < source.getWidth(); x++) {
+                assertEquals(message + " row " + y, expectedRow.get(x), row.get(x));
+            }
+        }
+    }
+
+    /**
+     * @param kind 0 for noise, 1 for noise over bands of light and dark, 2 for a code
+     */
+    private static byte[] frame(Random random, int width, int height, int kind) {
+        byte[] frame = new byte[width * height * 3 / 2];
+        if (kind == 0) {
+            random.nextBytes(frame);
+        } else if (kind == 1) {
+            int base = random.nextInt(196);
+            int band = 5 + random.nextInt(40);
+            for (int i = 0; i < width * height; i++) {
+                frame[i] = (byte) (base + random.nextInt(21) + (i / width / band % 2) * 40);
+            }
+        } else {
+            byte[] code = SyntheticFrames.nv21(200, random.nextDouble() * 30, random.nextInt(3), random.nextLong());
+            // A window of the synthetic frame around its center, where the code is.
+            int left = Math.max(0, (SyntheticFrames.FRAME_WIDTH - width) / 2);
+            int top = Math.max(0, (SyntheticFrames.FRAME_HEIGHT - height) / 2);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    frame[y * width + x] = code[Math.min(SyntheticFrames.FRAME_HEIGHT - 1, top + y) *
+                            SyntheticFrames.FRAME_WIDTH + Math.min(SyntheticFrames.FRAME_WIDTH - 1, left + x)];
+                }
+            }
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,83 @@
+package net.multipi.QrReader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RoiTrackerTest {
+
+    private static final int SIZE = 720;
+
+    private final RoiTracker tracker = RoiTracker.createDefault();
+    private final int[] roi = new int[4];
+
+    @Test
+    public void decodesTheWholeRectUntilSomethingIsFound() {
+        assertFalse(tracker.getRoi(SIZE, SIZE, roi));
+        assertArrayEquals(new int[] {0, 0, SIZE, SIZE}, roi);
+        tracker.miss();
+        assertFalse(tracker.getRoi(SIZE, SIZE, roi));
+        assertEquals(2, tracker.getFullFrameCount());
+        assertEquals(1.0, tracker.getPixelRatio(), 0.0);
+    }
+
+    @Test
+    public void windowIsThePointsPaddedByHalfTheirSize() {
+        tracker.hit(300, 200, 500, 400);
+        assertTrue(tracker.getRoi(SIZE, SIZE, roi));
+        assertArrayEquals(new int[] {200, 100, 400, 400}, roi);
+        assertEquals(1, tracker.getRoiFrameCount());
+        assertEquals(400.0 * 400 / (SIZE * SIZE), tracker.getPixelRatio(), 1e-9);
+    }
+
+    @Test
+    public void windowFollowsTheLatestPoints() {
+        tracker.hit(300, 200, 500, 400);
+        assertTrue(tracker.getRoi(SIZE, SIZE, roi));
+        // The code comes closer: the window grows.
+        tracker.hit(200, 100, 600, 500);
+        assertTrue(tracker.getRoi(SIZE, SIZE, roi));
+        assertArrayEquals(new int[] {0, 0, SIZE, 700}, roi);
+        // And moves away again: it shrinks.
+        tracker.hit(340, 340, 420, 420);
+        assertTrue(tracker.getRoi(SIZE, SIZE, roi));
+        assertArrayEquals(new int[] {300, 300, 160, 160}, roi);
+    }
+
+    @Test
+    public void windowIsAtLeastTheMinimumSizeAndStaysInside() {
+        // One point near a corner: no size of its own.
+        tracker.hit(710, 5, 710, 5);
+        assertTrue(tracker.getRoi(SIZE, SIZE, roi));
+        assertArrayEquals(new int[] {SIZE - 160, 5, 160, 160}, roi);
+        // A framing rect smaller than the minimum is used whole.
+        assertTrue(tracker.getRoi(100, 120, roi));
+        assertArrayEquals(new int[] {0, 0, 100, 120}, roi);
+    }
+
+    @Test
+    public void fullRectIsUsedAgainAfterFiveMisses() {
+        tracker.hit(300, 200, 500, 400);
+        for (int i = 0; i < 4; i++) {
+            tracker.miss();
+            assertTrue("After " + (i + 1) + " misses", tracker.getRoi(SIZE, SIZE, roi));
+        }
+        // A hit starts the count over.
+        tracker.hit(300, 200, 500, 400);
+        for (int i = 0; i < 4; i++) {
+            tracker.miss();
+        }
+        assertTrue(tracker.getRoi(SIZE, SIZE, roi));
+        tracker.miss();
+        assertFalse(tracker.getRoi(SIZE, SIZE, roi));
+        assertArrayEquals(new int[] {0, 0, SIZE, SIZE}, roi);
+        // Further misses change nothing until the next hit.
+        tracker.miss();
+        assertFalse(tracker.getRoi(SIZE, SIZE, roi));
+        tracker.hit(300, 200, 500, 400);
+        assertTrue(tracker.getRoi(SIZE, SIZE, roi));
+    }
+}
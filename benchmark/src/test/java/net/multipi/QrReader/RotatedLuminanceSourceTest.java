@@ -0,0 +1,210 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.LuminanceSource;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class RotatedLuminanceSourceTest {
+
+    private static final int DATA_WIDTH = 41;
+    private static final int DATA_HEIGHT = 29;
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+
+    private final byte[] yuv = PlanarYUVLuminanceSourceTest.randomFrame(DATA_WIDTH, DATA_HEIGHT, 17L);
+
+    @Test
+    public void rowsMatrixAndThumbnailMatchTheRotatedRect() {
+        Random random = new Random(19L);
+        for (int i = 0; i < 400; i++) {
+            int width = 1 + random.nextInt(DATA_WIDTH);
+            int height = 1 + random.nextInt(DATA_HEIGHT);
+            int left = random.nextInt(DATA_WIDTH - width + 1);
+            int top = random.nextInt(DATA_HEIGHT - height + 1);
+            int rotation = ROTATIONS[random.nextInt(ROTATIONS.length)];
+            int factor = 1 + random.nextInt(3);
+            RotatedLuminanceSource source = new RotatedLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT,
+                    left, top, width, height, rotation, factor, null);
+            boolean sideways = RotatedLuminanceSource.isSideways(rotation);
+            assertEquals((sideways ? height : width) / factor, source.getWidth());
+            assertEquals((sideways ? width : height) / factor, source.getHeight());
+            Rect rect = new Rect(left, top, width, height, rotation, factor);
+            assertMatches(source, rect);
+        }
+    }
+
+    @Test
+    public void cropsOfRotatedSourcesMatch() {
+        Random random = new Random(23L);
+        for (int i = 0; i < 400; i++) {
+            int width = 2 + random.nextInt(DATA_WIDTH - 1);
+            int height = 2 + random.nextInt(DATA_HEIGHT - 1);
+            int left = random.nextInt(DATA_WIDTH - width + 1);
+            int top = random.nextInt(DATA_HEIGHT - height + 1);
+            int rotation = ROTATIONS[random.nextInt(ROTATIONS.length)];
+            int factor = 1 + random.nextInt(2);
+            LuminanceSource source = new RotatedLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT,
+                    left, top, width, height, rotation, factor, null);
+            if (source.getWidth() == 0 || source.getHeight() == 0) {
+                continue;
+            }
+            // Crops of crops too, as the tiled decoder's tiles of a rotated frame.
+            for (int depth = 0; depth < 2; depth++) {
+                int cropWidth = 1 + random.nextInt(source.getWidth());
+                int cropHeight = 1 + random.nextInt(source.getHeight());
+                int cropLeft = random.nextInt(source.getWidth() - cropWidth + 1);
+                int cropTop = random.nextInt(source.getHeight() - cropHeight + 1);
+                LuminanceSource crop = source.crop(cropLeft, cropTop, cropWidth, cropHeight);
+                assertEquals(cropWidth, crop.getWidth());
+                assertEquals(cropHeight, crop.getHeight());
+                byte[] matrix = crop.getMatrix();
+                for (int y = 0; y < cropHeight; y++) {
+                    byte[] parentRow = source.getRow(cropTop + y, null);
+                    byte[] row = crop.getRow(y, null);
+                    for (int x = 0; x < cropWidth; x++) {
+                        assertEquals(parentRow[cropLeft + x], row[x]);
+                        assertEquals(parentRow[cropLeft + x], matrix[y * cropWidth + x]);
+                    }
+                }
+                source = crop;
+            }
+        }
+    }
+
+    /**
+     * A rect in rotated coordinates and the data rect {@code toDataRect} maps it to hold the same
+     * pixels, so a ROI found upright can be cropped out of the camera frame.
+     */
+    @Test
+    public void toDataRectCoversTheSamePixels() {
+        Random random = new Random(29L);
+        for (int i = 0; i < 400; i++) {
+            int rotation = ROTATIONS[random.nextInt(ROTATIONS.length)];
+            boolean sideways = RotatedLuminanceSource.isSideways(rotation);
+            int shownWidth = sideways ? DATA_HEIGHT : DATA_WIDTH;
+            int shownHeight = sideways ? DATA_WIDTH : DATA_HEIGHT;
+            int width = 1 + random.nextInt(shownWidth);
+            int height = 1 + random.nextInt(shownHeight);
+            int left = random.nextInt(shownWidth - width + 1);
+            int top = random.nextInt(shownHeight - height + 1);
+            int[] rect = {left, top, width, height};
+            RotatedLuminanceSource.toDataRect(rotation, DATA_WIDTH, DATA_HEIGHT, rect);
+
+            RotatedLuminanceSource whole = new RotatedLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT,
+                    0, 0, DATA_WIDTH, DATA_HEIGHT, rotation, 1, null);
+            RotatedLuminanceSource part = new RotatedLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT,
+                    rect[0], rect[1], rect[2], rect[3], rotation, 1, null);
+            assertEquals(width, part.getWidth());
+            assertEquals(height, part.getHeight());
+            for (int y = 0; y < height; y++) {
+                byte[] wholeRow = whole.getRow(top + y, null);
+                byte[] row = part.getRow(y, null);
+                for (int x = 0; x < width; x++) {
+                    assertEquals(wholeRow[left + x], row[x]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void rotateCounterClockwiseUndoesAQuarterTurn() {
+        LuminanceSource source = new RotatedLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT,
+                3, 2, 30, 20, 90, 1, null).rotateCounterClockwise();
+        assertMatches(source, new Rect(3, 2, 30, 20, 0, 1));
+    }
+
+    @Test
+    public void matrixBufferIsReusedWhenLargeEnough() {
+        byte[] buffer = new byte[DATA_WIDTH * DATA_HEIGHT];
+        RotatedLuminanceSource source = new RotatedLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT,
+                0, 0, DATA_WIDTH, DATA_HEIGHT, 270, 1, buffer);
+        assertSame(buffer, source.getMatrix());
+    }
+
+    @Test
+    public void rejectsOtherRotationsAndRectsOutsideTheFrame() {
+        try {
+            new RotatedLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT, 0, 0, 10, 10, 45, 1, null);
+            fail("Accepted a rotation of 45 degrees");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new RotatedLuminanceSource(yuv, DATA_WIDTH, DATA_HEIGHT, 1, 0, DATA_WIDTH, 10, 90, 1, null);
+            fail("Accepted a rect outside the frame");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private void assertMatches(LuminanceSource source, Rect rect) {
+        int width = source.getWidth();
+        byte[] matrix = source.getMatrix();
+        int[] pixels = source instanceof RotatedLuminanceSource ?
+                ((RotatedLuminanceSource) source).renderThumbnail(null) : null;
+        for (int y = 0; y < source.getHeight(); y++) {
+            byte[] row = source.getRow(y, null);
+            for (int x = 0; x < width; x++) {
+                byte expected = rect.pixel(yuv, x, y);
+                assertEquals(expected, row[x]);
+                assertEquals(expected, matrix[y * width + x]);
+                if (pixels != null) {
+                    assertEquals(0xFF000000 | (expected & 0xff) * 0x00010101, pixels[y * width + x]);
+                }
+            }
+        }
+    }
+
+    /**
+     * The reference: rotates a data rect pixel by pixel.
+     */
+    private static final class Rect {
+
+        final int left;
+        final int top;
+        final int width;
+        final int height;
+        final int rotation;
+        final int factor;
+
+        Rect(int left, int top, int width, int height, int rotation, int factor) {
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+            this.rotation = rotation;
+            this.factor = factor;
+        }
+
+        /**
+         * @return the pixel shown at ({@code x}, {@code y}) after turning the rect clockwise and subsampling
+         */
+        byte pixel(byte[] yuv, int x, int y) {
+            int shownX = x * factor;
+            int shownY = y * factor;
+            int dataX;
+            int dataY;
+            switch (rotation) {
+                case 0:
+                    dataX = shownX;
+                    dataY = shownY;
+                    break;
+                case 90:
+                    dataX = shownY;
+                    dataY = height - 1 - shownX;
+                    break;
+                case 180:
+                    dataX = width - 1 - shownX;
+                    dataY = height - 1 - shownY;
+                    break;
+                default:
+                    dataX = width - 1 - shownY;
+                    dataY = shownX;
+                    break;
+            }
+            return yuv[(top + dataY) * DATA_WIDTH + left + dataX];
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package net.multipi.QrReader;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ScanRateCounterTest {
+
+    private static final long MINUTE = 60 * 1000L;
+
+    @Test
+    public void countsEventsWithinTheLastMinute() {
+        ScanRateCounter counter = new ScanRateCounter(100);
+        assertEquals(0, counter.getPerMinute(0));
+        for (int i = 0; i < 10; i++) {
+            counter.record(i * 10000L);
+        }
+        // Events at 0, 10, ... 90 s.
+        assertEquals(6, counter.getPerMinute(90000L));
+        assertEquals(5, counter.getPerMinute(40000L + MINUTE));
+        assertEquals(1, counter.getPerMinute(90000L + MINUTE - 1));
+        assertEquals(0, counter.getPerMinute(90000L + MINUTE));
+        assertEquals(10, counter.getTotal());
+    }
+
+    @Test
+    public void rateSaturatesAtTheCapacity() {
+        ScanRateCounter counter = new ScanRateCounter(4);
+        for (int i = 0; i < 10; i++) {
+            counter.record(i);
+        }
+        assertEquals(4, counter.getPerMinute(10));
+        assertEquals(10, counter.getTotal());
+        // The ring wrapped; the oldest kept events still leave the window in order.
+        assertEquals(2, counter.getPerMinute(7 + MINUTE));
+    }
+
+    @Test
+    public void rejectsZeroCapacity() {
+        try {
+            new ScanRateCounter(0);
+            fail("Accepted a zero capacity");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+import net.multipi.QrReader.benchmark.SyntheticFrames;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class TiledDecoderTest {
+
+    private static final int SIZE = 240;
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void findsACodeInOneOfTheTiles() {
+        TiledDecoder decoder = new TiledDecoder(pool, 2, 2, 0.5f, DecodeProfile.QR);
+        byte[] frame = SyntheticFrames.nv21(200, 2, 0, 3L);
+        LuminanceSource source = new PlanarYUVLuminanceSource(frame, SyntheticFrames.FRAME_WIDTH,
+                SyntheticFrames.FRAME_HEIGHT, 0, 0, SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT, false);
+        Result result = decoder.decode(source);
+        assertNotNull(result);
+        assertEquals(SyntheticFrames.CONTENTS, result.getText());
+        assertEquals(1, decoder.getHitCount());
+    }
+
+    @Test
+    public void callerDecodesTilesThePoolHasNotStarted() {
+        final List<Runnable> queued = new ArrayList<Runnable>();
+        Executor idle = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                queued.add(command);
+            }
+        };
+        TiledDecoder decoder = new TiledDecoder(idle, 2, 2, 0.5f, DecodeProfile.QR);
+        byte[] frame = SyntheticFrames.nv21(200, 2, 0, 3L);
+        LuminanceSource source = new PlanarYUVLuminanceSource(frame, SyntheticFrames.FRAME_WIDTH,
+                SyntheticFrames.FRAME_HEIGHT, 0, 0, SyntheticFrames.FRAME_WIDTH, SyntheticFrames.FRAME_HEIGHT, false);
+        Result[] results = decoder.decodeAll(source);
+        assertEquals(1, results.length);
+        assertEquals(SyntheticFrames.CONTENTS, results[0].getText());
+        assertEquals(4, decoder.getTileCount());
+        assertEquals(3, queued.size());
+        // A pool thread that gets to a tile after the caller took it back does nothing.
+        for (Runnable tile : queued) {
+            tile.run();
+        }
+        assertEquals(4, decoder.getTileCount());
+    }
+
+    @Test
+    public void failingTileIsRethrownOnceEveryTileIsDone() {
+        assertFailureWaitsForTiles(pool);
+    }
+
+    @Test
+    public void failingTileRunInlineStillLetsTheOtherTilesRun() {
+        Executor rejecting = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        };
+        assertFailureWaitsForTiles(rejecting);
+    }
+
+    @Test
+    public void executorFailureStillWaitsForHandedOutTiles() {
+        final AtomicInteger handedOut = new AtomicInteger();
+        final IllegalStateException broken = new IllegalStateException("Executor broken");
+        Executor failing = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (handedOut.getAndIncrement() == 1) {
+                    throw broken;
+                }
+                pool.execute(command);
+            }
+        };
+        TiledDecoder decoder = new TiledDecoder(failing, 2, 2, 0.5f, DecodeProfile.QR);
+        TrackedSource source = new TrackedSource(-1);
+        try {
+            decoder.decode(source);
+            fail("Executor failure was not rethrown");
+        } catch (IllegalStateException e) {
+            assertSame(broken, e);
+        }
+        assertEquals(0, source.active.get());
+    }
+
+    /**
+     * The last tile throws; the others are slow, so they are still being decoded when it does.
+     */
+    private static void assertFailureWaitsForTiles(Executor executor) {
+        TiledDecoder decoder = new TiledDecoder(executor, 2, 2, 0.5f, DecodeProfile.QR);
+        TrackedSource source = new TrackedSource(3);
+        try {
+            decoder.decode(source);
+            fail("Tile failure was not rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals(TrackedSource.FAILURE, e.getMessage());
+        }
+        assertEquals(0, source.active.get());
+        assertEquals(3, source.finished.get());
+    }
+
+    /**
+     * A blank source whose tiles take a while to read and count how many are being read. The tile
+     * at index {@code failing}, in row-major order, throws instead.
+     */
+    private static final class TrackedSource extends LuminanceSource {
+
+        static final String FAILURE = "Tile failed";
+
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger finished = new AtomicInteger();
+        private final int failing;
+
+        TrackedSource(int failing) {
+            super(SIZE, SIZE);
+            this.failing = failing;
+        }
+
+        @Override
+        public byte[] getRow(int y, byte[] row) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public byte[] getMatrix() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isCropSupported() {
+            return true;
+        }
+
+        @Override
+        public LuminanceSource crop(int left, int top, int width, int height) {
+            int index = (top == 0 ? 0 : 2) + (left == 0 ? 0 : 1);
+            return new Tile(this, index == failing, width, height);
+        }
+    }
+
+    private static final class Tile extends LuminanceSource {
+
+        private final TrackedSource parent;
+        private final boolean failing;
+
+        Tile(TrackedSource parent, boolean failing, int width, int height) {
+            super(width, height);
+            this.parent = parent;
+            this.failing = failing;
+        }
+
+        @Override
+        public byte[] getRow(int y, byte[] row) {
+            return new byte[getWidth()];
+        }
+
+        @Override
+        public byte[] getMatrix() {
+            if (failing) {
+                throw new IllegalStateException(TrackedSource.FAILURE);
+            }
+            parent.active.incrementAndGet();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                parent.active.decrementAndGet();
+                parent.finished.incrementAndGet();
+            }
+            return new byte[getWidth() * getHeight()];
+        }
+    }
+}
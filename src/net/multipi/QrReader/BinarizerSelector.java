@@ -0,0 +1,145 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chooses between the cheap {@link GlobalHistogramBinarizer} and the more robust but costlier
+ * {@link HybridBinarizer} from their recent success. Each binarizer has a decaying success score;
+ * the global one is preferred unless the hybrid one has been doing clearly better, since on evenly
+ * lit, high-contrast codes both succeed and the global one is faster. Now and then the other
+ * binarizer is tried first anyway, so a change in lighting is noticed and the preference can flip
+ * back.
+ *
+ * One instance is shared by all decode workers.
+ */
+public final class BinarizerSelector {
+
+    public enum Kind {
+        GLOBAL_HISTOGRAM {
+            @Override
+            public Binarizer create(LuminanceSource source) {
+                return new GlobalHistogramBinarizer(source);
+            }
+        },
+        HYBRID {
+            @Override
+            public Binarizer create(LuminanceSource source) {
+                return new HybridBinarizer(source);
+            }
+
+            @Override
+            public Binarizer create(LuminanceSource source, ReusableHybridBinarizer.Scratch scratch) {
+                return new ReusableHybridBinarizer(source, scratch);
+            }
+        };
+
+        public abstract Binarizer create(LuminanceSource source);
+
+        /**
+         * Like {@link #create(LuminanceSource)}, but the hybrid binarizer keeps its buffers in
+         * {@code scratch}, so the matrix is only valid until the next binarizer with that scratch.
+         */
+        public Binarizer create(LuminanceSource source, ReusableHybridBinarizer.Scratch scratch) {
+            return create(source);
+        }
+    }
+
+    /** Weight of the latest attempt in a score. */
+    private static final float DECAY = 1.0f / 16;
+    /** The hybrid binarizer has to beat the global one by this much to be tried first. */
+    private static final float HYBRID_MARGIN = 0.1f;
+    private static final int DEFAULT_EXPLORATION_INTERVAL = 16;
+
+    private final int explorationInterval;
+    private final float[] scores = {0.5f, 0.5f};
+    private final AtomicLong[] attempts = {new AtomicLong(), new AtomicLong()};
+    private final AtomicLong[] wins = {new AtomicLong(), new AtomicLong()};
+    private long choices;
+
+    /**
+     * @param explorationInterval every this many choices the less favoured binarizer goes first;
+     *                            0 disables it
+     */
+    public BinarizerSelector(int explorationInterval) {
+        if (explorationInterval < 0) {
+            throw new IllegalArgumentException("Exploration interval must not be negative: " + explorationInterval);
+        }
+        this.explorationInterval = explorationInterval;
+    }
+
+    public static BinarizerSelector createDefault() {
+        return new BinarizerSelector(DEFAULT_EXPLORATION_INTERVAL);
+    }
+
+    /**
+     * @return the binarizer to try first on the next attempt
+     */
+    public synchronized Kind choose() {
+        Kind preferred = getPreferred();
+        if (explorationInterval > 0 && ++choices % explorationInterval == 0) {
+            return other(preferred);
+        }
+        return preferred;
+    }
+
+    /**
+     * @return the binarizer to try after {@code first} failed
+     */
+    public static Kind other(Kind first) {
+        return first == Kind.HYBRID ? Kind.GLOBAL_HISTOGRAM : Kind.HYBRID;
+    }
+
+    /**
+     * Records the outcome of decoding with {@code kind}. Only frames that showed a code, decoded
+     * or as finder patterns, should be recorded: on an empty scene both binarizers fail, and
+     * counting that would wear both scores down to the point where the preference means nothing.
+     */
+    public void record(Kind kind, boolean decoded) {
+        attempts[kind.ordinal()].incrementAndGet();
+        if (decoded) {
+            wins[kind.ordinal()].incrementAndGet();
+        }
+        synchronized (this) {
+            float weight = DECAY;
+            if (kind == Kind.GLOBAL_HISTOGRAM && getPreferred() == Kind.HYBRID && explorationInterval > 0) {
+                // Only sampled once per exploration interval while out of favour, so each attempt
+                // stands for that many frames.
+                weight = Math.min(1.0f, DECAY * explorationInterval);
+            }
+            scores[kind.ordinal()] += ((decoded ? 1.0f : 0.0f) - scores[kind.ordinal()]) * weight;
+        }
+    }
+
+    public synchronized Kind getPreferred() {
+        return scores[Kind.HYBRID.ordinal()] > scores[Kind.GLOBAL_HISTOGRAM.ordinal()] + HYBRID_MARGIN ?
+                Kind.HYBRID : Kind.GLOBAL_HISTOGRAM;
+    }
+
+    public long getAttempts(Kind kind) {
+        return attempts[kind.ordinal()].get();
+    }
+
+    public long getWins(Kind kind) {
+        return wins[kind.ordinal()].get();
+    }
+
+    public double getWinRate(Kind kind) {
+        long n = attempts[kind.ordinal()].get();
+        return n == 0 ? 0.0 : (double) wins[kind.ordinal()].get() / n;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("preferred ").append(getPreferred());
+        for (Kind kind : Kind.values()) {
+            result.append(", ").append(kind).append(' ').append(getWins(kind)).append('/')
+                    .append(getAttempts(kind)).append(String.format(" (%.1f%%)", getWinRate(kind) * 100));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,64 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.ResultPoint;
+
+/**
+ * The part of a framing rect a decoded code takes up, worked out from its result points. A
+ * {@link DecodeContext} caches a code with the region its points span and confirms a cache hit by
+ * decoding just that region, widened to leave room for the rest of the code.
+ */
+final class CodeRegion {
+
+    /** Smallest side of a region, so codes with collinear points still get a usable one. */
+    static final int MIN_SIZE = 32;
+
+    private CodeRegion() {
+    }
+
+    /**
+     * Stores in {@code rect} the part of an upright framing rect {@code points} span, widened on
+     * each side by {@code margin} times their extent and to at least {@link #MIN_SIZE} pixels each
+     * way, as {left, top, width, height}. Without points, that is the whole framing rect.
+     */
+    static void around(ResultPoint[] points, float margin, int uprightWidth, int uprightHeight, int[] rect) {
+        float minX = 0;
+        float minY = 0;
+        float maxX = uprightWidth;
+        float maxY = uprightHeight;
+        if (points != null && points.length > 0) {
+            minX = maxX = points[0].getX();
+            minY = maxY = points[0].getY();
+            for (int i = 1; i < points.length; i++) {
+                minX = Math.min(minX, points[i].getX());
+                maxX = Math.max(maxX, points[i].getX());
+                minY = Math.min(minY, points[i].getY());
+                maxY = Math.max(maxY, points[i].getY());
+            }
+            float marginX = (maxX - minX) * margin;
+            float marginY = (maxY - minY) * margin;
+            minX -= marginX;
+            maxX += marginX;
+            minY -= marginY;
+            maxY += marginY;
+        }
+        span(minX, maxX, uprightWidth, rect, 0);
+        span(minY, maxY, uprightHeight, rect, 1);
+    }
+
+    /**
+     * Stores the start of {@code [min, max]}, widened to {@link #MIN_SIZE} and clipped to
+     * {@code [0, size)}, at {@code rect[index]} and its length at {@code rect[index + 2]}.
+     */
+    private static void span(float min, float max, int size, int[] rect, int index) {
+        int start = Math.max(0, (int) min);
+        int end = Math.min(size, (int) Math.ceil(max));
+        int missing = MIN_SIZE - (end - start);
+        if (missing > 0) {
+            start = Math.max(0, start - missing / 2);
+            end = Math.min(size, start + MIN_SIZE);
+            start = Math.max(0, end - MIN_SIZE);
+        }
+        rect[index] = start;
+        rect[index + 2] = end - start;
+    }
+}
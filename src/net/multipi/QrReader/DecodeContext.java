@@ -0,0 +1,666 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.multi.GenericMultipleBarcodeReader;
+import com.google.zxing.multi.MultipleBarcodeReader;
+import com.google.zxing.multi.qrcode.QRCodeMultiReader;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Everything a decode worker needs to turn a preview frame into a {@link Result}: a reader set up
+ * from a {@link DecodeProfile}, plus the preview size and the framing rect in preview coordinates.
+ * One instance is built per worker thread and reused for every frame it decodes, so the
+ * frame-to-result path only allocates what ZXing itself needs. The cropped luminance matrix is
+ * copied into a buffer owned by the context rather than a new array per frame, and the hybrid
+ * binarizer is a {@link ReusableHybridBinarizer}, which reads an unrotated full-resolution rect
+ * straight from the camera's Y plane and keeps its black matrix in the context between frames.
+ *
+ * Frames are decoded level by level, coarsest first. A finer level is tried when the coarser one
+ * saw finder patterns but could not decode them. A frame where the coarse pass finds nothing that
+ * looks like a code is mostly given up right away, but a code too small to show up when subsampled
+ * would then never be found, so every {@link #ALL_LEVELS_INTERVAL}-th frame, and every frame whose
+ * window the ROI tracker narrowed around recent finder patterns, goes on to full resolution
+ * regardless. Only QR detection reports finder patterns, so profiles with other formats always go
+ * on to the finer levels. Profiles that also accept inverted codes retry each level on the
+ * inverted luminance. Result points are always reported in full-resolution coordinates relative
+ * to the framing rect.
+ *
+ * When the preview is shown rotated, the framing rect is decoded through a
+ * {@link RotatedLuminanceSource}, so codes are read and result points reported upright, as on
+ * screen. The ROI tracker works in those upright coordinates too.
+ *
+ * With a {@link FrameQualityFilter}, blurry frames and repeats of the last failed frame are
+ * dropped before any level runs. With a {@link RoiTracker}, only the part of the framing rect
+ * around recently seen finder patterns is decoded. With a {@link BinarizerSelector}, each level
+ * starts with the binarizer that has been succeeding and falls back to the other one when it
+ * fails; only attempts on frames that showed a code or its finder patterns are scored. Otherwise
+ * only {@link HybridBinarizer} is used. With a {@link ResultCache}, a frame that seems to still
+ * show a recently decoded code is first decoded only in that code's {@link CodeRegion}, at full
+ * resolution, and the levels run only if that does not read the same code. With a
+ * {@link TiledDecoder}, a frame that no level decodes is tried once more in a {@link TiledPass},
+ * which finds small codes the full-rect pass misses. A {@link FocusController} is told each
+ * frame's sharpness and whether it decoded or came close.
+ *
+ * {@link #decodeMultiple(byte[])} finds every code in the framing rect for batch scanning.
+ *
+ * With {@link DecodeMetrics}, each level's source build, binarization, detection and decode times
+ * are recorded, as is the time of the tiled pass, along with the outcome of every frame. ZXing
+ * detects and decodes in one call, so the split between the two is taken at the last finder or
+ * alignment pattern the reader reports.
+ *
+ * Instances are not thread-safe.
+ */
+public final class DecodeContext {
+
+    private static final Result[] NO_RESULTS = new Result[0];
+    /** Every this many frames, the finer levels run even if the coarser ones saw nothing. */
+    static final int ALL_LEVELS_INTERVAL = 4;
+
+    private final DecodeProfile profile;
+    private final Map<DecodeHintType, Object> hints;
+    private final MultiFormatReader reader;
+    private final MultipleBarcodeReader multiReader;
+    private final ResolutionLevel[] levels;
+    private final LevelPointCallback pointCallback;
+    private final int[] roi = new int[4];
+    private final int[] dataRoi = new int[4];
+    private final int[] cacheRegion = new int[4];
+    private final ReusableHybridBinarizer.Scratch binarizerScratch = new ReusableHybridBinarizer.Scratch();
+    private FrameQualityFilter qualityFilter;
+    private RoiTracker roiTracker;
+    private BinarizerSelector binarizerSelector;
+    private DecodeMetrics metrics;
+    private ResultCache resultCache;
+    private TiledPass tiledPass;
+    private FocusController focusController;
+    private long binarizedNanos;
+    private long fingerprint;
+    private long levelFrameCount;
+    private PreviewGeometry geometry;
+    private byte[] matrixBuffer;
+    private int dataWidth;
+    private int dataHeight;
+    private int left;
+    private int top;
+    private int width;
+    private int height;
+    private int rotation;
+
+    /**
+     * Creates a context that decodes QR codes at full resolution only.
+     */
+    public DecodeContext(ResultPointCallback callback) {
+        this(callback, new ResolutionLevel[] {new ResolutionLevel(1)});
+    }
+
+    /**
+     * Creates a context that decodes QR codes.
+     */
+    public DecodeContext(ResultPointCallback callback, ResolutionLevel[] levels) {
+        this(callback, levels, DecodeProfile.QR);
+    }
+
+    /**
+     * @param levels resolution levels to try, coarsest first. They may be shared between contexts
+     *               to collect statistics across all workers.
+     */
+    public DecodeContext(ResultPointCallback callback, ResolutionLevel[] levels, DecodeProfile profile) {
+        if (levels.length == 0) {
+            throw new IllegalArgumentException("At least one resolution level is required");
+        }
+        this.levels = levels.clone();
+        this.profile = profile;
+        pointCallback = new LevelPointCallback(callback);
+        // The profile's hints are shared; only the callback is specific to this context.
+        hints = new EnumMap<DecodeHintType, Object>(profile.getHints());
+        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, pointCallback);
+        reader = new MultiFormatReader();
+        reader.setHints(hints);
+        multiReader = profile.isQrOnly() ? new QRCodeMultiReader() : new GenericMultipleBarcodeReader(reader);
+    }
+
+    public DecodeProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @param qualityFilter pre-decode frame check, or null to decode every frame
+     */
+    public void setQualityFilter(FrameQualityFilter qualityFilter) {
+        this.qualityFilter = qualityFilter;
+    }
+
+    /**
+     * @param roiTracker decode window tracker, or null to always decode the whole framing rect
+     */
+    public void setRoiTracker(RoiTracker roiTracker) {
+        this.roiTracker = roiTracker;
+    }
+
+    /**
+     * @param binarizerSelector adaptive binarizer choice, or null to always use
+     *                          {@link HybridBinarizer}
+     */
+    public void setBinarizerSelector(BinarizerSelector binarizerSelector) {
+        this.binarizerSelector = binarizerSelector;
+    }
+
+    /**
+     * @param metrics receives stage timings and frame outcomes, or null to record nothing
+     */
+    public void setMetrics(DecodeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * @param resultCache recently decoded codes to answer repeat frames from, or null to decode
+     *                    every frame
+     */
+    public void setResultCache(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * @param tiledDecoder decodes the whole framing rect in tiles when the levels find nothing, or
+     *                     null to give up on such frames
+     */
+    public void setTiledDecoder(TiledDecoder tiledDecoder) {
+        tiledPass = tiledDecoder == null ? null : new TiledPass(tiledDecoder, profile);
+    }
+
+    /**
+     * @param focusController told the sharpness and outcome of every frame, or null
+     */
+    public void setFocusController(FocusController focusController) {
+        this.focusController = focusController;
+    }
+
+    /**
+     * Sets the preview frame size and the part of it that should be decoded, for a preview shown
+     * unrotated.
+     */
+    public void setGeometry(int dataWidth, int dataHeight, int left, int top, int width, int height) {
+        setGeometry(dataWidth, dataHeight, left, top, width, height, 0);
+    }
+
+    /**
+     * Sets the preview frame size and the part of it that should be decoded.
+     *
+     * @param left     left edge of the framing rect in the unrotated frame
+     * @param top      top edge of the framing rect in the unrotated frame
+     * @param width    unrotated width of the framing rect
+     * @param height   unrotated height of the framing rect
+     * @param rotation clockwise rotation of the preview on screen: 0, 90, 180 or 270
+     */
+    public void setGeometry(int dataWidth, int dataHeight, int left, int top, int width, int height, int rotation) {
+        RotatedLuminanceSource.isSideways(rotation); // rejects other angles
+        if (left < 0 || top < 0 || width <= 0 || height <= 0 ||
+                left + width > dataWidth || top + height > dataHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+        this.dataWidth = dataWidth;
+        this.dataHeight = dataHeight;
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+        this.rotation = rotation;
+        geometry = null;
+        if (matrixBuffer == null || matrixBuffer.length < width * height) {
+            matrixBuffer = new byte[width * height];
+        }
+    }
+
+    /**
+     * Decodes the framing rect of {@code geometry}. Cheap when the snapshot is the one already in
+     * use.
+     */
+    public void setGeometry(PreviewGeometry geometry) {
+        if (geometry != this.geometry) {
+            setGeometry(geometry.getPreviewWidth(), geometry.getPreviewHeight(),
+                    geometry.getPreviewLeft(), geometry.getPreviewTop(),
+                    geometry.getPreviewFramingWidth(), geometry.getPreviewFramingHeight(), geometry.getRotation());
+            this.geometry = geometry;
+        }
+    }
+
+    /**
+     * @param out receives {left, top, width, height} of the part of the framing rect the last frame
+     *            was decoded in, upright and relative to the framing rect like result points
+     */
+    public void getRoi(int[] out) {
+        System.arraycopy(roi, 0, out, 0, 4);
+    }
+
+    /**
+     * @return the decoded code, or null if the frame does not contain one
+     */
+    public Result decode(byte[] yuvData) {
+        if (!acceptFrame(yuvData)) {
+            return null;
+        }
+        ResultCache cache = resultCache;
+        Result result = null;
+        if (cache != null) {
+            Result cached = cache.lookup(yuvData, dataWidth, dataHeight, System.nanoTime() / 1000000L);
+            if (cached != null) {
+                result = decodeCachedRegion(yuvData, cached);
+                if (result == null) {
+                    cache.reject(cached);
+                }
+            }
+        }
+        if (result == null) {
+            result = decodeLevels(yuvData);
+            if (result == null && tiledPass != null) {
+                result = decodeTiles(tiledPass, yuvData);
+            }
+            RoiTracker tracker = roiTracker;
+            if (tracker != null) {
+                pointCallback.reportTo(tracker);
+            }
+        }
+        if (result != null && cache != null) {
+            cacheResult(cache, yuvData, result);
+        }
+        frameFinished(result != null);
+        return result;
+    }
+
+    /**
+     * Finds every code in the framing rect. The whole rect is decoded at full resolution, since
+     * the codes may be spread over all of it, so the ROI tracker and coarse levels are bypassed.
+     *
+     * @return the decoded codes, empty if there are none
+     */
+    public Result[] decodeMultiple(byte[] yuvData) {
+        if (!acceptFrame(yuvData)) {
+            return NO_RESULTS;
+        }
+        setFullRoi();
+        pointCallback.startFrame(0, 0);
+        pointCallback.startLevel(1);
+        LuminanceSource source = createSource(yuvData, 1);
+        Result[] results = decodeMultiple(source);
+        if (results.length == 0 && profile.isAlsoInverted()) {
+            results = decodeMultiple(new InvertedLuminanceSource(source, matrixBuffer));
+        }
+        if (tiledPass != null) {
+            results = tiledPass.addAll(results, source);
+        }
+        frameFinished(results.length > 0);
+        return results;
+    }
+
+    private Result[] decodeMultiple(LuminanceSource source) {
+        try {
+            long start = System.nanoTime();
+            BinaryBitmap bitmap = binarize(source, BinarizerSelector.Kind.HYBRID, start);
+            try {
+                return multiReader.decodeMultiple(bitmap, hints);
+            } finally {
+                recordDetectAndDecode();
+            }
+        } catch (ReaderException re) {
+            return NO_RESULTS;
+        } finally {
+            reader.reset();
+        }
+    }
+
+    private boolean acceptFrame(byte[] yuvData) {
+        if (width == 0) {
+            throw new IllegalStateException("Geometry is not set");
+        }
+        FocusController focus = focusController;
+        if (qualityFilter == null && focus == null) {
+            return true;
+        }
+        int sharpness = FrameQualityFilter.sharpness(yuvData, dataWidth, left, top, width, height);
+        if (focus != null) {
+            focus.frameSharpness(sharpness, System.nanoTime() / 1000000L);
+        }
+        if (qualityFilter == null) {
+            return true;
+        }
+        fingerprint = FrameQualityFilter.fingerprint(yuvData, dataWidth, left, top, width, height);
+        if (qualityFilter.accept(sharpness, fingerprint)) {
+            return true;
+        }
+        if (metrics != null) {
+            metrics.frameSkipped();
+        }
+        return false;
+    }
+
+    private void frameFinished(boolean decoded) {
+        FocusController focus = focusController;
+        if (focus != null) {
+            if (decoded) {
+                focus.frameDecoded(System.nanoTime() / 1000000L);
+            } else if (pointCallback.getFramePointCount() > 0) {
+                focus.nearMiss(System.nanoTime() / 1000000L);
+            }
+        }
+        if (metrics != null) {
+            if (decoded) {
+                metrics.frameDecoded(System.nanoTime());
+            } else {
+                metrics.frameFailed();
+            }
+        }
+        if (qualityFilter == null) {
+            return;
+        }
+        if (decoded) {
+            qualityFilter.frameDecoded();
+        } else {
+            qualityFilter.frameFailed(fingerprint);
+        }
+    }
+
+    private Result decodeLevels(byte[] yuvData) {
+        RoiTracker tracker = roiTracker;
+        // The tracker narrows the window after finder patterns at any level, possibly only at full
+        // resolution, so a tracked window is never given up after an empty coarse pass.
+        boolean tracked = false;
+        if (tracker == null) {
+            setFullRoi();
+        } else if (RotatedLuminanceSource.isSideways(rotation)) {
+            tracked = tracker.getRoi(height, width, roi);
+        } else {
+            tracked = tracker.getRoi(width, height, roi);
+        }
+        boolean allLevels = tracked || ++levelFrameCount % ALL_LEVELS_INTERVAL == 0;
+        pointCallback.startFrame(roi[0], roi[1]);
+        Result result = null;
+        for (ResolutionLevel level : levels) {
+            int factor = level.getFactor();
+            pointCallback.startLevel(factor);
+            long start = System.nanoTime();
+            LuminanceSource source = createSource(yuvData, factor);
+            result = decode(source, start);
+            if (result == null && profile.isAlsoInverted()) {
+                result = decode(new InvertedLuminanceSource(source, matrixBuffer), System.nanoTime());
+            }
+            level.record(result != null, System.nanoTime() - start);
+            if (result != null) {
+                result = pointCallback.toFramingCoordinates(result);
+                break;
+            }
+            if (!allLevels && profile.isQrOnly() && pointCallback.getLevelPointCount() == 0) {
+                // Nothing that looks like a code at this level; a finer one is unlikely to help.
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decodes the whole framing rect as tiles. The tiles' finder patterns are found on other
+     * threads, so a hit's result points stand in for them.
+     */
+    private Result decodeTiles(TiledPass tiledPass, byte[] yuvData) {
+        setFullRoi();
+        Result result = tiledPass.decode(createSource(yuvData, 1), matrixBuffer, metrics);
+        if (result != null && result.getResultPoints() != null) {
+            pointCallback.startFrame(0, 0);
+            pointCallback.startLevel(1);
+            for (ResultPoint point : result.getResultPoints()) {
+                pointCallback.foundPossibleResultPoint(point);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decodes only the part of the framing rect around {@code cached}'s result points, at full
+     * resolution. A matching fingerprint makes the same code likely, not certain, so a cached
+     * result is only used once the frame reads the same text again.
+     *
+     * @return the code read in that part of this frame, or null if it is not the cached one
+     */
+    private Result decodeCachedRegion(byte[] yuvData, Result cached) {
+        // Finder patterns sit inside the code's corners, so leave room for the rest of the code.
+        codeRegion(cached.getResultPoints(), 0.5f, roi);
+        pointCallback.startFrame(roi[0], roi[1]);
+        pointCallback.startLevel(1);
+        LuminanceSource source = createSource(yuvData, 1);
+        Result result = decode(source, System.nanoTime());
+        if (result == null && profile.isAlsoInverted()) {
+            result = decode(new InvertedLuminanceSource(source, matrixBuffer), System.nanoTime());
+        }
+        if (result == null || !result.getText().equals(cached.getText())) {
+            return null;
+        }
+        return pointCallback.toFramingCoordinates(result);
+    }
+
+    /**
+     * Caches {@code result} with the part of the frame its points span.
+     */
+    private void cacheResult(ResultCache cache, byte[] yuvData, Result result) {
+        codeRegion(result.getResultPoints(), 0.0f, cacheRegion);
+        RotatedLuminanceSource.toDataRect(rotation, width, height, cacheRegion);
+        int regionLeft = left + cacheRegion[0];
+        int regionTop = top + cacheRegion[1];
+        long fingerprint = FrameQualityFilter.fingerprint(yuvData, dataWidth, regionLeft, regionTop,
+                cacheRegion[2], cacheRegion[3]);
+        cache.put(result, regionLeft, regionTop, cacheRegion[2], cacheRegion[3], fingerprint,
+                System.nanoTime() / 1000000L);
+    }
+
+    /**
+     * Stores in {@code rect} the {@link CodeRegion} of {@code points} in the upright framing rect.
+     */
+    private void codeRegion(ResultPoint[] points, float margin, int[] rect) {
+        boolean sideways = RotatedLuminanceSource.isSideways(rotation);
+        CodeRegion.around(points, margin, sideways ? height : width, sideways ? width : height, rect);
+    }
+
+    /**
+     * Decodes the whole framing rect, in upright coordinates.
+     */
+    private void setFullRoi() {
+        boolean sideways = RotatedLuminanceSource.isSideways(rotation);
+        roi[0] = 0;
+        roi[1] = 0;
+        roi[2] = sideways ? height : width;
+        roi[3] = sideways ? width : height;
+    }
+
+    private LuminanceSource createSource(byte[] yuvData, int factor) {
+        if (rotation != 0) {
+            System.arraycopy(roi, 0, dataRoi, 0, 4);
+            RotatedLuminanceSource.toDataRect(rotation, width, height, dataRoi);
+            return new RotatedLuminanceSource(yuvData, dataWidth, dataHeight, left + dataRoi[0], top + dataRoi[1],
+                    dataRoi[2], dataRoi[3], rotation, factor, matrixBuffer);
+        }
+        // Equivalent to PlanarYUVLuminanceSource.crop() of the framing rect, but keeps the matrix
+        // buffer.
+        if (factor == 1) {
+            return new PlanarYUVLuminanceSource(yuvData, dataWidth, dataHeight,
+                    left + roi[0], top + roi[1], roi[2], roi[3], false, matrixBuffer);
+        }
+        return new SubsampledLuminanceSource(yuvData, dataWidth, dataHeight,
+                left + roi[0], top + roi[1], roi[2], roi[3], factor, matrixBuffer);
+    }
+
+    private Result decode(LuminanceSource source, long start) {
+        BinarizerSelector selector = binarizerSelector;
+        if (selector == null) {
+            return decode(source, BinarizerSelector.Kind.HYBRID, start);
+        }
+        BinarizerSelector.Kind first = selector.choose();
+        Result result = decode(source, first, start);
+        if (result != null) {
+            selector.record(first, true);
+            return result;
+        }
+        // The first binarizer may have missed a code the other one reads, e.g. under lighting the
+        // global threshold cannot handle, where it does not even find finder patterns.
+        BinarizerSelector.Kind second = BinarizerSelector.other(first);
+        result = decode(source, second, System.nanoTime());
+        // A frame with no code in view says nothing about either binarizer; counting it as a loss
+        // would drag both scores down while the viewfinder is empty.
+        if (result != null || pointCallback.getLevelPointCount() > 0) {
+            selector.record(first, false);
+            selector.record(second, result != null);
+        }
+        return result;
+    }
+
+    private Result decode(LuminanceSource source, BinarizerSelector.Kind binarizer, long start) {
+        try {
+            BinaryBitmap bitmap = binarize(source, binarizer, start);
+            try {
+                return reader.decodeWithState(bitmap);
+            } finally {
+                recordDetectAndDecode();
+            }
+        } catch (ReaderException re) {
+            return null;
+        } finally {
+            reader.reset();
+        }
+    }
+
+    /**
+     * @param start when building {@code source} began
+     */
+    private BinaryBitmap binarize(LuminanceSource source, BinarizerSelector.Kind binarizer, long start)
+            throws NotFoundException {
+        BinaryBitmap bitmap = new BinaryBitmap(binarizer.create(source, binarizerScratch));
+        DecodeMetrics metrics = this.metrics;
+        if (metrics != null) {
+            long built = System.nanoTime();
+            metrics.record(DecodeMetrics.Stage.SOURCE_BUILD, built - start);
+            // The bitmap caches the matrix, so the reader does not binarize again.
+            bitmap.getBlackMatrix();
+            binarizedNanos = System.nanoTime();
+            metrics.record(DecodeMetrics.Stage.BINARIZE, binarizedNanos - built);
+        }
+        return bitmap;
+    }
+
+    private void recordDetectAndDecode() {
+        DecodeMetrics metrics = this.metrics;
+        if (metrics == null) {
+            return;
+        }
+        long end = System.nanoTime();
+        long lastPoint = pointCallback.getLastPointNanos();
+        if (pointCallback.getLevelPointCount() > 0 && lastPoint > binarizedNanos) {
+            metrics.record(DecodeMetrics.Stage.DETECT, lastPoint - binarizedNanos);
+            metrics.record(DecodeMetrics.Stage.DECODE, end - lastPoint);
+        } else {
+            metrics.record(DecodeMetrics.Stage.DETECT, end - binarizedNanos);
+        }
+    }
+
+    /**
+     * Maps points found in the decoded window at the current level to full-resolution coordinates
+     * relative to the framing rect, forwards them, and keeps their bounding box for the ROI
+     * tracker.
+     */
+    private static final class LevelPointCallback implements ResultPointCallback {
+
+        private final ResultPointCallback delegate;
+        private int offsetX;
+        private int offsetY;
+        private int factor;
+        private int levelPointCount;
+        private int framePointCount;
+        private long lastPointNanos;
+        private float minX;
+        private float minY;
+        private float maxX;
+        private float maxY;
+
+        LevelPointCallback(ResultPointCallback delegate) {
+            this.delegate = delegate;
+        }
+
+        void startFrame(int offsetX, int offsetY) {
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            framePointCount = 0;
+        }
+
+        void startLevel(int factor) {
+            this.factor = factor;
+            levelPointCount = 0;
+        }
+
+        int getLevelPointCount() {
+            return levelPointCount;
+        }
+
+        int getFramePointCount() {
+            return framePointCount;
+        }
+
+        long getLastPointNanos() {
+            return lastPointNanos;
+        }
+
+        @Override
+        public void foundPossibleResultPoint(ResultPoint point) {
+            float x = offsetX + point.getX() * factor;
+            float y = offsetY + point.getY() * factor;
+            if (framePointCount++ == 0) {
+                minX = maxX = x;
+                minY = maxY = y;
+            } else {
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+            }
+            levelPointCount++;
+            lastPointNanos = System.nanoTime();
+            if (delegate != null) {
+                delegate.foundPossibleResultPoint(factor == 1 && offsetX == 0 && offsetY == 0 ?
+                        point : new ResultPoint(x, y));
+            }
+        }
+
+        Result toFramingCoordinates(Result result) {
+            if (factor == 1 && offsetX == 0 && offsetY == 0) {
+                return result;
+            }
+            ResultPoint[] points = result.getResultPoints();
+            ResultPoint[] mapped = null;
+            if (points != null) {
+                mapped = new ResultPoint[points.length];
+                for (int i = 0; i < points.length; i++) {
+                    mapped[i] = new ResultPoint(offsetX + points[i].getX() * factor,
+                            offsetY + points[i].getY() * factor);
+                }
+            }
+            Result mappedResult = new Result(result.getText(), result.getRawBytes(), mapped,
+                    result.getBarcodeFormat(), result.getTimestamp());
+            mappedResult.putAllMetadata(result.getResultMetadata());
+            return mappedResult;
+        }
+
+        void reportTo(RoiTracker tracker) {
+            if (framePointCount == 0) {
+                tracker.miss();
+            } else {
+                tracker.hit(minX, minY, maxX, maxY);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package net.multipi.QrReader;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-stage timings and frame counters for the scan pipeline. {@link DecodeScheduler} records
+ * frame arrival, queue wait and drops; {@link DecodeContext} records the decode stages and
+ * outcomes. Everything is lock-free, so one instance is shared by all threads.
+ */
+public final class DecodeMetrics {
+
+    public enum Stage {
+        /** Time between two frames handed to the scheduler. */
+        FRAME_INTERVAL,
+        /** Time a frame spent in the scheduler before a worker picked it up. */
+        QUEUE_WAIT,
+        /** Creating the luminance source for a resolution level. */
+        SOURCE_BUILD,
+        /** Computing the black matrix, including the luminance copy. */
+        BINARIZE,
+        /** From the black matrix to the last finder or alignment pattern reported by the reader. */
+        DETECT,
+        /** From the last reported pattern to the reader returning. */
+        DECODE,
+        /** Decoding the framing rect as tiles after no resolution level decoded it. */
+        TILED_DECODE
+    }
+
+    private static final long NONE = -1L;
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    private final AtomicLong framesIn = new AtomicLong();
+    private final AtomicLong framesDropped = new AtomicLong();
+    private final AtomicLong framesSkipped = new AtomicLong();
+    private final AtomicLong framesFailed = new AtomicLong();
+    private final AtomicLong framesDecoded = new AtomicLong();
+    private final AtomicLong lastArrivalNanos = new AtomicLong(NONE);
+    private final AtomicLong sessionStartNanos = new AtomicLong(NONE);
+    private final AtomicLong firstDecodeNanos = new AtomicLong(NONE);
+
+    public DecodeMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Starts measuring the time to the first decoded frame, e.g. from {@code onResume}.
+     */
+    public void startSession(long nanos) {
+        sessionStartNanos.set(nanos);
+        firstDecodeNanos.set(NONE);
+        lastArrivalNanos.set(NONE);
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    public void frameArrived(long nanos) {
+        framesIn.incrementAndGet();
+        long last = lastArrivalNanos.getAndSet(nanos);
+        if (last != NONE) {
+            record(Stage.FRAME_INTERVAL, nanos - last);
+        }
+    }
+
+    public void frameDropped() {
+        framesDropped.incrementAndGet();
+    }
+
+    /**
+     * A frame rejected before decoding, e.g. by the {@link FrameQualityFilter}.
+     */
+    public void frameSkipped() {
+        framesSkipped.incrementAndGet();
+    }
+
+    public void frameFailed() {
+        framesFailed.incrementAndGet();
+    }
+
+    public void frameDecoded(long nanos) {
+        framesDecoded.incrementAndGet();
+        long start = sessionStartNanos.get();
+        if (start != NONE) {
+            firstDecodeNanos.compareAndSet(NONE, nanos - start);
+        }
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public long getFramesIn() {
+        return framesIn.get();
+    }
+
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    public long getFramesSkipped() {
+        return framesSkipped.get();
+    }
+
+    public long getFramesFailed() {
+        return framesFailed.get();
+    }
+
+    public long getFramesDecoded() {
+        return framesDecoded.get();
+    }
+
+    /**
+     * @return milliseconds from {@link #startSession(long)} to the first decoded frame, or -1 if
+     * nothing has been decoded yet
+     */
+    public double getTimeToFirstDecodeMillis() {
+        long nanos = firstDecodeNanos.get();
+        return nanos == NONE ? -1.0 : nanos / 1.0e6;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        framesIn.set(0);
+        framesDropped.set(0);
+        framesSkipped.set(0);
+        framesFailed.set(0);
+        framesDecoded.set(0);
+        lastArrivalNanos.set(NONE);
+        firstDecodeNanos.set(NONE);
+    }
+
+    /**
+     * @return a multi-line summary: counters first, then one line per stage
+     */
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append("frames in=").append(framesIn.get())
+                .append(" dropped=").append(framesDropped.get())
+                .append(" skipped=").append(framesSkipped.get())
+                .append(" failed=").append(framesFailed.get())
+                .append(" decoded=").append(framesDecoded.get())
+                .append(" firstDecode=").append(String.format("%.1fms", getTimeToFirstDecodeMillis()));
+        for (Stage stage : Stage.values()) {
+            result.append('\n').append(stage).append(": ").append(histograms[stage.ordinal()]);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,145 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+/**
+ * A named decoder configuration: which formats to look for, whether to search harder, the
+ * character set to assume and whether to also try light-on-dark codes. The ZXing hints are built
+ * once, when the profile is created, and are immutable, so one profile is shared by every
+ * {@link DecodeContext}.
+ */
+public final class DecodeProfile {
+
+    /** QR codes only, normal effort. The fastest profile and the default. */
+    public static final DecodeProfile QR = new DecodeProfile("QR", EnumSet.of(BarcodeFormat.QR_CODE),
+            false, false, false, null);
+    /** QR codes only, searching every row and also trying inverted codes. */
+    public static final DecodeProfile QR_THOROUGH = new DecodeProfile("QR_THOROUGH", EnumSet.of(BarcodeFormat.QR_CODE),
+            true, false, true, null);
+    /** QR and Data Matrix codes. */
+    public static final DecodeProfile QR_DATA_MATRIX = new DecodeProfile("QR_DATA_MATRIX",
+            EnumSet.of(BarcodeFormat.QR_CODE, BarcodeFormat.DATA_MATRIX), false, false, false, null);
+    /** A single QR code that fills the image with nothing else in it, e.g. a generated image. */
+    public static final DecodeProfile PURE_QR = new DecodeProfile("PURE_QR", EnumSet.of(BarcodeFormat.QR_CODE),
+            false, true, false, null);
+    /** Every 2D and product or industrial 1D format the reader supports. */
+    public static final DecodeProfile ALL_FORMATS = new DecodeProfile("ALL_FORMATS", EnumSet.of(
+            BarcodeFormat.QR_CODE, BarcodeFormat.DATA_MATRIX, BarcodeFormat.AZTEC, BarcodeFormat.PDF_417,
+            BarcodeFormat.EAN_13, BarcodeFormat.EAN_8, BarcodeFormat.UPC_A, BarcodeFormat.UPC_E,
+            BarcodeFormat.CODE_128, BarcodeFormat.CODE_39, BarcodeFormat.CODE_93, BarcodeFormat.ITF,
+            BarcodeFormat.CODABAR), false, false, false, null);
+
+    private static final DecodeProfile[] PROFILES = {QR, QR_THOROUGH, QR_DATA_MATRIX, PURE_QR, ALL_FORMATS};
+
+    private final String name;
+    private final Collection<BarcodeFormat> formats;
+    private final boolean tryHarder;
+    private final boolean pureBarcode;
+    private final boolean alsoInverted;
+    private final String characterSet;
+    private final Map<DecodeHintType, Object> hints;
+
+    private DecodeProfile(String name, EnumSet<BarcodeFormat> formats, boolean tryHarder, boolean pureBarcode,
+                          boolean alsoInverted, String characterSet) {
+        this.name = name;
+        this.formats = Collections.unmodifiableSet(formats);
+        this.tryHarder = tryHarder;
+        this.pureBarcode = pureBarcode;
+        this.alsoInverted = alsoInverted;
+        this.characterSet = characterSet;
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, this.formats);
+        if (tryHarder) {
+            hints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        }
+        if (pureBarcode) {
+            hints.put(DecodeHintType.PURE_BARCODE, Boolean.TRUE);
+        }
+        if (characterSet != null) {
+            hints.put(DecodeHintType.CHARACTER_SET, characterSet);
+        }
+        this.hints = Collections.unmodifiableMap(hints);
+    }
+
+    /**
+     * @return the predefined profile with this name, or null if there is none
+     */
+    public static DecodeProfile forName(String name) {
+        for (DecodeProfile profile : PROFILES) {
+            if (profile.name.equals(name)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the predefined profiles
+     */
+    public static DecodeProfile[] values() {
+        return PROFILES.clone();
+    }
+
+    /**
+     * @param characterSet encoding to assume for byte-mode text without an ECI, e.g. "Shift_JIS";
+     *                     null to let ZXing guess
+     * @return a copy of this profile with another character set
+     */
+    public DecodeProfile withCharacterSet(String characterSet) {
+        return new DecodeProfile(name, EnumSet.copyOf(formats), tryHarder, pureBarcode, alsoInverted, characterSet);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Collection<BarcodeFormat> getFormats() {
+        return formats;
+    }
+
+    public boolean isTryHarder() {
+        return tryHarder;
+    }
+
+    public boolean isPureBarcode() {
+        return pureBarcode;
+    }
+
+    /**
+     * @return whether a frame that does not decode is tried again with its luminance inverted
+     */
+    public boolean isAlsoInverted() {
+        return alsoInverted;
+    }
+
+    public String getCharacterSet() {
+        return characterSet;
+    }
+
+    /**
+     * @return whether only QR codes are decoded. The QR detector reports finder patterns as it
+     * goes, which lets a decoder give up on frames without any; other detectors report nothing.
+     */
+    public boolean isQrOnly() {
+        return formats.size() == 1 && formats.contains(BarcodeFormat.QR_CODE);
+    }
+
+    /**
+     * @return the reader hints, without a result point callback; immutable
+     */
+    public Map<DecodeHintType, Object> getHints() {
+        return hints;
+    }
+
+    @Override
+    public String toString() {
+        return characterSet == null ? name : name + " (" + characterSet + ')';
+    }
+}
@@ -0,0 +1,213 @@
+package net.multipi.QrReader;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands preview frames to a fixed pool of decode workers. There is a single pending-frame slot:
+ * a frame that arrives while the previous one is still waiting replaces it, so workers always
+ * pick up the newest frame and stale ones are dropped instead of queued.
+ *
+ * This class has no Android dependencies so it can be driven with synthetic frames on a JVM.
+ */
+public final class DecodeScheduler<F> {
+
+    public interface FrameHandler<F> {
+
+        /**
+         * Called on a worker thread for every frame that is picked up for decoding.
+         */
+        void decodeFrame(F frame);
+
+        /**
+         * Called for every frame that will never reach {@link #decodeFrame(Object)}, either because a
+         * newer frame replaced it or because the scheduler was shut down.
+         */
+        void frameDropped(F frame);
+    }
+
+    private final FrameHandler<F> handler;
+    private final Thread[] workers;
+    private final Object lock = new Object();
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong decodedCount = new AtomicLong();
+    private DecodeMetrics metrics;
+    private F pending;
+    private long pendingSince;
+    private boolean running;
+
+    public DecodeScheduler(int workerCount, FrameHandler<F> handler) {
+        if (workerCount < 1) {
+            throw new IllegalArgumentException("At least one worker is required: " + workerCount);
+        }
+        this.handler = handler;
+        this.workers = new Thread[workerCount];
+    }
+
+    /**
+     * @param metrics receives frame arrivals, drops and queue wait times; null to record nothing.
+     *                Set before {@link #start()}.
+     */
+    public void setMetrics(DecodeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+            for (int i = 0; i < workers.length; i++) {
+                workers[i] = new Thread(new Worker(), "Decoder-" + i);
+                workers[i].start();
+            }
+        }
+    }
+
+    /**
+     * Offers a frame for decoding. Never blocks the caller.
+     *
+     * @return false if the scheduler is not running. The frame is then handed straight back to
+     * {@link FrameHandler#frameDropped(Object)} without being counted, since the camera keeps
+     * delivering a few frames after the scheduler is shut down.
+     */
+    public boolean submit(F frame) {
+        F replaced;
+        long now = System.nanoTime();
+        synchronized (lock) {
+            if (!running) {
+                replaced = frame;
+            } else {
+                submittedCount.incrementAndGet();
+                replaced = pending;
+                pending = frame;
+                pendingSince = now;
+                lock.notify();
+            }
+        }
+        if (replaced == frame) {
+            handler.frameDropped(frame);
+            return false;
+        }
+        if (metrics != null) {
+            metrics.frameArrived(now);
+        }
+        if (replaced != null) {
+            frameDropped(replaced);
+        }
+        return true;
+    }
+
+    /**
+     * Stops the workers and drops the pending frame. Frames already being decoded are allowed to
+     * finish; when {@code awaitMillis} is positive the call waits up to that long for them.
+     */
+    public void shutdown(long awaitMillis) {
+        F dropped;
+        Thread[] stopped;
+        synchronized (lock) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            dropped = pending;
+            pending = null;
+            stopped = workers.clone();
+            lock.notifyAll();
+        }
+        if (dropped != null) {
+            frameDropped(dropped);
+        }
+        for (Thread worker : stopped) {
+            worker.interrupt();
+        }
+        if (awaitMillis > 0) {
+            long deadline = System.currentTimeMillis() + awaitMillis;
+            try {
+                for (Thread worker : stopped) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    worker.join(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        synchronized (lock) {
+            return running;
+        }
+    }
+
+    public int getWorkerCount() {
+        return workers.length;
+    }
+
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return number of frames that went through {@link FrameHandler#decodeFrame(Object)}, whether
+     * or not a code was found in them
+     */
+    public long getDecodedCount() {
+        return decodedCount.get();
+    }
+
+    private void frameDropped(F frame) {
+        droppedCount.incrementAndGet();
+        if (metrics != null) {
+            metrics.frameDropped();
+        }
+        handler.frameDropped(frame);
+    }
+
+    private F take() throws InterruptedException {
+        F frame;
+        long since;
+        synchronized (lock) {
+            while (running && pending == null) {
+                lock.wait();
+            }
+            if (!running) {
+                return null;
+            }
+            frame = pending;
+            since = pendingSince;
+            pending = null;
+        }
+        if (metrics != null) {
+            metrics.record(DecodeMetrics.Stage.QUEUE_WAIT, System.nanoTime() - since);
+        }
+        return frame;
+    }
+
+    private final class Worker implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                F frame;
+                while ((frame = take()) != null) {
+                    try {
+                        handler.decodeFrame(frame);
+                    } finally {
+                        decodedCount.incrementAndGet();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // shutdown() interrupts idle workers
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package net.multipi.QrReader;
+
+/**
+ * A small live picture of what the decoder sees: the framing rect upright, subsampled by
+ * {@code factor}, with the part the last frame was decoded in. Decode workers call {@link #update}
+ * after each frame; the picture is only rendered again when the decoded ROI or the result points
+ * have changed since the last one, so a scene that stays the same costs a comparison per frame and
+ * no redraw. Pixels are rendered into a back buffer and swapped in, so the view only waits for the
+ * swap, never for a render, and neither buffer is reallocated while the geometry stays the same.
+ *
+ * The view reads the picture with {@link #drawTo}. This class has no Android dependencies; the
+ * view copies the pixels into its own bitmap.
+ */
+public final class DecoderOverlay {
+
+    public interface Sink {
+
+        /**
+         * Called with the overlay locked; the arguments are only valid during the call.
+         *
+         * @param roi {left, top, width, height} of the decoded part, in picture pixels
+         */
+        void draw(int[] pixels, int width, int height, int[] roi);
+    }
+
+    private final int factor;
+    private final Object renderLock = new Object();
+
+    // Guarded by renderLock.
+    private int[] back = new int[0];
+    private final int[] nextRoi = new int[4];
+    private final int[] lastRoi = new int[4];
+    private PreviewGeometry lastGeometry;
+    private long lastPointCount = -1;
+    private long skippedCount;
+
+    // Guarded by this.
+    private int[] front = new int[0];
+    private final int[] frontRoi = new int[4];
+    private int frontWidth;
+    private int frontHeight;
+    private long version;
+
+    /**
+     * @param factor subsampling factor of the picture relative to the preview
+     */
+    public DecoderOverlay(int factor) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("Overlay factor must be positive: " + factor);
+        }
+        this.factor = factor;
+    }
+
+    public int getFactor() {
+        return factor;
+    }
+
+    /**
+     * Renders {@code yuvData} if the ROI {@code context} last decoded or the number of result points
+     * seen so far differs from the last rendered frame.
+     *
+     * @param pointCount e.g. {@link ResultPointRing#getWriteCount()}
+     * @return whether the picture changed, i.e. whether the view should be invalidated
+     */
+    public boolean update(byte[] yuvData, PreviewGeometry geometry, DecodeContext context, long pointCount) {
+        synchronized (renderLock) {
+            context.getRoi(nextRoi);
+            if (geometry == lastGeometry && pointCount == lastPointCount && sameRoi()) {
+                skippedCount++;
+                return false;
+            }
+            RotatedLuminanceSource view = new RotatedLuminanceSource(yuvData,
+                    geometry.getPreviewWidth(), geometry.getPreviewHeight(),
+                    geometry.getPreviewLeft(), geometry.getPreviewTop(),
+                    geometry.getPreviewFramingWidth(), geometry.getPreviewFramingHeight(),
+                    geometry.getRotation(), factor, null);
+            back = view.renderThumbnail(back);
+            lastGeometry = geometry;
+            lastPointCount = pointCount;
+            System.arraycopy(nextRoi, 0, lastRoi, 0, 4);
+            synchronized (this) {
+                int[] swapped = front;
+                front = back;
+                back = swapped;
+                frontWidth = view.getWidth();
+                frontHeight = view.getHeight();
+                for (int i = 0; i < 4; i++) {
+                    frontRoi[i] = nextRoi[i] / factor;
+                }
+                version++;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Hands the current picture to {@code sink} if it changed after {@code drawnVersion}.
+     *
+     * @return the version of the current picture, 0 if there is none yet
+     */
+    public synchronized long drawTo(long drawnVersion, Sink sink) {
+        if (version != drawnVersion && version > 0) {
+            sink.draw(front, frontWidth, frontHeight, frontRoi);
+        }
+        return version;
+    }
+
+    @Override
+    public String toString() {
+        long rendered;
+        synchronized (this) {
+            rendered = version;
+        }
+        synchronized (renderLock) {
+            return "1/" + factor + " scale, " + rendered + " frames rendered, " + skippedCount + " unchanged";
+        }
+    }
+
+    private boolean sameRoi() {
+        for (int i = 0; i < 4; i++) {
+            if (nextRoi[i] != lastRoi[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
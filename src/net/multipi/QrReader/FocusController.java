@@ -0,0 +1,217 @@
+package net.multipi.QrReader;
+
+/**
+ * Decides when the camera should run an autofocus cycle, from focus completions and from what the
+ * decoders see. It has three states:
+ * <ul>
+ *     <li>stopped: no camera, nothing is requested;</li>
+ *     <li>focusing: a cycle was requested and has not completed yet;</li>
+ *     <li>waiting: the lens is settled until the next periodic refocus.</li>
+ * </ul>
+ * While waiting, a refocus is requested early after {@code nearMissLimit} frames in a row with
+ * finder patterns that still did not decode, or after {@code blurryLimit} frames in a row at less
+ * than half the sharpness seen since the last focus. Every decoded frame doubles the interval to
+ * the next periodic refocus, up to {@code maxIntervalMillis}, so a lens that works is left alone;
+ * an early refocus starts over at {@code intervalMillis}. Early refocuses are at least
+ * {@code minGapMillis} apart, so a scene that cannot be decoded does not keep the lens hunting.
+ *
+ * The controller does not touch the camera. Requests go to a {@link Listener}, and the owner calls
+ * {@link #tick} at the delay given by {@link #getDelay}. Times are milliseconds on any clock, as long
+ * as it is the same one for every call. The methods may be called from any thread.
+ */
+public final class FocusController {
+
+    public interface Listener {
+
+        /**
+         * Called when a focus cycle should start; must not block. The owner reports the outcome
+         * with {@link #focusCompleted}.
+         */
+        void focusRequested();
+    }
+
+    private enum State {STOPPED, FOCUSING, WAITING}
+
+    private static final long DEFAULT_INTERVAL = 2000L;
+    private static final long DEFAULT_MAX_INTERVAL = 8000L;
+    private static final long DEFAULT_MIN_GAP = 500L;
+    private static final long DEFAULT_FOCUS_TIMEOUT = 3000L;
+    private static final int DEFAULT_NEAR_MISS_LIMIT = 3;
+    private static final int DEFAULT_BLURRY_LIMIT = 3;
+
+    private final Listener listener;
+    private final long intervalMillis;
+    private final long maxIntervalMillis;
+    private final long minGapMillis;
+    private final long focusTimeoutMillis;
+    private final int nearMissLimit;
+    private final int blurryLimit;
+
+    private State state = State.STOPPED;
+    private long interval;
+    private long focusStartedAt;
+    private long focusEndedAt;
+    private long nextFocusAt;
+    private int nearMisses;
+    private int blurryFrames;
+    private int peakSharpness;
+    private long periodicCount;
+    private long nearMissCount;
+    private long blurCount;
+    private long failedCount;
+
+    /**
+     * @param intervalMillis     time from a completed focus to the next periodic one
+     * @param maxIntervalMillis  longest interval while decodes keep succeeding
+     * @param minGapMillis       shortest time from a completed focus to an early one
+     * @param focusTimeoutMillis a cycle that has not completed after this long is requested again
+     */
+    public FocusController(Listener listener, long intervalMillis, long maxIntervalMillis, long minGapMillis,
+                           long focusTimeoutMillis, int nearMissLimit, int blurryLimit) {
+        if (intervalMillis <= 0 || maxIntervalMillis < intervalMillis) {
+            throw new IllegalArgumentException("Bad focus intervals: " + intervalMillis + ", " + maxIntervalMillis);
+        }
+        this.listener = listener;
+        this.intervalMillis = intervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.minGapMillis = minGapMillis;
+        this.focusTimeoutMillis = focusTimeoutMillis;
+        this.nearMissLimit = nearMissLimit;
+        this.blurryLimit = blurryLimit;
+    }
+
+    /**
+     * @return a controller with the timings the scanner uses
+     */
+    public static FocusController createDefault(Listener listener) {
+        return new FocusController(listener, DEFAULT_INTERVAL, DEFAULT_MAX_INTERVAL, DEFAULT_MIN_GAP,
+                DEFAULT_FOCUS_TIMEOUT, DEFAULT_NEAR_MISS_LIMIT, DEFAULT_BLURRY_LIMIT);
+    }
+
+    /**
+     * Starts with a focus cycle right away.
+     */
+    public synchronized void start(long now) {
+        interval = intervalMillis;
+        requestFocus(now);
+    }
+
+    public synchronized void stop() {
+        state = State.STOPPED;
+    }
+
+    public synchronized void focusCompleted(boolean focused, long now) {
+        if (state != State.FOCUSING) {
+            return;
+        }
+        state = State.WAITING;
+        focusEndedAt = now;
+        nearMisses = 0;
+        blurryFrames = 0;
+        peakSharpness = 0;
+        if (focused) {
+            nextFocusAt = now + interval;
+        } else {
+            failedCount++;
+            nextFocusAt = now + minGapMillis;
+        }
+    }
+
+    public synchronized void frameDecoded(long now) {
+        nearMisses = 0;
+        if (state != State.WAITING) {
+            return;
+        }
+        interval = Math.min(maxIntervalMillis, interval * 2);
+        nextFocusAt = now + interval;
+    }
+
+    /**
+     * A frame had finder patterns but did not decode.
+     */
+    public synchronized void nearMiss(long now) {
+        if (state != State.WAITING) {
+            return;
+        }
+        if (++nearMisses >= nearMissLimit && now - focusEndedAt >= minGapMillis) {
+            nearMissCount++;
+            refocusEarly(now);
+        }
+    }
+
+    /**
+     * @param sharpness a {@link FrameQualityFilter#sharpness} score of the frame
+     */
+    public synchronized void frameSharpness(int sharpness, long now) {
+        if (state != State.WAITING) {
+            return;
+        }
+        if (sharpness >= peakSharpness) {
+            peakSharpness = sharpness;
+            blurryFrames = 0;
+        } else if (sharpness * 2 < peakSharpness) {
+            if (++blurryFrames >= blurryLimit && now - focusEndedAt >= minGapMillis) {
+                blurCount++;
+                refocusEarly(now);
+            }
+        } else {
+            blurryFrames = 0;
+        }
+    }
+
+    /**
+     * Requests the periodic refocus when it is due, and requests a cycle again when the last one
+     * did not complete in time.
+     */
+    public synchronized void tick(long now) {
+        if (state == State.WAITING && now >= nextFocusAt) {
+            periodicCount++;
+            requestFocus(now);
+        } else if (state == State.FOCUSING && now - focusStartedAt >= focusTimeoutMillis) {
+            failedCount++;
+            requestFocus(now);
+        }
+    }
+
+    /**
+     * @return milliseconds until {@link #tick} has something to do, or -1 if stopped
+     */
+    public synchronized long getDelay(long now) {
+        switch (state) {
+            case WAITING:
+                return Math.max(0, nextFocusAt - now);
+            case FOCUSING:
+                return Math.max(0, focusStartedAt + focusTimeoutMillis - now);
+            default:
+                return -1;
+        }
+    }
+
+    public synchronized boolean isFocusing() {
+        return state == State.FOCUSING;
+    }
+
+    /**
+     * @return the current interval to the next periodic refocus
+     */
+    public synchronized long getInterval() {
+        return interval;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return state.name().toLowerCase() + ", interval " + interval + " ms, refocused " + periodicCount +
+                " periodic, " + nearMissCount + " near miss, " + blurCount + " blur, " + failedCount + " failed";
+    }
+
+    private void refocusEarly(long now) {
+        interval = intervalMillis;
+        requestFocus(now);
+    }
+
+    private void requestFocus(long now) {
+        state = State.FOCUSING;
+        focusStartedAt = now;
+        listener.focusRequested();
+    }
+}
@@ -0,0 +1,69 @@
+package net.multipi.QrReader;
+
+/**
+ * A fixed-depth pool of preview frame buffers. Buffers are handed to the camera with
+ * {@code Camera.addCallbackBuffer}, come back filled in {@code onPreviewFrame}, and are released
+ * to the pool once the decoder is done with them, so scanning does not allocate a new array for
+ * every frame.
+ *
+ * Buffers are created lazily, up to {@code depth} of them.
+ */
+public final class FrameBufferPool {
+
+    private final int bufferSize;
+    private final byte[][] free;
+    private int freeCount;
+    private int createdCount;
+
+    public FrameBufferPool(int depth, int bufferSize) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Pool depth must be positive: " + depth);
+        }
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.free = new byte[depth][];
+    }
+
+    /**
+     * @return a buffer of {@link #getBufferSize()} bytes, or null if all of them are borrowed
+     */
+    public synchronized byte[] borrow() {
+        if (freeCount > 0) {
+            byte[] buffer = free[--freeCount];
+            free[freeCount] = null;
+            return buffer;
+        }
+        if (createdCount < free.length) {
+            createdCount++;
+            return new byte[bufferSize];
+        }
+        return null;
+    }
+
+    public synchronized void release(byte[] buffer) {
+        if (buffer == null || buffer.length != bufferSize) {
+            throw new IllegalArgumentException("Buffer does not belong to this pool");
+        }
+        if (freeCount == createdCount) {
+            throw new IllegalStateException("More buffers released than borrowed");
+        }
+        free[freeCount++] = buffer;
+    }
+
+    public int getDepth() {
+        return free.length;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * @return number of buffers that can be borrowed right now without blocking
+     */
+    public synchronized int getAvailableCount() {
+        return freeCount + free.length - createdCount;
+    }
+}
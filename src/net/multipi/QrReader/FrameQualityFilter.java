@@ -0,0 +1,170 @@
+package net.multipi.QrReader;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cheap pre-decode check on the Y plane inside the framing rect. Frames that are too blurry
+ * (low sampled gradient energy) or that look nearly identical to the last frame that failed to
+ * decode are rejected before they reach the binarizer. After a number of consecutive duplicate
+ * rejections one frame is let through anyway, so a still scene is retried now and then.
+ *
+ * One instance is shared by all decode workers.
+ */
+public final class FrameQualityFilter {
+
+    /** Distance between sampled pixels, in both directions. */
+    private static final int SAMPLE_STEP = 4;
+    /** The fingerprint is one bit per cell of an 8x8 grid. */
+    private static final int GRID_SIZE = 8;
+    private static final long NO_FINGERPRINT = 0L;
+
+    private static final int DEFAULT_MIN_SHARPNESS = 20;
+    private static final int DEFAULT_MAX_DUPLICATE_DISTANCE = 2;
+    private static final int DEFAULT_MAX_CONSECUTIVE_DUPLICATES = 5;
+
+    private final int minSharpness;
+    private final int maxDuplicateDistance;
+    private final int maxConsecutiveDuplicates;
+    private final AtomicLong lastFailedFingerprint = new AtomicLong(NO_FINGERPRINT);
+    private final AtomicInteger consecutiveDuplicates = new AtomicInteger();
+    private final AtomicLong evaluatedCount = new AtomicLong();
+    private final AtomicLong blurryCount = new AtomicLong();
+    private final AtomicLong duplicateCount = new AtomicLong();
+
+    /**
+     * @param minSharpness             frames with a lower {@link #sharpness} score are rejected
+     * @param maxDuplicateDistance     frames whose fingerprint differs from the last failed one in at
+     *                                 most this many bits are rejected; negative disables the check
+     * @param maxConsecutiveDuplicates after this many duplicate rejections in a row, accept one frame
+     */
+    public FrameQualityFilter(int minSharpness, int maxDuplicateDistance, int maxConsecutiveDuplicates) {
+        this.minSharpness = minSharpness;
+        this.maxDuplicateDistance = maxDuplicateDistance;
+        this.maxConsecutiveDuplicates = maxConsecutiveDuplicates;
+    }
+
+    /**
+     * @return a filter with the thresholds the scanner uses
+     */
+    public static FrameQualityFilter createDefault() {
+        return new FrameQualityFilter(DEFAULT_MIN_SHARPNESS, DEFAULT_MAX_DUPLICATE_DISTANCE,
+                DEFAULT_MAX_CONSECUTIVE_DUPLICATES);
+    }
+
+    /**
+     * Mean squared horizontal plus vertical gradient over a sparse grid of samples. Sharp edges
+     * score high, defocused or motion-blurred frames score low.
+     */
+    public static int sharpness(byte[] yuv, int dataWidth, int left, int top, int width, int height) {
+        long energy = 0;
+        int samples = 0;
+        for (int y = 0; y + 1 < height; y += SAMPLE_STEP) {
+            int offset = (top + y) * dataWidth + left;
+            for (int x = 0; x + 1 < width; x += SAMPLE_STEP) {
+                int pixel = yuv[offset + x] & 0xff;
+                int dx = (yuv[offset + x + 1] & 0xff) - pixel;
+                int dy = (yuv[offset + x + dataWidth] & 0xff) - pixel;
+                energy += dx * dx + dy * dy;
+                samples++;
+            }
+        }
+        return samples == 0 ? 0 : (int) (energy / samples);
+    }
+
+    /**
+     * 64-bit average hash of the rectangle: one bit per cell of an 8x8 grid, set when the cell is
+     * brighter than the rectangle as a whole. Similar frames differ in few bits.
+     */
+    public static long fingerprint(byte[] yuv, int dataWidth, int left, int top, int width, int height) {
+        long total = 0;
+        int samples = 0;
+        for (int y = 0; y < height; y += SAMPLE_STEP) {
+            int offset = (top + y) * dataWidth + left;
+            for (int x = 0; x < width; x += SAMPLE_STEP) {
+                total += yuv[offset + x] & 0xff;
+                samples++;
+            }
+        }
+        if (samples == 0) {
+            return NO_FINGERPRINT;
+        }
+        long hash = 0;
+        for (int cell = 0; cell < GRID_SIZE * GRID_SIZE; cell++) {
+            int cellLeft = cell % GRID_SIZE * width / GRID_SIZE;
+            int cellRight = (cell % GRID_SIZE + 1) * width / GRID_SIZE;
+            int cellTop = cell / GRID_SIZE * height / GRID_SIZE;
+            int cellBottom = (cell / GRID_SIZE + 1) * height / GRID_SIZE;
+            long cellSum = 0;
+            int cellCount = 0;
+            for (int y = cellTop; y < cellBottom; y += SAMPLE_STEP) {
+                int offset = (top + y) * dataWidth + left;
+                for (int x = cellLeft; x < cellRight; x += SAMPLE_STEP) {
+                    cellSum += yuv[offset + x] & 0xff;
+                    cellCount++;
+                }
+            }
+            // cellSum / cellCount > total / samples, without the divisions
+            if (cellCount > 0 && cellSum * samples > total * cellCount) {
+                hash |= 1L << cell;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * @return whether a frame with these scores is worth decoding; rejections are counted
+     */
+    public boolean accept(int sharpness, long fingerprint) {
+        evaluatedCount.incrementAndGet();
+        if (sharpness < minSharpness) {
+            blurryCount.incrementAndGet();
+            return false;
+        }
+        long lastFailed = lastFailedFingerprint.get();
+        if (maxDuplicateDistance >= 0 && lastFailed != NO_FINGERPRINT &&
+                Long.bitCount(lastFailed ^ fingerprint) <= maxDuplicateDistance) {
+            if (consecutiveDuplicates.incrementAndGet() <= maxConsecutiveDuplicates) {
+                duplicateCount.incrementAndGet();
+                return false;
+            }
+        }
+        consecutiveDuplicates.set(0);
+        return true;
+    }
+
+    /**
+     * Remembers an accepted frame that did not decode, so near-identical successors are skipped.
+     */
+    public void frameFailed(long fingerprint) {
+        lastFailedFingerprint.set(fingerprint);
+    }
+
+    public void frameDecoded() {
+        lastFailedFingerprint.set(NO_FINGERPRINT);
+        consecutiveDuplicates.set(0);
+    }
+
+    public long getEvaluatedCount() {
+        return evaluatedCount.get();
+    }
+
+    public long getBlurryCount() {
+        return blurryCount.get();
+    }
+
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    public double getRejectRate() {
+        long n = evaluatedCount.get();
+        return n == 0 ? 0.0 : (double) (blurryCount.get() + duplicateCount.get()) / n;
+    }
+
+    @Override
+    public String toString() {
+        return "evaluated " + evaluatedCount.get() + ", rejected " + blurryCount.get() + " blurry, " +
+                duplicateCount.get() + " duplicate (" + String.format("%.1f", getRejectRate() * 100) + "%)";
+    }
+}
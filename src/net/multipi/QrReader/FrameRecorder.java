@@ -0,0 +1,160 @@
+package net.multipi.QrReader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dumps preview frames to a file for replay with {@link FrameRecordingReader}. Only the Y plane is
+ * kept, since that is all the decoder reads, together with the preview size, the framing rect in
+ * preview coordinates and the arrival timestamp.
+ *
+ * {@link #record} only copies the Y plane into one of a few preallocated slots; a background
+ * thread does the writing. When every slot is still waiting to be written the frame is skipped
+ * rather than stalling the caller, and counted in {@link #getSkippedCount()}.
+ *
+ * File layout, big-endian: {@link #MAGIC}, {@link #VERSION}, then per frame the timestamp in
+ * nanoseconds (long), preview width and height, framing left, top, width and height, preview
+ * rotation (ints) and width * height luminance bytes. Version 1 files lack the rotation.
+ */
+public final class FrameRecorder {
+
+    /** "QRFR" */
+    public static final int MAGIC = 0x51524652;
+    public static final int VERSION = 2;
+
+    private final DataOutputStream out;
+    private final BlockingQueue<Slot> freeSlots;
+    private final BlockingQueue<Slot> pendingSlots;
+    private final Slot endOfStream = new Slot();
+    private final Thread writer;
+    private final AtomicLong recordedCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private volatile IOException failure;
+    private volatile boolean closed;
+
+    /**
+     * @param slots frames that may wait to be written at the same time
+     */
+    public FrameRecorder(File file, int slots) throws IOException {
+        if (slots < 1) {
+            throw new IllegalArgumentException("At least one slot is required: " + slots);
+        }
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        freeSlots = new ArrayBlockingQueue<Slot>(slots);
+        pendingSlots = new ArrayBlockingQueue<Slot>(slots + 1);
+        for (int i = 0; i < slots; i++) {
+            freeSlots.add(new Slot());
+        }
+        writer = new Thread(new Writer(), "FrameRecorder");
+        writer.start();
+    }
+
+    /**
+     * Queues the Y plane of a preview frame for writing. Never blocks.
+     *
+     * @param yuv       frame whose first {@code previewWidth * previewHeight} bytes are the Y plane
+     * @param timestamp arrival time in nanoseconds, e.g. {@code System.nanoTime()}
+     * @return false if the frame was skipped because the writer is behind or has failed
+     */
+    public boolean record(byte[] yuv, PreviewGeometry geometry, long timestamp) {
+        Slot slot = failure == null && !closed ? freeSlots.poll() : null;
+        if (slot == null) {
+            skippedCount.incrementAndGet();
+            return false;
+        }
+        int size = geometry.getPreviewWidth() * geometry.getPreviewHeight();
+        if (slot.luminance == null || slot.luminance.length != size) {
+            slot.luminance = new byte[size];
+        }
+        System.arraycopy(yuv, 0, slot.luminance, 0, size);
+        slot.timestamp = timestamp;
+        slot.geometry = geometry;
+        pendingSlots.add(slot);
+        return true;
+    }
+
+    /**
+     * Writes the frames still queued and closes the file.
+     *
+     * @throws IOException if any write failed
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        pendingSlots.add(endOfStream);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        out.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    public long getRecordedCount() {
+        return recordedCount.get();
+    }
+
+    public long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    private static final class Slot {
+        byte[] luminance;
+        PreviewGeometry geometry;
+        long timestamp;
+    }
+
+    private final class Writer implements Runnable {
+
+        @Override
+        public void run() {
+            try {
+                Slot slot;
+                while ((slot = pendingSlots.take()) != endOfStream) {
+                    try {
+                        if (failure == null) {
+                            write(slot);
+                            recordedCount.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        failure = e;
+                    } finally {
+                        slot.geometry = null;
+                        freeSlots.add(slot);
+                    }
+                }
+                out.flush();
+            } catch (InterruptedException e) {
+                // only close() stops the writer, by queueing endOfStream
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+
+        private void write(Slot slot) throws IOException {
+            PreviewGeometry geometry = slot.geometry;
+            out.writeLong(slot.timestamp);
+            out.writeInt(geometry.getPreviewWidth());
+            out.writeInt(geometry.getPreviewHeight());
+            out.writeInt(geometry.getPreviewLeft());
+            out.writeInt(geometry.getPreviewTop());
+            out.writeInt(geometry.getPreviewFramingWidth());
+            out.writeInt(geometry.getPreviewFramingHeight());
+            out.writeInt(geometry.getRotation());
+            out.write(slot.luminance);
+        }
+    }
+}
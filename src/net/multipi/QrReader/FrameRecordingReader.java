@@ -0,0 +1,140 @@
+package net.multipi.QrReader;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Reads back the frames written by {@link FrameRecorder}, in order. Frames are read into
+ * caller-owned {@link Frame} objects so a replay loop can reuse a fixed set of buffers.
+ */
+public final class FrameRecordingReader {
+
+    private final DataInputStream in;
+    private final int version;
+
+    public FrameRecordingReader(File file) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            if (in.readInt() != FrameRecorder.MAGIC) {
+                throw new IOException("Not a frame recording: " + file);
+            }
+            version = in.readInt();
+            if (version < 1 || version > FrameRecorder.VERSION) {
+                throw new IOException("Unsupported recording version " + version + ": " + file);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next frame into {@code frame}, replacing its buffer only if it is too small.
+     *
+     * @return false at the end of the recording
+     */
+    public boolean read(Frame frame) throws IOException {
+        long timestamp;
+        try {
+            timestamp = in.readLong();
+        } catch (EOFException e) {
+            return false;
+        }
+        int dataWidth = in.readInt();
+        int dataHeight = in.readInt();
+        int left = in.readInt();
+        int top = in.readInt();
+        int width = in.readInt();
+        int height = in.readInt();
+        int rotation = version >= 2 ? in.readInt() : 0;
+        if (rotation % 90 != 0 || rotation < 0 || rotation >= 360 ||
+                dataWidth <= 0 || dataHeight <= 0 || left < 0 || top < 0 || width <= 0 || height <= 0 ||
+                left + width > dataWidth || top + height > dataHeight) {
+            throw new IOException("Corrupt frame header at timestamp " + timestamp);
+        }
+        int size = dataWidth * dataHeight;
+        if (frame.luminance == null || frame.luminance.length < size) {
+            frame.luminance = new byte[size];
+        }
+        in.readFully(frame.luminance, 0, size);
+        frame.timestamp = timestamp;
+        frame.dataWidth = dataWidth;
+        frame.dataHeight = dataHeight;
+        frame.left = left;
+        frame.top = top;
+        frame.width = width;
+        frame.height = height;
+        frame.rotation = rotation;
+        return true;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * One recorded frame: the Y plane plus the geometry it was decoded with.
+     */
+    public static final class Frame {
+
+        private byte[] luminance;
+        private long timestamp;
+        private int dataWidth;
+        private int dataHeight;
+        private int left;
+        private int top;
+        private int width;
+        private int height;
+        private int rotation;
+
+        /**
+         * @return the Y plane, {@code dataWidth * dataHeight} bytes; the array may be longer
+         */
+        public byte[] getLuminance() {
+            return luminance;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public int getDataWidth() {
+            return dataWidth;
+        }
+
+        public int getDataHeight() {
+            return dataHeight;
+        }
+
+        public int getLeft() {
+            return left;
+        }
+
+        public int getTop() {
+            return top;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public int getRotation() {
+            return rotation;
+        }
+
+        /**
+         * Points {@code context} at this frame's framing rect.
+         */
+        public void applyGeometry(DecodeContext context) {
+            context.setGeometry(dataWidth, dataHeight, left, top, width, height, rotation);
+        }
+    }
+}
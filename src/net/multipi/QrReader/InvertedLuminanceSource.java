@@ -0,0 +1,65 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * Light-on-dark view of another source, for codes printed inverted or shown on dark-mode screens.
+ * The bundled ZXing has no such wrapper. Rows are inverted into the caller's buffer; the matrix is
+ * inverted into {@code matrixBuffer}, in place when the delegate already returned that buffer.
+ */
+public final class InvertedLuminanceSource extends LuminanceSource {
+
+    private final LuminanceSource delegate;
+    private final byte[] matrixBuffer;
+
+    /**
+     * @param matrixBuffer reused by {@link #getMatrix()} when large enough, may be null. Must not be
+     *                     an array the delegate returns without owning it, such as the frame itself.
+     */
+    public InvertedLuminanceSource(LuminanceSource delegate, byte[] matrixBuffer) {
+        super(delegate.getWidth(), delegate.getHeight());
+        this.delegate = delegate;
+        this.matrixBuffer = matrixBuffer;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        row = delegate.getRow(y, row);
+        int width = getWidth();
+        for (int x = 0; x < width; x++) {
+            row[x] = (byte) ~row[x];
+        }
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        byte[] matrix = delegate.getMatrix();
+        int area = getWidth() * getHeight();
+        byte[] inverted = matrixBuffer != null && matrixBuffer.length >= area ? matrixBuffer : new byte[area];
+        for (int i = 0; i < area; i++) {
+            inverted[i] = (byte) ~matrix[i];
+        }
+        return inverted;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return delegate.isCropSupported();
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        return new InvertedLuminanceSource(delegate.crop(left, top, width, height), null);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return delegate.isRotateSupported();
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        return new InvertedLuminanceSource(delegate.rotateCounterClockwise(), null);
+    }
+}
@@ -0,0 +1,128 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decodes images far larger than a camera frame, such as 50 MP document scans, a tile at a time,
+ * so the heap never holds more than a tile per decoding thread: its luminance, about
+ * {@code maxTileSize}<sup>2</sup> bytes, and the black matrix, an eighth of that.
+ *
+ * A code has to be whole in a tile, and a tile is at most {@code maxTileSize} pixels a side, so the
+ * image is decoded as a pyramid of levels. The coarsest level is subsampled until it fits in one
+ * tile and finds codes that fill a large part of the image; each finer level halves the factor and
+ * covers the image with more tiles, down to full resolution for the smallest codes. Codes up to
+ * {@code overlap} of a tile's size at a level are whole in at least one of its tiles. The levels
+ * are decoded coarsest first, since they are the cheapest.
+ *
+ * Tiles are decoded by a {@link TiledDecoder} on {@code executor}; a direct executor decodes them one
+ * after the other on the calling thread. Result points are in the coordinates of the full image.
+ */
+public final class LargeImageDecoder {
+
+    /** Below this, the hybrid binarizer falls back to the global one and tiles hold little of a code. */
+    private static final int MIN_TILE_SIZE = 64;
+
+    private final TiledDecoder tiles;
+    private final int maxTileSize;
+    private final float overlap;
+    private final AtomicLong imageCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong levelCount = new AtomicLong();
+
+    /**
+     * @param maxTileSize largest width and height of a tile, in pixels of its level
+     * @param overlap     fraction of a tile's width and height shared with each neighbor, in [0, 1)
+     */
+    public LargeImageDecoder(Executor executor, int maxTileSize, float overlap, DecodeProfile profile) {
+        if (maxTileSize < MIN_TILE_SIZE) {
+            throw new IllegalArgumentException("Tiles must be at least " + MIN_TILE_SIZE + " pixels: " + maxTileSize);
+        }
+        tiles = new TiledDecoder(executor, 1, 1, overlap, profile);
+        this.maxTileSize = maxTileSize;
+        this.overlap = overlap;
+    }
+
+    /**
+     * @return the first code found, or null if no level decodes
+     */
+    public Result decode(MappedLuminanceSource image) {
+        imageCount.incrementAndGet();
+        for (int factor = coarsestFactor(image); factor >= 1; factor /= 2) {
+            MappedLuminanceSource level = factor == 1 ? image : image.subsample(factor);
+            levelCount.incrementAndGet();
+            Result result = tiles.decode(level, columnsFor(level), rowsFor(level));
+            if (result != null) {
+                hitCount.incrementAndGet();
+                return scale(result, factor);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return every code found on any level, one result per code
+     */
+    public Result[] decodeAll(MappedLuminanceSource image) {
+        imageCount.incrementAndGet();
+        List<Result> merged = new ArrayList<Result>();
+        for (int factor = coarsestFactor(image); factor >= 1; factor /= 2) {
+            MappedLuminanceSource level = factor == 1 ? image : image.subsample(factor);
+            levelCount.incrementAndGet();
+            for (Result result : tiles.decodeAll(level, columnsFor(level), rowsFor(level))) {
+                TiledDecoder.merge(merged, scale(result, factor));
+            }
+        }
+        if (!merged.isEmpty()) {
+            hitCount.incrementAndGet();
+        }
+        return merged.toArray(new Result[merged.size()]);
+    }
+
+    @Override
+    public String toString() {
+        return hitCount.get() + " hits in " + imageCount.get() + " images, " + levelCount.get() + " levels, " +
+                tiles.getTileCount() + " tiles of at most " + maxTileSize + " px decoded";
+    }
+
+    /**
+     * @return the smallest power of two the image has to be subsampled by to fit in one tile
+     */
+    private int coarsestFactor(MappedLuminanceSource image) {
+        int factor = 1;
+        while (image.getWidth() / factor > maxTileSize || image.getHeight() / factor > maxTileSize) {
+            factor *= 2;
+        }
+        return factor;
+    }
+
+    private int columnsFor(MappedLuminanceSource level) {
+        return TiledDecoder.countFor(level.getWidth(), maxTileSize, overlap);
+    }
+
+    private int rowsFor(MappedLuminanceSource level) {
+        return TiledDecoder.countFor(level.getHeight(), maxTileSize, overlap);
+    }
+
+    private static Result scale(Result result, int factor) {
+        ResultPoint[] points = result.getResultPoints();
+        if (points == null || factor == 1) {
+            return result;
+        }
+        ResultPoint[] scaled = new ResultPoint[points.length];
+        for (int i = 0; i < points.length; i++) {
+            // The middle of the block of pixels a sample stands for.
+            scaled[i] = new ResultPoint(points[i].getX() * factor + factor / 2.0f,
+                    points[i].getY() * factor + factor / 2.0f);
+        }
+        Result full = new Result(result.getText(), result.getRawBytes(), scaled,
+                result.getBarcodeFormat(), result.getTimestamp());
+        full.putAllMetadata(result.getResultMetadata());
+        return full;
+    }
+}
@@ -0,0 +1,22 @@
+package net.multipi.QrReader;
+
+import android.util.Log;
+
+/**
+ * Writes the metrics summary to logcat, one line per log entry.
+ */
+public final class LogcatReporter implements MetricsReporter {
+
+    private final String tag;
+
+    public LogcatReporter(String tag) {
+        this.tag = tag;
+    }
+
+    @Override
+    public void report(DecodeMetrics metrics) {
+        for (String line : metrics.toString().split("\n")) {
+            Log.i(tag, line);
+        }
+    }
+}
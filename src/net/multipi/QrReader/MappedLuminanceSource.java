@@ -0,0 +1,198 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.LuminanceSource;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A luminance source over an 8-bit grayscale image in a memory-mapped file, for images too large
+ * to read onto the heap, such as document scans. Nothing is read up front: {@link #getRow} copies
+ * one row out of the mapping, {@link #crop} and {@link #subsample} only make new views of it, and
+ * the OS pages the file in as rows are touched. Only {@link #getMatrix()} copies the whole view,
+ * so a large image should be cropped into tiles first; {@link LargeImageDecoder} does that.
+ *
+ * A view may be subsampled by a factor, reading every {@code factor}-th pixel of every
+ * {@code factor}-th row like {@link SubsampledLuminanceSource}. Coordinates in a view are then
+ * {@link #getFactor()} times smaller than in the file.
+ *
+ * Each view reads through its own buffer position, so different views of the same image can be
+ * read from different threads. The whole image has to fit in one mapping, i.e. up to 2 GB.
+ */
+public final class MappedLuminanceSource extends LuminanceSource {
+
+    private static final int PGM_MAX_HEADER = 1024;
+
+    private final ByteBuffer data;
+    private final ByteBuffer view;
+    private final int dataWidth;
+    private final int dataHeight;
+    private final int left;
+    private final int top;
+    private final int factor;
+
+    private MappedLuminanceSource(ByteBuffer data, int dataWidth, int dataHeight,
+                                  int left, int top, int width, int height, int factor) {
+        super(width, height);
+        this.data = data;
+        this.view = data.duplicate();
+        this.dataWidth = dataWidth;
+        this.dataHeight = dataHeight;
+        this.left = left;
+        this.top = top;
+        this.factor = factor;
+    }
+
+    /**
+     * Maps a raw image, one byte per pixel, row after row with no padding. The Y plane of an NV21
+     * frame qualifies; anything after the last row is ignored.
+     *
+     * @param offset position of the first pixel in the file
+     */
+    public static MappedLuminanceSource open(File file, int width, int height, long offset) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Sizes must be positive: " + width + 'x' + height);
+        }
+        long size = (long) width * height;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Image is too large to map: " + width + 'x' + height);
+        }
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            if (in.length() < offset + size) {
+                throw new IOException(file + " is smaller than a " + width + 'x' + height + " image");
+            }
+            // The mapping stays valid after the channel is closed.
+            ByteBuffer data = in.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, size);
+            return new MappedLuminanceSource(data, width, height, 0, 0, width, height, 1);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Maps a binary PGM (P5) image with at most 8 bits per pixel.
+     */
+    public static MappedLuminanceSource openPgm(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), PGM_MAX_HEADER);
+        int[] header = new int[3];
+        long offset;
+        try {
+            if (in.read() != 'P' || in.read() != '5') {
+                throw new IOException(file + " is not a binary PGM image");
+            }
+            offset = 2;
+            for (int i = 0; i < header.length; i++) {
+                int c = in.read();
+                offset++;
+                // Whitespace and comments up to the next number.
+                while (c == '#' || Character.isWhitespace(c)) {
+                    if (c == '#') {
+                        while (c != '\n' && c != -1) {
+                            c = in.read();
+                            offset++;
+                        }
+                    }
+                    c = in.read();
+                    offset++;
+                }
+                int value = 0;
+                while (c >= '0' && c <= '9' && value < Integer.MAX_VALUE / 10) {
+                    value = value * 10 + c - '0';
+                    c = in.read();
+                    offset++;
+                }
+                if (!Character.isWhitespace(c) || offset > PGM_MAX_HEADER) {
+                    throw new IOException("Bad PGM header in " + file);
+                }
+                header[i] = value;
+            }
+        } finally {
+            in.close();
+        }
+        if (header[2] <= 0 || header[2] > 255) {
+            throw new IOException("Only 8-bit PGM images are supported: maxval " + header[2] + " in " + file);
+        }
+        return open(file, header[0], header[1], offset);
+    }
+
+    public int getFactor() {
+        return factor;
+    }
+
+    /**
+     * @return a view of this one that reads every {@code factor}-th pixel of every
+     * {@code factor}-th row; its coordinates are {@code factor} times smaller
+     */
+    public MappedLuminanceSource subsample(int factor) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("Subsampling factor must be positive: " + factor);
+        }
+        return new MappedLuminanceSource(data, dataWidth, dataHeight, left, top,
+                getWidth() / factor, getHeight() / factor, this.factor * factor);
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        copyRow(y, row, 0);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+        byte[] matrix = new byte[width * height];
+        for (int y = 0; y < height; y++) {
+            copyRow(y, matrix, y * width);
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        if (left < 0 || top < 0 || left + width > getWidth() || top + height > getHeight()) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+        return new MappedLuminanceSource(data, dataWidth, dataHeight, this.left + left * factor,
+                this.top + top * factor, width, height, factor);
+    }
+
+    @Override
+    public String toString() {
+        return getWidth() + "x" + getHeight() + " at " + left + "," + top + " of " + dataWidth + 'x' + dataHeight +
+                (factor == 1 ? "" : ", 1/" + factor);
+    }
+
+    private void copyRow(int y, byte[] out, int outOffset) {
+        int index = (top + y * factor) * dataWidth + left;
+        int width = getWidth();
+        if (factor == 1) {
+            view.position(index);
+            view.get(out, outOffset, width);
+            return;
+        }
+        ByteBuffer buffer = view;
+        for (int x = 0; x < width; x++, index += factor) {
+            out[outOffset + x] = buffer.get(index);
+        }
+    }
+}
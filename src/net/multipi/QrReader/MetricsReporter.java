@@ -0,0 +1,9 @@
+package net.multipi.QrReader;
+
+/**
+ * Publishes a {@link DecodeMetrics} summary somewhere: logcat, stdout, a file.
+ */
+public interface MetricsReporter {
+
+    void report(DecodeMetrics metrics);
+}
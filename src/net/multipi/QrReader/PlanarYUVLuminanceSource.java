@@ -26,6 +26,9 @@ import com.google.zxing.LuminanceSource;
  * It works for any pixel format where the Y channel is planar and appears first, including
  * YCbCr_420_SP and YCbCr_422_SP.
  *
+ * Horizontal mirroring is applied on the fly as rows are read, so the camera buffer is never
+ * modified and can be shared with other readers.
+ *
  * @author dswitkin@google.com (Daniel Switkin)
  */
 public final class PlanarYUVLuminanceSource extends LuminanceSource {
@@ -37,6 +40,8 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
   private final int dataHeight;
   private final int left;
   private final int top;
+  private final boolean reverseHorizontal;
+  private final byte[] matrixBuffer;
 
   public PlanarYUVLuminanceSource(byte[] yuvData,
                                   int dataWidth,
@@ -46,6 +51,23 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
                                   int width,
                                   int height,
                                   boolean reverseHorizontal) {
+    this(yuvData, dataWidth, dataHeight, left, top, width, height, reverseHorizontal, null);
+  }
+
+  /**
+   * @param matrixBuffer if not null and at least {@code width * height} bytes long, {@link #getMatrix()}
+   *  copies the cropped luminance into it instead of allocating a new array. The matrix is then only
+   *  valid until the buffer is reused, so a decode worker can hand the same buffer to every frame.
+   */
+  public PlanarYUVLuminanceSource(byte[] yuvData,
+                                  int dataWidth,
+                                  int dataHeight,
+                                  int left,
+                                  int top,
+                                  int width,
+                                  int height,
+                                  boolean reverseHorizontal,
+                                  byte[] matrixBuffer) {
     super(width, height);
 
 //    if (left + width > dataWidth || top + height > dataHeight) {
@@ -57,9 +79,8 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     this.dataHeight = dataHeight;
     this.left = left;
     this.top = top;
-    if (reverseHorizontal) {
-      reverseHorizontal(width, height);
-    }
+    this.reverseHorizontal = reverseHorizontal;
+    this.matrixBuffer = matrixBuffer;
   }
 
   @Override
@@ -73,6 +94,9 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     }
     int offset = (y + top) * dataWidth + left;
     System.arraycopy(yuvData, offset, row, 0, width);
+    if (reverseHorizontal) {
+      reverse(row, 0, width);
+    }
     return row;
   }
 
@@ -81,18 +105,19 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     int width = getWidth();
     int height = getHeight();
 
-    // If the caller asks for the entire underlying image, save the copy and give them the
-    // original data. The docs specifically warn that result.length must be ignored.
-    if (width == dataWidth && height == dataHeight) {
+    // If the caller asks for full-width rows starting at the top of the underlying image, save the
+    // copy and give them the original data. The docs specifically warn that result.length must be
+    // ignored, which also covers the trailing rows and chroma planes past the crop.
+    if (width == dataWidth && top == 0 && !reverseHorizontal) {
       return yuvData;
     }
 
     int area = width * height;
-    byte[] matrix = new byte[area];
+    byte[] matrix = matrixBuffer != null && matrixBuffer.length >= area ? matrixBuffer : new byte[area];
     int inputOffset = top * dataWidth + left;
 
     // If the width matches the full width of the underlying data, perform a single copy.
-    if (width == dataWidth) {
+    if (width == dataWidth && !reverseHorizontal) {
       System.arraycopy(yuvData, inputOffset, matrix, 0, area);
       return matrix;
     }
@@ -102,6 +127,9 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     for (int y = 0; y < height; y++) {
       int outputOffset = y * width;
       System.arraycopy(yuv, inputOffset, matrix, outputOffset, width);
+      if (reverseHorizontal) {
+        reverse(matrix, outputOffset, width);
+      }
       inputOffset += dataWidth;
     }
     return matrix;
@@ -112,32 +140,81 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     return true;
   }
 
+  /**
+   * The cropped source shares the underlying YUV data but not the matrix buffer, so matrices of the
+   * parent and the crop can be used at the same time.
+   */
   @Override
   public LuminanceSource crop(int left, int top, int width, int height) {
+    // Columns of a mirrored source run right to left over the data, so the crop's left edge in
+    // the data is measured from this source's right edge.
+    int dataLeft = reverseHorizontal ? this.left + getWidth() - left - width : this.left + left;
     return new PlanarYUVLuminanceSource(yuvData,
                                         dataWidth,
                                         dataHeight,
-                                        this.left + left,
+                                        dataLeft,
                                         this.top + top,
                                         width,
                                         height,
-                                        false);
+                                        reverseHorizontal);
+  }
+
+  /**
+   * The camera data this source reads from, for consumers that can work on the strided Y plane in
+   * place. Row {@code y} of the crop starts at {@code (getTop() + y) * getDataWidth() + getLeft()}.
+   */
+  byte[] getYuvData() {
+    return yuvData;
+  }
+
+  int getDataWidth() {
+    return dataWidth;
+  }
+
+  int getLeft() {
+    return left;
+  }
+
+  int getTop() {
+    return top;
+  }
+
+  boolean isReverseHorizontal() {
+    return reverseHorizontal;
   }
 
   public int[] renderThumbnail() {
-    int width = getWidth() / THUMBNAIL_SCALE_FACTOR;
-    int height = getHeight() / THUMBNAIL_SCALE_FACTOR;
-    int[] pixels = new int[width * height];
+    return renderThumbnail(THUMBNAIL_SCALE_FACTOR, null);
+  }
+
+  /**
+   * Renders every {@code factor}-th pixel of every {@code factor}-th row as opaque grey ARGB.
+   *
+   * @param pixels reused when at least {@code getThumbnailWidth(factor) * getThumbnailHeight(factor)}
+   *  long, so a view refreshing its thumbnail does not allocate; may be null
+   */
+  public int[] renderThumbnail(int factor, int[] pixels) {
+    if (factor < 1) {
+      throw new IllegalArgumentException("Thumbnail factor must be positive: " + factor);
+    }
+    int width = getWidth() / factor;
+    int height = getHeight() / factor;
+    int area = width * height;
+    if (pixels == null || pixels.length < area) {
+      pixels = new int[area];
+    }
     byte[] yuv = yuvData;
     int inputOffset = top * dataWidth + left;
+    int firstColumn = reverseHorizontal ? getWidth() - 1 : 0;
+    int columnStep = reverseHorizontal ? -factor : factor;
 
     for (int y = 0; y < height; y++) {
       int outputOffset = y * width;
-      for (int x = 0; x < width; x++) {
-        int grey = yuv[inputOffset + x * THUMBNAIL_SCALE_FACTOR] & 0xff;
+      for (int x = 0, index = inputOffset + firstColumn; x < width; x++, index += columnStep) {
+        int grey = yuv[index] & 0xff;
         pixels[outputOffset + x] = 0xFF000000 | (grey * 0x00010101);
       }
-      inputOffset += dataWidth * THUMBNAIL_SCALE_FACTOR;
+      inputOffset += dataWidth * factor;
     }
     return pixels;
   }
@@ -156,15 +233,12 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
     return getHeight() / THUMBNAIL_SCALE_FACTOR;
   }
 
-  private void reverseHorizontal(int width, int height) {
-    byte[] yuvData = this.yuvData;
-    for (int y = 0, rowStart = top * dataWidth + left; y < height; y++, rowStart += dataWidth) {
-      int middle = rowStart + width / 2;
-      for (int x1 = rowStart, x2 = rowStart + width - 1; x1 < middle; x1++, x2--) {
-        byte temp = yuvData[x1];
-        yuvData[x1] = yuvData[x2];
-        yuvData[x2] = temp;
-      }
+  private static void reverse(byte[] array, int offset, int length) {
+    int middle = offset + length / 2;
+    for (int x1 = offset, x2 = offset + length - 1; x1 < middle; x1++, x2--) {
+      byte temp = array[x1];
+      array[x1] = array[x2];
+      array[x2] = temp;
     }
   }
 
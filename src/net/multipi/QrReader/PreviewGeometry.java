@@ -0,0 +1,237 @@
+package net.multipi.QrReader;
+
+/**
+ * Immutable snapshot of the scanning geometry: the camera preview size, the screen resolution,
+ * the framing rect on screen and the same rect mapped into preview coordinates. It is computed
+ * once per camera open and replaced as a whole when something changes, so hot paths can read a
+ * consistent set of values without touching the camera or the window manager.
+ *
+ * Rects are stored as left/top/right/bottom edges, right and bottom exclusive, like
+ * {@code android.graphics.Rect}.
+ *
+ * The preview may be shown rotated clockwise by {@link #getRotation()} degrees, e.g. 90 on a phone
+ * held upright. The framing rect is laid out on the screen as the user sees it; its preview
+ * coordinates are in the unrotated frame the camera delivers, so they can be used to crop it.
+ */
+public final class PreviewGeometry {
+
+    private static final int MIN_FRAME_WIDTH = 240;
+    private static final int MIN_FRAME_HEIGHT = 240;
+    private static final int MAX_FRAME_WIDTH = 960; // = 1920/2
+    private static final int MAX_FRAME_HEIGHT = 540; // = 1080/2
+
+    private static final int MIN_PREVIEW_PIXELS = 470 * 320; // normal screen
+    private static final int MAX_PREVIEW_PIXELS = 1280 * 800;
+
+    private final int previewWidth;
+    private final int previewHeight;
+    private final int screenWidth;
+    private final int screenHeight;
+    private final int rotation;
+    private final int framingLeft;
+    private final int framingTop;
+    private final int framingRight;
+    private final int framingBottom;
+    private final int previewLeft;
+    private final int previewTop;
+    private final int previewRight;
+    private final int previewBottom;
+
+    private PreviewGeometry(int previewWidth, int previewHeight, int screenWidth, int screenHeight, int rotation,
+                            int framingLeft, int framingTop, int framingRight, int framingBottom) {
+        this.previewWidth = previewWidth;
+        this.previewHeight = previewHeight;
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        this.rotation = rotation;
+        this.framingLeft = framingLeft;
+        this.framingTop = framingTop;
+        this.framingRight = framingRight;
+        this.framingBottom = framingBottom;
+        boolean sideways = RotatedLuminanceSource.isSideways(rotation);
+        int shownWidth = sideways ? previewHeight : previewWidth;
+        int shownHeight = sideways ? previewWidth : previewHeight;
+        int shownLeft = framingLeft * shownWidth / screenWidth;
+        int shownTop = framingTop * shownHeight / screenHeight;
+        int[] rect = {shownLeft, shownTop,
+                framingRight * shownWidth / screenWidth - shownLeft, framingBottom * shownHeight / screenHeight - shownTop};
+        RotatedLuminanceSource.toDataRect(rotation, previewWidth, previewHeight, rect);
+        previewLeft = rect[0];
+        previewTop = rect[1];
+        previewRight = rect[0] + rect[2];
+        previewBottom = rect[1] + rect[3];
+    }
+
+    /**
+     * Same as {@link #create(int, int, int, int, int)} for a preview shown unrotated.
+     */
+    public static PreviewGeometry create(int previewWidth, int previewHeight, int screenWidth, int screenHeight) {
+        return create(previewWidth, previewHeight, screenWidth, screenHeight, 0);
+    }
+
+    /**
+     * Centers a framing rect of half the screen in each dimension, within fixed bounds, and maps
+     * it into the preview.
+     *
+     * @param rotation clockwise rotation of the preview on screen: 0, 90, 180 or 270
+     */
+    public static PreviewGeometry create(int previewWidth, int previewHeight, int screenWidth, int screenHeight,
+                                         int rotation) {
+        if (previewWidth <= 0 || previewHeight <= 0 || screenWidth <= 0 || screenHeight <= 0) {
+            throw new IllegalArgumentException("Sizes must be positive: preview " + previewWidth + 'x' +
+                    previewHeight + ", screen " + screenWidth + 'x' + screenHeight);
+        }
+        RotatedLuminanceSource.isSideways(rotation); // rejects other angles
+        int width = findDesiredDimensionInRange(screenWidth, MIN_FRAME_WIDTH, MAX_FRAME_WIDTH);
+        int height = findDesiredDimensionInRange(screenHeight, MIN_FRAME_HEIGHT, MAX_FRAME_HEIGHT);
+        int leftOffset = (screenWidth - width) / 2;
+        int topOffset = (screenHeight - height) / 2;
+        return new PreviewGeometry(previewWidth, previewHeight, screenWidth, screenHeight, rotation,
+                leftOffset, topOffset, leftOffset + width, topOffset + height);
+    }
+
+    /**
+     * Picks the supported preview size closest to the screen's aspect ratio, preferring an exact
+     * match of the screen size and, among equally good candidates, the one with more pixels.
+     * Sizes outside the normal-screen to 1280x800 range are ignored. Sizes and screen are compared
+     * in landscape, so the screen may be given in either orientation.
+     *
+     * @param sizes supported sizes as consecutive width, height pairs
+     * @return index of the chosen width in {@code sizes}, or -1 if no size qualifies
+     */
+    public static int findBestPreviewSize(int[] sizes, int screenWidth, int screenHeight) {
+        if (screenWidth < screenHeight) {
+            int temp = screenWidth;
+            screenWidth = screenHeight;
+            screenHeight = temp;
+        }
+        float screenAspectRatio = (float) screenWidth / (float) screenHeight;
+        int best = -1;
+        int bestPixels = 0;
+        float diff = Float.POSITIVE_INFINITY;
+        for (int i = 0; i + 1 < sizes.length; i += 2) {
+            int realWidth = sizes[i];
+            int realHeight = sizes[i + 1];
+            int pixels = realWidth * realHeight;
+            if (pixels < MIN_PREVIEW_PIXELS || pixels > MAX_PREVIEW_PIXELS) {
+                continue;
+            }
+            boolean isCandidatePortrait = realWidth < realHeight;
+            int maybeFlippedWidth = isCandidatePortrait ? realHeight : realWidth;
+            int maybeFlippedHeight = isCandidatePortrait ? realWidth : realHeight;
+            if (maybeFlippedWidth == screenWidth && maybeFlippedHeight == screenHeight) {
+                return i;
+            }
+            float aspectRatio = (float) maybeFlippedWidth / (float) maybeFlippedHeight;
+            float newDiff = Math.abs(aspectRatio - screenAspectRatio);
+            if (newDiff < diff || (newDiff == diff && pixels > bestPixels)) {
+                best = i;
+                bestPixels = pixels;
+                diff = newDiff;
+            }
+        }
+        return best;
+    }
+
+    private static int findDesiredDimensionInRange(int resolution, int hardMin, int hardMax) {
+        int dim = resolution / 2; // Target 50% of each dimension
+        if (dim < hardMin) {
+            return hardMin;
+        }
+        if (dim > hardMax) {
+            return hardMax;
+        }
+        return dim;
+    }
+
+    public int getPreviewWidth() {
+        return previewWidth;
+    }
+
+    public int getPreviewHeight() {
+        return previewHeight;
+    }
+
+    public int getScreenWidth() {
+        return screenWidth;
+    }
+
+    public int getScreenHeight() {
+        return screenHeight;
+    }
+
+    /**
+     * @return clockwise rotation of the preview on screen, in degrees
+     */
+    public int getRotation() {
+        return rotation;
+    }
+
+    public int getFramingLeft() {
+        return framingLeft;
+    }
+
+    public int getFramingTop() {
+        return framingTop;
+    }
+
+    public int getFramingRight() {
+        return framingRight;
+    }
+
+    public int getFramingBottom() {
+        return framingBottom;
+    }
+
+    public int getPreviewLeft() {
+        return previewLeft;
+    }
+
+    public int getPreviewTop() {
+        return previewTop;
+    }
+
+    public int getPreviewRight() {
+        return previewRight;
+    }
+
+    public int getPreviewBottom() {
+        return previewBottom;
+    }
+
+    /**
+     * @return width of the framing rect in preview coordinates
+     */
+    public int getPreviewFramingWidth() {
+        return previewRight - previewLeft;
+    }
+
+    /**
+     * @return height of the framing rect in preview coordinates
+     */
+    public int getPreviewFramingHeight() {
+        return previewBottom - previewTop;
+    }
+
+    /**
+     * @return width of the framing rect in preview pixels, as shown on screen
+     */
+    public int getShownFramingWidth() {
+        return RotatedLuminanceSource.isSideways(rotation) ? getPreviewFramingHeight() : getPreviewFramingWidth();
+    }
+
+    /**
+     * @return height of the framing rect in preview pixels, as shown on screen
+     */
+    public int getShownFramingHeight() {
+        return RotatedLuminanceSource.isSideways(rotation) ? getPreviewFramingWidth() : getPreviewFramingHeight();
+    }
+
+    @Override
+    public String toString() {
+        return "preview " + previewWidth + 'x' + previewHeight + " rotated " + rotation +
+                ", screen " + screenWidth + 'x' + screenHeight +
+                ", framing [" + framingLeft + ',' + framingTop + "][" + framingRight + ',' + framingBottom +
+                "], in preview [" + previewLeft + ',' + previewTop + "][" + previewRight + ',' + previewBottom + ']';
+    }
+}
@@ -0,0 +1,24 @@
+package net.multipi.QrReader;
+
+import java.io.PrintStream;
+
+/**
+ * Prints the metrics summary to a stream, {@code System.out} by default. Used off-device.
+ */
+public final class PrintStreamReporter implements MetricsReporter {
+
+    private final PrintStream out;
+
+    public PrintStreamReporter() {
+        this(System.out);
+    }
+
+    public PrintStreamReporter(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void report(DecodeMetrics metrics) {
+        out.println(metrics);
+    }
+}
@@ -2,40 +2,149 @@ package net.multipi.QrReader;
 
 import android.app.Activity;
 import android.content.Intent;
-import android.content.pm.ActivityInfo;
-import android.graphics.Rect;
+import android.graphics.ImageFormat;
 import android.hardware.Camera;
-import android.hardware.Camera.Size;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
+import android.view.Surface;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.view.ViewGroup.LayoutParams;
 import android.view.Window;
 import android.view.WindowManager;
 import android.widget.FrameLayout;
-import com.google.zxing.*;
-import com.google.zxing.common.HybridBinarizer;
+import android.widget.Toast;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 public class QKActivity extends Activity implements SurfaceHolder.Callback, Camera.PreviewCallback, Camera.AutoFocusCallback {
+    /**
+     * Boolean extra: keep scanning and report every new code instead of opening {@link ResultActivity}
+     * for the first one.
+     */
+    public static final String EXTRA_BATCH_MODE = "net.multipi.QrReader.BATCH_MODE";
+    /**
+     * String extra: path of a file to record the preview frames into, for replay off the device.
+     */
+    public static final String EXTRA_RECORD_FILE = "net.multipi.QrReader.RECORD_FILE";
+    /**
+     * String extra: name of the {@link DecodeProfile} to scan with, {@code QR} if absent or unknown.
+     */
+    public static final String EXTRA_DECODE_PROFILE = "net.multipi.QrReader.DECODE_PROFILE";
+    /**
+     * String extra: character set to assume for codes that do not declare one.
+     */
+    public static final String EXTRA_CHARACTER_SET = "net.multipi.QrReader.CHARACTER_SET";
+    /**
+     * Boolean extra: decode one frame at a time on all cores, retrying misses as overlapping tiles
+     * of the framing rect, for small codes. Only pays off with several cores.
+     */
+    public static final String EXTRA_TILED_DECODE = "net.multipi.QrReader.TILED_DECODE";
+    /**
+     * Int extra: show a live picture of what the decoder sees, subsampled by this factor; 0 or
+     * absent for none. See {@link DecoderOverlay}.
+     */
+    public static final String EXTRA_DECODER_OVERLAY = "net.multipi.QrReader.DECODER_OVERLAY";
+
+    private static final long DECODE_SHUTDOWN_TIMEOUT = 500L;
+    private static final int PREVIEW_BUFFER_COUNT = 3;
+    private static final int RECORDER_SLOTS = 4;
+    private static final int RECENT_RESULTS_CAPACITY = 256;
+    private static final long RECENT_RESULTS_WINDOW = 10000L;
+    private static final int SCAN_RATE_CAPACITY = 1000;
+    private static final int TILE_GRID = 3;
+    private static final float TILE_OVERLAP = 0.25f;
+
     private Camera camera;
+    /** Guards handing buffers to {@link #camera} from decode workers against its release. */
+    private final Object cameraLock = new Object();
+    private boolean cameraReleased = true;
+    private DecodeScheduler<byte[]> decodeScheduler;
+    private FrameBufferPool bufferPool;
+    private boolean autoFocusLoop;
+    private final ResolutionLevel[] resolutionLevels = ResolutionLevel.createDefaultLevels();
+    private final FrameQualityFilter qualityFilter = FrameQualityFilter.createDefault();
+    private final RoiTracker roiTracker = RoiTracker.createDefault();
+    private final BinarizerSelector binarizerSelector = BinarizerSelector.createDefault();
+    private final ResultCache resultCache = ResultCache.createDefault();
+    private final RecentResults recentResults = new RecentResults(RECENT_RESULTS_CAPACITY, RECENT_RESULTS_WINDOW);
+    private final ScanRateCounter scanRate = new ScanRateCounter(SCAN_RATE_CAPACITY);
+    private final DecodeMetrics metrics = new DecodeMetrics();
+    private MetricsReporter metricsReporter;
+    private boolean batchMode;
+    private boolean tiledDecode;
+    private ExecutorService tileExecutor;
+    private TiledDecoder tiledDecoder;
+    private DecodeProfile decodeProfile;
+    private DecoderOverlay decoderOverlay;
+    private String recordFile;
+    private volatile FrameRecorder recorder;
+    private Thread recorderCloser;
     private SurfaceView preview;
     private ViewfinderView vfv;
-    private Result rawResult;
     private String TAG = QKActivity.class.getSimpleName();
-    private long currKey;
+    private final Handler focusHandler = new Handler();
+    private final Runnable startFocus = new Runnable() {
+        @Override
+        public void run() {
+            Camera cam = camera;
+            if (cam == null || !autoFocusLoop) {
+                return;
+            }
+            try {
+                cam.autoFocus(QKActivity.this);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Autofocus failed to start", e);
+                focusController.focusCompleted(false, nowMillis());
+            }
+            scheduleFocusTick();
+        }
+    };
+    private final Runnable focusTick = new Runnable() {
+        @Override
+        public void run() {
+            focusController.tick(nowMillis());
+            scheduleFocusTick();
+        }
+    };
+    private final FocusController focusController = FocusController.createDefault(new FocusController.Listener() {
+        @Override
+        public void focusRequested() {
+            // Decode workers report frames, but the camera is driven from the UI thread.
+            focusHandler.post(startFocus);
+        }
+    });
+    private final ResultHandoff<Result> resultHandoff = new ResultHandoff<Result>(new ResultHandoff.Receiver<Result>() {
+        @Override
+        public void receive(final Result result) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    Intent i = new Intent(QKActivity.this, ResultActivity.class);
+                    i.putExtra(ResultActivity.RESULT, result.getText());
+                    i.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
+                    startActivity(i);
+                }
+            });
+        }
+    });
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        batchMode = getIntent().getBooleanExtra(EXTRA_BATCH_MODE, false);
+        tiledDecode = getIntent().getBooleanExtra(EXTRA_TILED_DECODE, false);
+        decodeProfile = resolveDecodeProfile();
+        recordFile = getIntent().getStringExtra(EXTRA_RECORD_FILE);
+        metricsReporter = new LogcatReporter(TAG);
 
-        setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_LANDSCAPE);
         getWindow().addFlags(WindowManager.LayoutParams.FLAG_FULLSCREEN);
         requestWindowFeature(Window.FEATURE_NO_TITLE);
 
@@ -46,6 +155,11 @@ public class QKActivity extends Activity implements SurfaceHolder.Callback, Came
         surfaceHolder.addCallback(this);
         fl.addView(preview, LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
         vfv = new ViewfinderView(this, null);
+        int overlayFactor = getIntent().getIntExtra(EXTRA_DECODER_OVERLAY, 0);
+        if (overlayFactor > 0) {
+            decoderOverlay = new DecoderOverlay(overlayFactor);
+            vfv.setDecoderOverlay(decoderOverlay);
+        }
         fl.addView(vfv, LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
         setContentView(fl);
     }
@@ -53,20 +167,108 @@ public class QKActivity extends Activity implements SurfaceHolder.Callback, Came
     @Override
     protected void onResume() {
         super.onResume();
-        camera = Camera.open();
-        vfv.setCamera(camera);
-        currKey = System.currentTimeMillis();
+        metrics.reset();
+        metrics.startSession(System.nanoTime());
+        Camera opened;
+        try {
+            opened = Camera.open();
+        } catch (RuntimeException e) {
+            // Another app holds the camera, or it is disabled.
+            Log.e(TAG, "Cannot open the camera", e);
+            opened = null;
+        }
+        if (opened == null) {
+            // Camera.open() returns null when there is no back-facing camera.
+            Toast.makeText(this, "Camera unavailable", Toast.LENGTH_LONG).show();
+            finish();
+            return;
+        }
+        synchronized (cameraLock) {
+            camera = opened;
+            cameraReleased = false;
+        }
+        int rotation = getPreviewRotation();
+        camera.setDisplayOrientation(rotation);
+        vfv.setCamera(camera, rotation);
+        String focusMode = camera.getParameters().getFocusMode();
+        autoFocusLoop = Camera.Parameters.FOCUS_MODE_AUTO.equals(focusMode) ||
+                Camera.Parameters.FOCUS_MODE_MACRO.equals(focusMode);
+        resultHandoff.open();
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        if (tiledDecode) {
+            // The tiles use the spare cores; a second frame in flight would only compete with them.
+            tileExecutor = Executors.newFixedThreadPool(workers);
+            tiledDecoder = new TiledDecoder(tileExecutor, TILE_GRID, TILE_GRID, TILE_OVERLAP, decodeProfile);
+            workers = 1;
+        }
+        decodeScheduler = new DecodeScheduler<byte[]>(workers, new Recognizer());
+        decodeScheduler.setMetrics(metrics);
+        decodeScheduler.start();
+        if (recordFile != null) {
+            awaitRecorderClosed();
+            try {
+                recorder = new FrameRecorder(new File(recordFile), RECORDER_SLOTS);
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot record frames to " + recordFile, e);
+            }
+        }
     }
 
     @Override
     protected void onPause() {
         super.onPause();
-        if (camera != null) {
-            camera.setPreviewCallback(null);
-            camera.stopPreview();
-            camera.release();
-            camera = null;
+        resultHandoff.close();
+        focusController.stop();
+        focusHandler.removeCallbacks(startFocus);
+        focusHandler.removeCallbacks(focusTick);
+        if (decodeScheduler != null) {
+            decodeScheduler.shutdown(DECODE_SHUTDOWN_TIMEOUT);
+            Log.d(TAG, "Decoded " + decodeScheduler.getDecodedCount() + " frames, dropped " + decodeScheduler.getDroppedCount());
+            for (ResolutionLevel level : resolutionLevels) {
+                Log.d(TAG, "Resolution level " + level);
+            }
+            Log.d(TAG, "Frame quality filter: " + qualityFilter);
+            Log.d(TAG, "ROI tracker: " + roiTracker);
+            Log.d(TAG, "Binarizers: " + binarizerSelector);
+            Log.d(TAG, "Result cache: " + resultCache);
+            Log.d(TAG, "Result handoff: " + resultHandoff);
+            Log.d(TAG, "Focus: " + focusController);
+            if (tiledDecoder != null) {
+                Log.d(TAG, "Tiled decoder: " + tiledDecoder);
+            }
+            Log.d(TAG, "Decode profile: " + decodeProfile);
+            if (decoderOverlay != null) {
+                Log.d(TAG, "Decoder overlay: " + decoderOverlay);
+            }
+            if (batchMode) {
+                Log.d(TAG, "Batch mode: " + scanRate.getTotal() + " codes, " +
+                        scanRate.getPerMinute(System.currentTimeMillis()) + " in the last minute");
+            }
+            metricsReporter.report(metrics);
+            decodeScheduler = null;
+        }
+        if (tileExecutor != null) {
+            tileExecutor.shutdown();
+            tileExecutor = null;
+            tiledDecoder = null;
+        }
+        if (recorder != null) {
+            closeRecorder(recorder);
+            recorder = null;
         }
+        synchronized (cameraLock) {
+            // Workers still finishing a frame after the shutdown timeout must not queue its buffer
+            // on a released camera.
+            cameraReleased = true;
+            if (camera != null) {
+                camera.setPreviewCallback(null);
+                camera.stopPreview();
+                camera.release();
+                camera = null;
+            }
+        }
+        vfv.setCamera(null, 0);
+        bufferPool = null;
     }
 
     @Override
@@ -74,27 +276,46 @@ public class QKActivity extends Activity implements SurfaceHolder.Callback, Came
 
     @Override
     public void surfaceCreated(SurfaceHolder holder) {
+        PreviewGeometry geometry = vfv.getGeometry();
+        if (camera == null || geometry == null) {
+            // The camera could not be opened and the activity is finishing.
+            return;
+        }
         try {
             camera.setPreviewDisplay(holder);
-            camera.setPreviewCallback(this);
         } catch (IOException e) {
             e.printStackTrace();
         }
 
-        Size previewSize = camera.getParameters().getPreviewSize();
-        float aspect = (float) previewSize.width / previewSize.height;
+        float aspect = RotatedLuminanceSource.isSideways(geometry.getRotation()) ?
+                (float) geometry.getPreviewHeight() / geometry.getPreviewWidth() :
+                (float) geometry.getPreviewWidth() / geometry.getPreviewHeight();
         int previewSurfaceWidth = preview.getWidth();
         LayoutParams lp = preview.getLayoutParams();
         Camera.Parameters parameters = camera.getParameters();
-        parameters.set("orientation", "landscape");
+        parameters.setPreviewSize(geometry.getPreviewWidth(), geometry.getPreviewHeight());
         camera.setParameters(parameters);
+
+        int bufferSize = geometry.getPreviewWidth() * geometry.getPreviewHeight()
+                * ImageFormat.getBitsPerPixel(parameters.getPreviewFormat()) / 8;
+        bufferPool = new FrameBufferPool(PREVIEW_BUFFER_COUNT, bufferSize);
+        byte[] buffer;
+        while ((buffer = bufferPool.borrow()) != null) {
+            camera.addCallbackBuffer(buffer);
+        }
+        camera.setPreviewCallbackWithBuffer(this);
+
         lp.width = previewSurfaceWidth;
         lp.height = (int) (previewSurfaceWidth / aspect);
         preview.setLayoutParams(lp);
-        try {
-            camera.autoFocus(this);
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (autoFocusLoop) {
+            focusController.start(nowMillis());
+        } else {
+            try {
+                camera.autoFocus(this);
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
         }
         camera.startPreview();
     }
@@ -105,76 +326,214 @@ public class QKActivity extends Activity implements SurfaceHolder.Callback, Came
 
     @Override
     public void onPreviewFrame(final byte[] bytes, final Camera camera) {
-        new Recognizer(currKey, bytes).start();
+        FrameRecorder frameRecorder = recorder;
+        PreviewGeometry geometry = vfv.getGeometry();
+        if (frameRecorder != null && geometry != null) {
+            frameRecorder.record(bytes, geometry, System.nanoTime());
+        }
+        DecodeScheduler<byte[]> scheduler = decodeScheduler;
+        if (scheduler != null) {
+            scheduler.submit(bytes);
+        }
     }
 
-    @Override
-    public void onAutoFocus(boolean b, Camera cam) {
-        new Thread(new Runnable() {
+    /**
+     * Gives a preview buffer back to the pool and queues a free one on the camera again.
+     */
+    private void recycleBuffer(byte[] bytes) {
+        FrameBufferPool pool = bufferPool;
+        if (pool == null || bytes.length != pool.getBufferSize()) {
+            return;
+        }
+        pool.release(bytes);
+        synchronized (cameraLock) {
+            if (cameraReleased) {
+                return;
+            }
+            byte[] next = pool.borrow();
+            if (next != null) {
+                camera.addCallbackBuffer(next);
+            }
+        }
+    }
+
+    /**
+     * Closes {@code frameRecorder} on a background thread, since flushing the frames still queued
+     * can take a while.
+     */
+    private void closeRecorder(final FrameRecorder frameRecorder) {
+        final String file = recordFile;
+        recorderCloser = new Thread(new Runnable() {
             @Override
             public void run() {
                 try {
-                    Thread.sleep(2000);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                if (camera!=null && (Camera.Parameters.FOCUS_MODE_AUTO.equals(camera.getParameters().getFocusMode()) ||
-                        Camera.Parameters.FOCUS_MODE_MACRO.equals(camera.getParameters().getFocusMode()))) {
-                    camera.autoFocus(QKActivity.this);
+                    frameRecorder.close();
+                    Log.d(TAG, "Recorded " + frameRecorder.getRecordedCount() + " frames to " + file +
+                            ", skipped " + frameRecorder.getSkippedCount());
+                } catch (IOException e) {
+                    Log.e(TAG, "Recording to " + file + " failed", e);
                 }
             }
-        }).start();
+        }, "FrameRecorder-close");
+        recorderCloser.start();
     }
 
-    public class Recognizer extends Thread {
+    /**
+     * Waits for the last recording to be closed before its file is opened again.
+     */
+    private void awaitRecorderClosed() {
+        Thread closer = recorderCloser;
+        if (closer == null) {
+            return;
+        }
+        try {
+            closer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        recorderCloser = null;
+    }
 
-        private long key;
-        private byte[] bytes;
+    private DecodeProfile resolveDecodeProfile() {
+        DecodeProfile profile = DecodeProfile.QR;
+        String name = getIntent().getStringExtra(EXTRA_DECODE_PROFILE);
+        if (name != null) {
+            profile = DecodeProfile.forName(name);
+            if (profile == null) {
+                Log.w(TAG, "Unknown decode profile " + name + ", using " + DecodeProfile.QR.getName());
+                profile = DecodeProfile.QR;
+            }
+        }
+        String characterSet = getIntent().getStringExtra(EXTRA_CHARACTER_SET);
+        return characterSet == null ? profile : profile.withCharacterSet(characterSet);
+    }
 
-        public Recognizer(long key, byte[] bytes) {
-            this.key = key;
-            this.bytes = bytes;
+    /**
+     * @return clockwise rotation that shows the back camera's frames upright on the current display
+     */
+    private int getPreviewRotation() {
+        Camera.CameraInfo info = new Camera.CameraInfo();
+        // Camera.open() opens the first back-facing camera
+        for (int id = 0; id < Camera.getNumberOfCameras(); id++) {
+            Camera.getCameraInfo(id, info);
+            if (info.facing == Camera.CameraInfo.CAMERA_FACING_BACK) {
+                break;
+            }
         }
+        int displayRotation;
+        switch (getWindowManager().getDefaultDisplay().getRotation()) {
+            case Surface.ROTATION_90:
+                displayRotation = 90;
+                break;
+            case Surface.ROTATION_180:
+                displayRotation = 180;
+                break;
+            case Surface.ROTATION_270:
+                displayRotation = 270;
+                break;
+            default:
+                displayRotation = 0;
+                break;
+        }
+        return (info.orientation - displayRotation + 360) % 360;
+    }
+
+    @Override
+    public void onAutoFocus(boolean b, Camera cam) {
+        focusController.focusCompleted(b, nowMillis());
+        scheduleFocusTick();
+    }
+
+    private void scheduleFocusTick() {
+        focusHandler.removeCallbacks(focusTick);
+        long delay = focusController.getDelay(nowMillis());
+        if (delay >= 0) {
+            focusHandler.postDelayed(focusTick, delay);
+        }
+    }
+
+    /**
+     * The clock the decode workers report frames to {@link FocusController} on.
+     */
+    private static long nowMillis() {
+        return System.nanoTime() / 1000000L;
+    }
+
+    public class Recognizer implements DecodeScheduler.FrameHandler<byte[]> {
+
+        private final ResultPointCallback pointCallback = new ResultPointCallback() {
+            @Override
+            public void foundPossibleResultPoint(ResultPoint resultPoint) {
+                vfv.addPossibleResultPoint(resultPoint);
+            }
+        };
+
+        private final ThreadLocal<DecodeContext> contexts = new ThreadLocal<DecodeContext>() {
+            @Override
+            protected DecodeContext initialValue() {
+                DecodeContext context = new DecodeContext(pointCallback, resolutionLevels, decodeProfile);
+                context.setQualityFilter(qualityFilter);
+                context.setRoiTracker(roiTracker);
+                context.setBinarizerSelector(binarizerSelector);
+                context.setMetrics(metrics);
+                context.setResultCache(resultCache);
+                context.setTiledDecoder(tiledDecoder);
+                context.setFocusController(focusController);
+                return context;
+            }
+        };
 
         @Override
-        public void run() {
+        public void frameDropped(byte[] bytes) {
+            recycleBuffer(bytes);
+        }
+
+        @Override
+        public void decodeFrame(byte[] bytes) {
+            long session = resultHandoff.getSession();
             try {
-                Size previewSize = camera.getParameters().getPreviewSize();
-                Rect rect = vfv.getFramingRectInPreview();
-                LuminanceSource source = new PlanarYUVLuminanceSource(bytes, previewSize.width, previewSize.height, rect.left, rect.top,
-                        rect.width(), rect.height(), false);
-
-                Map<DecodeHintType,Object> hints = new HashMap<DecodeHintType, Object>();
-                Vector<BarcodeFormat> decodeFormats = new Vector<BarcodeFormat>(1);
-                decodeFormats.add(BarcodeFormat.QR_CODE);
-                hints.put(DecodeHintType.POSSIBLE_FORMATS, decodeFormats);
-                hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, new ResultPointCallback() {
-                    @Override
-                    public void foundPossibleResultPoint(ResultPoint resultPoint) {
-                        vfv.addPossibleResultPoint(resultPoint);
-                    }
-                });
-                MultiFormatReader mfr = new MultiFormatReader();
-                mfr.setHints(hints);
-                BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-                rawResult = mfr.decodeWithState(bitmap);
-                if (rawResult!=null) {
-                    Log.e(TAG, rawResult.getText()+" key="+key+" currKey="+currKey);
-                    if (key==currKey) {
-                        currKey = System.currentTimeMillis();
-                        runOnUiThread(new Runnable() {
-                            @Override
-                            public void run() {
-                                Intent i = new Intent(QKActivity.this, ResultActivity.class);
-                                i.putExtra(ResultActivity.RESULT, rawResult.getText());
-                                i.setFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
-                                startActivity(i);
-                            }
-                        });
-                    }
+                PreviewGeometry geometry = vfv.getGeometry();
+                if (geometry == null) {
+                    return;
+                }
+                DecodeContext context = contexts.get();
+                context.setGeometry(geometry);
+                if (batchMode) {
+                    decodeBatch(context, bytes);
+                    vfv.showDecodedFrame(bytes, context);
+                    return;
+                }
+                if (!resultHandoff.isOpen(session)) {
+                    // This session's result is already on its way to the UI.
+                    return;
+                }
+                Result result = context.decode(bytes);
+                vfv.showDecodedFrame(bytes, context);
+                if (result != null && resultCache.report(result, System.nanoTime() / 1000000L)) {
+                    Log.d(TAG, "Decoded " + result.getText() + " in session " + session);
+                    resultHandoff.publish(session, result);
                 }
             } catch (Exception e) {
                 e.printStackTrace();
+            } finally {
+                recycleBuffer(bytes);
+            }
+        }
+
+        private void decodeBatch(DecodeContext context, byte[] bytes) {
+            long now = System.currentTimeMillis();
+            for (Result result : context.decodeMultiple(bytes)) {
+                if (!recentResults.add(result.getText(), now)) {
+                    continue;
+                }
+                scanRate.record(now);
+                final String message = result.getText() + " (" + scanRate.getPerMinute(now) + "/min)";
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Toast.makeText(QKActivity.this, message, Toast.LENGTH_SHORT).show();
+                    }
+                });
             }
         }
     }
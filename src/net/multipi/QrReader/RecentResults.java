@@ -0,0 +1,72 @@
+package net.multipi.QrReader;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Time-windowed de-duplication of decoded contents for batch scanning. A content is reported as
+ * new unless it was seen within the last {@code windowMillis}; every sighting restarts its window,
+ * so a label that stays in view is reported once. At most {@code capacity} contents are
+ * remembered, the least recently seen one is evicted first.
+ *
+ * One instance is shared by all decode workers.
+ */
+public final class RecentResults {
+
+    private final int capacity;
+    private final long windowMillis;
+    private final LinkedHashMap<String, Long> lastSeen;
+    private long evictedCount;
+
+    public RecentResults(int capacity, long windowMillis) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.windowMillis = windowMillis;
+        // Access order keeps the least recently seen content first.
+        this.lastSeen = new LinkedHashMap<String, Long>(capacity * 4 / 3 + 1, 0.75f, true);
+    }
+
+    /**
+     * Records a sighting of {@code content} at {@code now}.
+     *
+     * @return true if the content was not seen within the window
+     */
+    public synchronized boolean add(String content, long now) {
+        expire(now);
+        boolean isNew = lastSeen.put(content, now) == null;
+        if (lastSeen.size() > capacity) {
+            Iterator<String> eldest = lastSeen.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+            evictedCount++;
+        }
+        return isNew;
+    }
+
+    public synchronized int size() {
+        return lastSeen.size();
+    }
+
+    public synchronized long getEvictedCount() {
+        return evictedCount;
+    }
+
+    public synchronized void clear() {
+        lastSeen.clear();
+    }
+
+    private void expire(long now) {
+        Iterator<Map.Entry<String, Long>> entries = lastSeen.entrySet().iterator();
+        while (entries.hasNext()) {
+            if (now - entries.next().getValue() < windowMillis) {
+                // Entries are ordered by last sighting, so the rest are newer.
+                break;
+            }
+            entries.remove();
+            evictedCount++;
+        }
+    }
+}
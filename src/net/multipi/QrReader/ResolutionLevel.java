@@ -0,0 +1,72 @@
+package net.multipi.QrReader;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One step of the multi-resolution decode strategy in {@link DecodeContext}: a subsampling factor
+ * plus hit-rate and latency counters for the attempts made at that factor. Instances are shared
+ * by all decode workers, so the counters are atomic.
+ */
+public final class ResolutionLevel {
+
+    /** Subsampling factor of the coarse pass tried before full resolution. */
+    public static final int COARSE_FACTOR = 2;
+
+    private final int factor;
+    private final AtomicLong attempts = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    public ResolutionLevel(int factor) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("Subsampling factor must be positive: " + factor);
+        }
+        this.factor = factor;
+    }
+
+    /**
+     * @return fresh levels for the strategy the app uses: {@link #COARSE_FACTOR}, then full resolution
+     */
+    public static ResolutionLevel[] createDefaultLevels() {
+        return new ResolutionLevel[] {new ResolutionLevel(COARSE_FACTOR), new ResolutionLevel(1)};
+    }
+
+    public int getFactor() {
+        return factor;
+    }
+
+    void record(boolean hit, long nanos) {
+        attempts.incrementAndGet();
+        if (hit) {
+            hits.incrementAndGet();
+        }
+        totalNanos.addAndGet(nanos);
+    }
+
+    public long getAttempts() {
+        return attempts.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public double getHitRate() {
+        long n = attempts.get();
+        return n == 0 ? 0.0 : (double) hits.get() / n;
+    }
+
+    /**
+     * @return average time of one attempt at this level, in milliseconds
+     */
+    public double getMeanMillis() {
+        long n = attempts.get();
+        return n == 0 ? 0.0 : totalNanos.get() / 1.0e6 / n;
+    }
+
+    @Override
+    public String toString() {
+        return factor + "x: " + hits.get() + '/' + attempts.get() + " hits, " +
+                String.format("%.2f", getMeanMillis()) + " ms/attempt";
+    }
+}
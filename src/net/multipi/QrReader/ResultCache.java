@@ -0,0 +1,231 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.Result;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Recently decoded codes, for a code that stays in view. Each entry keeps the region of the frame
+ * the code's result points span, in preview data coordinates, and a {@link FrameQualityFilter#fingerprint}
+ * of that region. A frame whose region still hashes the same probably shows the same code, so
+ * {@link #lookup} returns it as a candidate: the caller decodes just that region and uses the
+ * result only if it reads the same code, and {@link #reject}s the candidate otherwise.
+ *
+ * A code is only offered for {@code revalidateMillis} after it was last decoded; after that the
+ * whole frame is decoded again. Entries live for {@code ttlMillis} after the code was last seen,
+ * by a hit or a decode, and at most {@code capacity} codes are kept, the least recently seen one is
+ * evicted first.
+ *
+ * The caller asks {@link #report} before it hands a result on. A cached code that was reported less
+ * than {@code suppressMillis} ago is suppressed, so a code still in view when the scanner comes back
+ * from its result screen does not open that screen again straight away.
+ *
+ * One instance is shared by all decode workers.
+ */
+public final class ResultCache {
+
+    private static final int DEFAULT_CAPACITY = 8;
+    private static final long DEFAULT_TTL = 10000L;
+    private static final long DEFAULT_REVALIDATE = 1000L;
+    private static final long DEFAULT_SUPPRESS = 3000L;
+    private static final int DEFAULT_MAX_DISTANCE = 3;
+
+    private final int capacity;
+    private final long ttlMillis;
+    private final long revalidateMillis;
+    private final long suppressMillis;
+    private final int maxDistance;
+    private final LinkedHashMap<String, Entry> entries;
+    private long lookupCount;
+    private long hitCount;
+    private long evictedCount;
+    private long rejectedCount;
+    private long reportedCount;
+    private long suppressedCount;
+
+    /**
+     * @param maxDistance a region whose fingerprint differs from the cached one in at most this
+     *                    many bits still matches
+     */
+    public ResultCache(int capacity, long ttlMillis, long revalidateMillis, long suppressMillis, int maxDistance) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.ttlMillis = ttlMillis;
+        this.revalidateMillis = revalidateMillis;
+        this.suppressMillis = suppressMillis;
+        this.maxDistance = maxDistance;
+        // Access order keeps the least recently seen code first.
+        entries = new LinkedHashMap<String, Entry>(capacity * 4 / 3 + 1, 0.75f, true);
+    }
+
+    /**
+     * @return a cache with the limits the scanner uses
+     */
+    public static ResultCache createDefault() {
+        return new ResultCache(DEFAULT_CAPACITY, DEFAULT_TTL, DEFAULT_REVALIDATE, DEFAULT_SUPPRESS, DEFAULT_MAX_DISTANCE);
+    }
+
+    /**
+     * @param now time in milliseconds, on the same clock for every call
+     * @return the cached result for a code whose region in this frame still matches, or null. The
+     * frame is not guaranteed to show that code.
+     */
+    public synchronized Result lookup(byte[] yuv, int dataWidth, int dataHeight, long now) {
+        expire(now);
+        lookupCount++;
+        Entry best = null;
+        int bestDistance = maxDistance + 1;
+        for (Entry entry : entries.values()) {
+            if (now - entry.decodedAt >= revalidateMillis ||
+                    entry.left + entry.width > dataWidth || entry.top + entry.height > dataHeight) {
+                continue;
+            }
+            long fingerprint = FrameQualityFilter.fingerprint(yuv, dataWidth,
+                    entry.left, entry.top, entry.width, entry.height);
+            int distance = Long.bitCount(fingerprint ^ entry.fingerprint);
+            if (distance < bestDistance) {
+                best = entry;
+                bestDistance = distance;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        hitCount++;
+        best.seenAt = now;
+        entries.get(best.result.getText());
+        return best.result;
+    }
+
+    /**
+     * Caches a decoded code, or refreshes it if it is already cached.
+     *
+     * @param left        left edge of the code's region in preview data coordinates
+     * @param top         top edge of the code's region in preview data coordinates
+     * @param fingerprint {@link FrameQualityFilter#fingerprint} of the region in the decoded frame
+     */
+    public synchronized void put(Result result, int left, int top, int width, int height, long fingerprint, long now) {
+        expire(now);
+        Entry entry = entries.get(result.getText());
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(result.getText(), entry);
+            if (entries.size() > capacity) {
+                Iterator<Entry> eldest = entries.values().iterator();
+                eldest.next();
+                eldest.remove();
+                evictedCount++;
+            }
+        }
+        entry.result = result;
+        entry.left = left;
+        entry.top = top;
+        entry.width = width;
+        entry.height = height;
+        entry.fingerprint = fingerprint;
+        entry.decodedAt = now;
+        entry.seenAt = now;
+    }
+
+    /**
+     * Drops a result {@link #lookup} returned that the frame did not decode to, so it is not
+     * offered again until the code is decoded and {@link #put} once more.
+     */
+    public synchronized void reject(Result result) {
+        Entry entry = entries.get(result.getText());
+        if (entry != null && entry.result == result) {
+            entries.remove(result.getText());
+        }
+        rejectedCount++;
+    }
+
+    /**
+     * @param now time in milliseconds, on the same clock as {@link #lookup} and {@link #put}
+     * @return false if the code is cached and was reported less than {@code suppressMillis} ago, so
+     * the caller should not hand it on again
+     */
+    public synchronized boolean report(Result result, long now) {
+        Entry entry = entries.get(result.getText());
+        if (entry != null && entry.reported && now - entry.reportedAt < suppressMillis) {
+            suppressedCount++;
+            return false;
+        }
+        if (entry != null) {
+            entry.reported = true;
+            entry.reportedAt = now;
+        }
+        reportedCount++;
+        return true;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getLookupCount() {
+        return lookupCount;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized double getHitRate() {
+        return lookupCount == 0 ? 0.0 : (double) hitCount / lookupCount;
+    }
+
+    public synchronized long getEvictedCount() {
+        return evictedCount;
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public synchronized long getReportedCount() {
+        return reportedCount;
+    }
+
+    public synchronized long getSuppressedCount() {
+        return suppressedCount;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return entries.size() + " cached, " + hitCount + " hits in " + lookupCount + " lookups (" +
+                String.format("%.1f", getHitRate() * 100) + "%), " + evictedCount + " evicted, " +
+                rejectedCount + " rejected, " + reportedCount + " reported, " + suppressedCount + " suppressed";
+    }
+
+    private void expire(long now) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().seenAt < ttlMillis) {
+                // Entries are ordered by last sighting, so the rest are newer.
+                break;
+            }
+            it.remove();
+            evictedCount++;
+        }
+    }
+
+    private static final class Entry {
+        Result result;
+        int left;
+        int top;
+        int width;
+        int height;
+        long fingerprint;
+        long decodedAt;
+        long seenAt;
+        boolean reported;
+        long reportedAt;
+    }
+}
@@ -0,0 +1,105 @@
+package net.multipi.QrReader;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Passes the first result of a scanning session to a {@link Receiver}, exactly once, no matter how
+ * many decode workers find one. A session is identified by a token: workers read it before they
+ * decode a frame and hand it back with their result. The first {@link #publish} with the current
+ * token closes the session with a compare-and-set and delivers; every later or stale one is
+ * rejected, including results of frames that were picked up before the session was reopened.
+ *
+ * The token is positive while its session is open and negated once it is closed, so a single
+ * atomic holds both. No locks are taken. This class has no Android dependencies so it can be
+ * stressed with plain threads on a JVM.
+ */
+public final class ResultHandoff<T> {
+
+    public interface Receiver<T> {
+
+        /**
+         * Called on the publishing thread, at most once per session.
+         */
+        void receive(T result);
+    }
+
+    private final Receiver<T> receiver;
+    private final AtomicLong session = new AtomicLong();
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public ResultHandoff(Receiver<T> receiver) {
+        this.receiver = receiver;
+    }
+
+    /**
+     * Closes the current session, if any, and opens a new one.
+     *
+     * @return the new session's token
+     */
+    public long open() {
+        while (true) {
+            long current = session.get();
+            long next = Math.abs(current) + 1;
+            if (session.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /**
+     * Closes the current session without a result; results still in flight are rejected.
+     */
+    public void close() {
+        while (true) {
+            long current = session.get();
+            if (current <= 0 || session.compareAndSet(current, -current)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the token to pass to {@link #publish} for a frame that is about to be decoded; not
+     * positive if no session is open
+     */
+    public long getSession() {
+        return session.get();
+    }
+
+    /**
+     * @return whether {@code token} belongs to the open session, i.e. whether a result for it could
+     * still be delivered
+     */
+    public boolean isOpen(long token) {
+        return token > 0 && session.get() == token;
+    }
+
+    /**
+     * Delivers {@code result} and closes the session if {@code token} is the open session's token.
+     *
+     * @return whether the result was delivered
+     */
+    public boolean publish(long token, T result) {
+        if (token <= 0 || !session.compareAndSet(token, -token)) {
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        publishedCount.incrementAndGet();
+        receiver.receive(result);
+        return true;
+    }
+
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return publishedCount.get() + " published, " + rejectedCount.get() + " rejected";
+    }
+}
@@ -0,0 +1,98 @@
+package net.multipi.QrReader;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-capacity ring of recent result points, written by any number of decode threads and read
+ * by the UI thread without locks or allocation. Each point is stored as one long packing both
+ * float coordinates, with its timestamp in a parallel slot.
+ *
+ * Each slot also holds the sequence number of the point in it, which a writer clears before it
+ * stores the point and sets once the point is complete. A reader only takes a slot that holds the
+ * sequence number it expects both before and after reading the point, so it never mixes the
+ * coordinates or timestamp of different points and never returns a point that overwrote an older
+ * one while the snapshot was taken; such slots are left out. This holds as long as no writer is
+ * lapped by {@code capacity} points added while it stores its own.
+ */
+public final class ResultPointRing {
+
+    private static final long EMPTY = -1;
+
+    private final AtomicLongArray coordinates;
+    private final AtomicLongArray timestamps;
+    private final AtomicLongArray sequences;
+    private final AtomicLong writeSequence = new AtomicLong();
+
+    public ResultPointRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        coordinates = new AtomicLongArray(capacity);
+        timestamps = new AtomicLongArray(capacity);
+        sequences = new AtomicLongArray(capacity);
+        clear();
+    }
+
+    public int getCapacity() {
+        return coordinates.length();
+    }
+
+    public void add(float x, float y, long timestamp) {
+        long sequence = writeSequence.getAndIncrement();
+        int slot = (int) (sequence % coordinates.length());
+        sequences.set(slot, EMPTY);
+        coordinates.set(slot, ((long) Float.floatToRawIntBits(x) << 32) | (Float.floatToRawIntBits(y) & 0xFFFFFFFFL));
+        timestamps.set(slot, timestamp);
+        sequences.set(slot, sequence);
+    }
+
+    /**
+     * Copies the points that are at most {@code maxAge} old, newest first. The output arrays should
+     * be at least {@link #getCapacity()} long; extra points are left out.
+     *
+     * @param ages receives each point's age as a fraction of {@code maxAge}, from 0 to 1
+     * @return number of points copied
+     */
+    public int snapshot(long now, long maxAge, float[] xs, float[] ys, float[] ages) {
+        int capacity = coordinates.length();
+        int limit = Math.min(capacity, Math.min(xs.length, Math.min(ys.length, ages.length)));
+        long sequence = writeSequence.get();
+        int count = 0;
+        for (int i = 0; i < capacity && count < limit && sequence - i > 0; i++) {
+            long expected = sequence - 1 - i;
+            int slot = (int) (expected % capacity);
+            if (sequences.get(slot) != expected) {
+                // Not written yet, being written, cleared or already overwritten by a newer point.
+                continue;
+            }
+            long timestamp = timestamps.get(slot);
+            long packed = coordinates.get(slot);
+            if (sequences.get(slot) != expected) {
+                continue;
+            }
+            long age = now - timestamp;
+            if (age > maxAge) {
+                continue;
+            }
+            xs[count] = Float.intBitsToFloat((int) (packed >>> 32));
+            ys[count] = Float.intBitsToFloat((int) packed);
+            ages[count] = maxAge <= 0 ? 0.0f : Math.max(0.0f, (float) age / maxAge);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of points added so far, including overwritten ones; changes whenever a point is added
+     */
+    public long getWriteCount() {
+        return writeSequence.get();
+    }
+
+    public void clear() {
+        for (int i = 0; i < sequences.length(); i++) {
+            sequences.set(i, EMPTY);
+        }
+    }
+}
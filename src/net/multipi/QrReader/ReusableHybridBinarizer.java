@@ -0,0 +1,264 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.google.zxing.common.HybridBinarizer;
+
+/**
+ * Produces the same black matrix as {@link HybridBinarizer}, bit for bit, without allocating per
+ * frame. The block black points, the per-column thresholds, a row buffer and the output matrix live
+ * in a {@link Scratch} that the caller keeps from frame to frame. The scratch keeps a matrix for
+ * each of the last few source sizes, so a decoder alternating between resolution levels does not
+ * reallocate either one; a matrix is only allocated for a size the scratch has not seen recently.
+ * A {@link PlanarYUVLuminanceSource} that is not mirrored is read in place from the camera's Y
+ * plane with its row stride, so the cropped luminance is not copied first.
+ *
+ * The matrix is built one row at a time instead of one 8x8 block at a time: each pixel is compared
+ * with the highest threshold of the blocks that cover it, which is what OR-ing the blocks together
+ * amounts to where the last block row or column overlaps the one before.
+ *
+ * The matrix returned belongs to the scratch and is overwritten by the next binarizer that uses the
+ * same scratch, so a scratch must not be shared between threads or between bitmaps in use at once.
+ * Binarizers made with {@link #createBinarizer}, as for cropped or rotated bitmaps, get their own.
+ */
+public final class ReusableHybridBinarizer extends GlobalHistogramBinarizer {
+
+    private static final int BLOCK_SIZE_POWER = 3;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER;
+    private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+    private static final int MIN_DYNAMIC_RANGE = 24;
+
+    private final Scratch scratch;
+    private BitMatrix matrix;
+
+    public ReusableHybridBinarizer(LuminanceSource source, Scratch scratch) {
+        super(source);
+        this.scratch = scratch;
+    }
+
+    @Override
+    public BitMatrix getBlackMatrix() throws NotFoundException {
+        if (matrix != null) {
+            return matrix;
+        }
+        LuminanceSource source = getLuminanceSource();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (width < MINIMUM_DIMENSION || height < MINIMUM_DIMENSION) {
+            // Same fallback as HybridBinarizer for images too small for a 5x5 block neighborhood.
+            matrix = super.getBlackMatrix();
+            return matrix;
+        }
+        if (source instanceof PlanarYUVLuminanceSource && !((PlanarYUVLuminanceSource) source).isReverseHorizontal()) {
+            PlanarYUVLuminanceSource planar = (PlanarYUVLuminanceSource) source;
+            int stride = planar.getDataWidth();
+            matrix = scratch.binarize(planar.getYuvData(), planar.getTop() * stride + planar.getLeft(), stride,
+                    width, height);
+        } else {
+            matrix = scratch.binarize(source.getMatrix(), 0, width, width, height);
+        }
+        return matrix;
+    }
+
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        return new ReusableHybridBinarizer(source, new Scratch());
+    }
+
+    /**
+     * Buffers reused from one binarization to the next. Not thread safe; one per decode worker.
+     */
+    public static final class Scratch {
+
+        /** Enough for the resolution levels and the tiles of one decoder. */
+        private static final int MATRIX_SLOTS = 3;
+
+        private int[] blackPoints = new int[0];
+        private int[] blockThresholds = new int[0];
+        private int[] thresholds = new int[0];
+        private int[] lastThresholds = new int[0];
+        private BitArray row = new BitArray(0);
+        /** Matrices of different sizes, most recently used first. */
+        private final BitMatrix[] matrices = new BitMatrix[MATRIX_SLOTS];
+        private long reusedCount;
+        private long allocatedCount;
+
+        /**
+         * @return how often the output matrix was reused rather than allocated
+         */
+        public long getReusedCount() {
+            return reusedCount;
+        }
+
+        public long getAllocatedCount() {
+            return allocatedCount;
+        }
+
+        BitMatrix binarize(byte[] luminances, int offset, int stride, int width, int height) {
+            int subWidth = (width + BLOCK_SIZE - 1) >> BLOCK_SIZE_POWER;
+            int subHeight = (height + BLOCK_SIZE - 1) >> BLOCK_SIZE_POWER;
+            BitMatrix matrix = ensureCapacity(width, height, subWidth * subHeight);
+            calculateBlackPoints(luminances, offset, stride, subWidth, subHeight, width, height);
+
+            // Rows in the last block row's span but above it are covered by two block rows.
+            int lastBlockRow = subHeight - 1;
+            expandThresholds(lastBlockRow, subWidth, subHeight, width, lastThresholds);
+            int overlapFrom = height - BLOCK_SIZE;
+            int[] bits = row.getBitArray();
+            for (int blockRow = 0; blockRow < lastBlockRow; blockRow++) {
+                expandThresholds(blockRow, subWidth, subHeight, width, thresholds);
+                int first = blockRow << BLOCK_SIZE_POWER;
+                int end = first + BLOCK_SIZE;
+                for (int y = first; y < end; y++) {
+                    if (y == overlapFrom) {
+                        for (int x = 0; x < width; x++) {
+                            thresholds[x] = Math.max(thresholds[x], lastThresholds[x]);
+                        }
+                    }
+                    thresholdRow(luminances, offset + y * stride, width, thresholds, bits);
+                    matrix.setRow(y, row);
+                }
+            }
+            for (int y = lastBlockRow << BLOCK_SIZE_POWER; y < height; y++) {
+                thresholdRow(luminances, offset + y * stride, width, lastThresholds, bits);
+                matrix.setRow(y, row);
+            }
+            return matrix;
+        }
+
+        /**
+         * @return the matrix for {@code width} by {@code height}, moved to the front of {@link #matrices}
+         */
+        private BitMatrix ensureCapacity(int width, int height, int blocks) {
+            BitMatrix[] slots = matrices;
+            int found = slots.length - 1;
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] != null && slots[i].getWidth() == width && slots[i].getHeight() == height) {
+                    found = i;
+                    break;
+                }
+            }
+            BitMatrix matrix = slots[found];
+            if (matrix != null && matrix.getWidth() == width && matrix.getHeight() == height) {
+                reusedCount++;
+            } else {
+                // Evicts the least recently used size.
+                matrix = new BitMatrix(width, height);
+                allocatedCount++;
+            }
+            System.arraycopy(slots, 0, slots, 1, found);
+            slots[0] = matrix;
+            // setRow only copies the words of the matrix's width, so a wider row serves too.
+            if (row.getSize() < width) {
+                row = new BitArray(width);
+            }
+            if (blackPoints.length < blocks) {
+                blackPoints = new int[blocks];
+            }
+            if (thresholds.length < width) {
+                blockThresholds = new int[(width + BLOCK_SIZE - 1) >> BLOCK_SIZE_POWER];
+                thresholds = new int[width];
+                lastThresholds = new int[width];
+            }
+            return matrix;
+        }
+
+        /**
+         * HybridBinarizer.calculateBlackPoints over a strided plane, into a flat array.
+         */
+        private void calculateBlackPoints(byte[] luminances, int offset, int stride, int subWidth, int subHeight,
+                                          int width, int height) {
+            int[] points = blackPoints;
+            for (int y = 0; y < subHeight; y++) {
+                int yoffset = y << BLOCK_SIZE_POWER;
+                if (yoffset + BLOCK_SIZE >= height) {
+                    yoffset = height - BLOCK_SIZE;
+                }
+                for (int x = 0; x < subWidth; x++) {
+                    int xoffset = x << BLOCK_SIZE_POWER;
+                    if (xoffset + BLOCK_SIZE >= width) {
+                        xoffset = width - BLOCK_SIZE;
+                    }
+                    int sum = 0;
+                    int min = 0xFF;
+                    int max = 0;
+                    for (int yy = 0, p = offset + yoffset * stride + xoffset; yy < BLOCK_SIZE; yy++, p += stride) {
+                        for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                            int pixel = luminances[p + xx] & 0xFF;
+                            sum += pixel;
+                            if (pixel < min) {
+                                min = pixel;
+                            }
+                            if (pixel > max) {
+                                max = pixel;
+                            }
+                        }
+                    }
+
+                    int average = sum >> (BLOCK_SIZE_POWER * 2);
+                    if (max - min <= MIN_DYNAMIC_RANGE) {
+                        // A flat block is assumed to be light, unless its neighbors say it belongs to a
+                        // dark area, exactly as in HybridBinarizer.
+                        average = min >> 1;
+                        if (y > 0 && x > 0) {
+                            int above = (y - 1) * subWidth + x;
+                            int neighborAverage = (points[above] + 2 * points[y * subWidth + x - 1] +
+                                    points[above - 1]) >> 2;
+                            if (min < neighborAverage) {
+                                average = neighborAverage;
+                            }
+                        }
+                    }
+                    points[y * subWidth + x] = average;
+                }
+            }
+        }
+
+        /**
+         * Fills {@code out} with the threshold of each pixel column in block row {@code blockRow}: the
+         * average of the 5x5 black points around the block, and in the columns where the last block
+         * overlaps the one before, the higher of the two.
+         */
+        private void expandThresholds(int blockRow, int subWidth, int subHeight, int width, int[] out) {
+            int top = blockRow > 1 ? blockRow : 2;
+            top = top < subHeight - 2 ? top : subHeight - 3;
+            int[] points = blackPoints;
+            int[] block = blockThresholds;
+            for (int x = 0; x < subWidth; x++) {
+                int left = x > 1 ? x : 2;
+                left = left < subWidth - 2 ? left : subWidth - 3;
+                int sum = 0;
+                for (int z = -2; z <= 2; z++) {
+                    int p = (top + z) * subWidth + left;
+                    sum += points[p - 2] + points[p - 1] + points[p] + points[p + 1] + points[p + 2];
+                }
+                block[x] = sum / 25;
+            }
+            int lastColumn = subWidth - 1;
+            for (int x = 0, end = lastColumn << BLOCK_SIZE_POWER; x < end; x++) {
+                out[x] = block[x >> BLOCK_SIZE_POWER];
+            }
+            int last = block[lastColumn];
+            for (int x = width - BLOCK_SIZE; x < width; x++) {
+                out[x] = x < lastColumn << BLOCK_SIZE_POWER ? Math.max(out[x], last) : last;
+            }
+        }
+
+        private static void thresholdRow(byte[] luminances, int offset, int width, int[] thresholds, int[] bits) {
+            for (int x = 0, word = 0; x < width; word++) {
+                int value = 0;
+                int end = Math.min(width, x + 32);
+                for (int bit = 0; x < end; x++, bit++) {
+                    if ((luminances[offset + x] & 0xFF) <= thresholds[x]) {
+                        value |= 1 << bit;
+                    }
+                }
+                bits[word] = value;
+            }
+        }
+    }
+}
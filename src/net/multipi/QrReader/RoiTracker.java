@@ -0,0 +1,127 @@
+package net.multipi.QrReader;
+
+/**
+ * Narrows the decode window to the area where recent frames found finder patterns. After a frame
+ * reports candidate points, following frames only decode their bounding box, padded on every side
+ * by half its size. After {@code maxMisses} frames in a row without any point, the full framing
+ * rect is used again.
+ *
+ * Coordinates are relative to the framing rect. One instance is shared by all decode workers.
+ */
+public final class RoiTracker {
+
+    private static final int DEFAULT_MIN_SIZE = 160;
+    private static final int DEFAULT_MAX_MISSES = 5;
+
+    private final int minSize;
+    private final int maxMisses;
+    private boolean tracking;
+    private float minX;
+    private float minY;
+    private float maxX;
+    private float maxY;
+    private int misses;
+    private long roiFrames;
+    private long fullFrames;
+    private long decodedPixels;
+    private long framingPixels;
+
+    /**
+     * @param minSize   smallest width and height of the decode window
+     * @param maxMisses frames without points after which the full framing rect is used again
+     */
+    public RoiTracker(int minSize, int maxMisses) {
+        this.minSize = minSize;
+        this.maxMisses = maxMisses;
+    }
+
+    /**
+     * @return a tracker with the window size and miss limit the scanner uses
+     */
+    public static RoiTracker createDefault() {
+        return new RoiTracker(DEFAULT_MIN_SIZE, DEFAULT_MAX_MISSES);
+    }
+
+    /**
+     * Picks the window for the next frame.
+     *
+     * @param roi receives {left, top, width, height} of the window
+     * @return false if the whole framing rect should be decoded; {@code roi} is filled either way
+     */
+    public synchronized boolean getRoi(int frameWidth, int frameHeight, int[] roi) {
+        framingPixels += (long) frameWidth * frameHeight;
+        if (!tracking) {
+            fullFrames++;
+            decodedPixels += (long) frameWidth * frameHeight;
+            roi[0] = 0;
+            roi[1] = 0;
+            roi[2] = frameWidth;
+            roi[3] = frameHeight;
+            return false;
+        }
+        roiFrames++;
+        float padX = (maxX - minX) / 2;
+        float padY = (maxY - minY) / 2;
+        span(minX - padX, maxX + padX, frameWidth, roi, 0);
+        span(minY - padY, maxY + padY, frameHeight, roi, 1);
+        decodedPixels += (long) roi[2] * roi[3];
+        return true;
+    }
+
+    /**
+     * Reports the bounding box of the points found in a frame.
+     */
+    public synchronized void hit(float minX, float minY, float maxX, float maxY) {
+        tracking = true;
+        misses = 0;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    /**
+     * Reports a frame in which no points were found.
+     */
+    public synchronized void miss() {
+        if (tracking && ++misses >= maxMisses) {
+            tracking = false;
+        }
+    }
+
+    public synchronized long getRoiFrameCount() {
+        return roiFrames;
+    }
+
+    public synchronized long getFullFrameCount() {
+        return fullFrames;
+    }
+
+    /**
+     * @return pixels actually decoded divided by the pixels of the full framing rects
+     */
+    public synchronized double getPixelRatio() {
+        return framingPixels == 0 ? 1.0 : (double) decodedPixels / framingPixels;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return roiFrames + " ROI frames, " + fullFrames + " full frames, " +
+                String.format("%.1f", getPixelRatio() * 100) + "% of framing pixels decoded";
+    }
+
+    /**
+     * Clamps [low, high) to [0, size), grows it to at least minSize and stores its start and
+     * length at {@code roi[index]} and {@code roi[index + 2]}.
+     */
+    private void span(float low, float high, int size, int[] roi, int index) {
+        int start = Math.max(0, (int) low);
+        int end = Math.min(size, (int) Math.ceil(high));
+        int length = Math.min(size, Math.max(end - start, minSize));
+        if (start + length > size) {
+            start = size - length;
+        }
+        roi[index] = start;
+        roi[index + 2] = length;
+    }
+}
@@ -0,0 +1,254 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A rectangle of a planar YUV frame as it looks after rotating it clockwise by 0, 90, 180 or 270
+ * degrees, optionally subsampled like {@link SubsampledLuminanceSource}. Nothing is rotated up
+ * front: each output pixel is read straight from the Y plane through a start index and two
+ * strides, one per output step in x and in y, so a rotated row costs the same as a plain one
+ * apart from the strided reads.
+ *
+ * Used when the preview is shown rotated, so codes are decoded, and result points reported, the
+ * way the user sees them.
+ */
+public final class RotatedLuminanceSource extends LuminanceSource {
+
+    private final byte[] yuvData;
+    private final int dataWidth;
+    private final int dataHeight;
+    private final int left;
+    private final int top;
+    private final int rectWidth;
+    private final int rectHeight;
+    private final int rotation;
+    private final int factor;
+    private final byte[] matrixBuffer;
+    private final int origin;
+    private final int xStride;
+    private final int yStride;
+
+    /**
+     * @param left         left edge of the rectangle, in unrotated data coordinates
+     * @param top          top edge of the rectangle, in unrotated data coordinates
+     * @param width        unrotated width of the rectangle
+     * @param height       unrotated height of the rectangle
+     * @param rotation     clockwise rotation in degrees: 0, 90, 180 or 270
+     * @param factor       subsampling factor, 1 for full resolution
+     * @param matrixBuffer reused by {@link #getMatrix()} when large enough, may be null
+     */
+    public RotatedLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight,
+                                  int left, int top, int width, int height, int rotation, int factor,
+                                  byte[] matrixBuffer) {
+        super((isSideways(rotation) ? height : width) / checkFactor(factor),
+                (isSideways(rotation) ? width : height) / factor);
+        if (left < 0 || top < 0 || left + width > dataWidth || top + height > dataHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+        this.yuvData = yuvData;
+        this.dataWidth = dataWidth;
+        this.dataHeight = dataHeight;
+        this.left = left;
+        this.top = top;
+        this.rectWidth = width;
+        this.rectHeight = height;
+        this.rotation = rotation;
+        this.factor = factor;
+        this.matrixBuffer = matrixBuffer;
+        int firstRow = top * dataWidth + left;
+        int lastRow = (top + height - 1) * dataWidth + left;
+        switch (rotation) {
+            case 0:
+                origin = firstRow;
+                xStride = factor;
+                yStride = factor * dataWidth;
+                break;
+            case 90:
+                origin = lastRow;
+                xStride = -factor * dataWidth;
+                yStride = factor;
+                break;
+            case 180:
+                origin = lastRow + width - 1;
+                xStride = -factor;
+                yStride = -factor * dataWidth;
+                break;
+            default: // 270, checked by isSideways()
+                origin = firstRow + width - 1;
+                xStride = factor * dataWidth;
+                yStride = -factor;
+                break;
+        }
+    }
+
+    /**
+     * Maps a rectangle given in rotated coordinates back to the unrotated region it came from.
+     *
+     * @param width  unrotated width of the whole region
+     * @param height unrotated height of the whole region
+     * @param rect   {left, top, width, height} in rotated coordinates, replaced by the unrotated rectangle
+     */
+    public static void toDataRect(int rotation, int width, int height, int[] rect) {
+        int l = rect[0];
+        int t = rect[1];
+        int w = rect[2];
+        int h = rect[3];
+        switch (rotation) {
+            case 0:
+                return;
+            case 90:
+                rect[0] = t;
+                rect[1] = height - l - w;
+                rect[2] = h;
+                rect[3] = w;
+                return;
+            case 180:
+                rect[0] = width - l - w;
+                rect[1] = height - t - h;
+                return;
+            case 270:
+                rect[0] = width - t - h;
+                rect[1] = l;
+                rect[2] = h;
+                rect[3] = w;
+                return;
+            default:
+                throw new IllegalArgumentException("Rotation must be 0, 90, 180 or 270: " + rotation);
+        }
+    }
+
+    /**
+     * @return whether width and height trade places under {@code rotation}
+     */
+    public static boolean isSideways(int rotation) {
+        switch (rotation) {
+            case 0:
+            case 180:
+                return false;
+            case 90:
+            case 270:
+                return true;
+            default:
+                throw new IllegalArgumentException("Rotation must be 0, 90, 180 or 270: " + rotation);
+        }
+    }
+
+    private static int checkFactor(int factor) {
+        if (factor < 1) {
+            throw new IllegalArgumentException("Subsampling factor must be positive: " + factor);
+        }
+        return factor;
+    }
+
+    public int getRotation() {
+        return rotation;
+    }
+
+    public int getFactor() {
+        return factor;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        copyRow(y, row, 0);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+        int area = width * height;
+        byte[] matrix = matrixBuffer != null && matrixBuffer.length >= area ? matrixBuffer : new byte[area];
+        if (!isSideways(rotation)) {
+            for (int y = 0; y < height; y++) {
+                copyRow(y, matrix, y * width);
+            }
+            return matrix;
+        }
+        // An output column is a data row here: read the Y plane in order and scatter the writes,
+        // which is much kinder to the cache than reading down data columns.
+        byte[] yuv = yuvData;
+        int stride = yStride;
+        for (int x = 0; x < width; x++) {
+            int index = origin + x * xStride;
+            for (int out = x; out < area; out += width, index += stride) {
+                matrix[out] = yuv[index];
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Renders this source as opaque grey ARGB pixels, {@link #getWidth()} by {@link #getHeight()},
+     * so a view can show what the decoder sees, upright and at the decoder's resolution.
+     *
+     * @param pixels reused when large enough, may be null
+     */
+    public int[] renderThumbnail(int[] pixels) {
+        int width = getWidth();
+        int height = getHeight();
+        int area = width * height;
+        int[] out = pixels != null && pixels.length >= area ? pixels : new int[area];
+        byte[] yuv = yuvData;
+        if (!isSideways(rotation)) {
+            for (int y = 0; y < height; y++) {
+                int index = origin + y * yStride;
+                for (int x = y * width, end = x + width; x < end; x++, index += xStride) {
+                    out[x] = 0xFF000000 | ((yuv[index] & 0xff) * 0x00010101);
+                }
+            }
+            return out;
+        }
+        // Same access order as getMatrix(): read data rows, scatter down output columns.
+        int stride = yStride;
+        for (int x = 0; x < width; x++) {
+            int index = origin + x * xStride;
+            for (int o = x; o < area; o += width, index += stride) {
+                out[o] = 0xFF000000 | ((yuv[index] & 0xff) * 0x00010101);
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        int[] rect = {left * factor, top * factor, width * factor, height * factor};
+        toDataRect(rotation, rectWidth, rectHeight, rect);
+        return new RotatedLuminanceSource(yuvData, dataWidth, dataHeight, this.left + rect[0], this.top + rect[1],
+                rect[2], rect[3], rotation, factor, null);
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        return new RotatedLuminanceSource(yuvData, dataWidth, dataHeight, left, top, rectWidth, rectHeight,
+                (rotation + 270) % 360, factor, null);
+    }
+
+    private void copyRow(int y, byte[] out, int outOffset) {
+        byte[] yuv = yuvData;
+        int index = origin + y * yStride;
+        int stride = xStride;
+        int end = outOffset + getWidth();
+        for (int x = outOffset; x < end; x++, index += stride) {
+            out[x] = yuv[index];
+        }
+    }
+}
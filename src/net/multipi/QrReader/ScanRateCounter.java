@@ -0,0 +1,51 @@
+package net.multipi.QrReader;
+
+/**
+ * Counts events over a sliding one-minute window, e.g. new codes found in batch mode. Keeps the
+ * timestamps of the last {@code capacity} events, so the reported rate saturates at
+ * {@code capacity} per minute.
+ */
+public final class ScanRateCounter {
+
+    private static final long WINDOW_MILLIS = 60 * 1000L;
+
+    private final long[] timestamps;
+    private int next;
+    private int count;
+    private long total;
+
+    public ScanRateCounter(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        timestamps = new long[capacity];
+    }
+
+    public synchronized void record(long now) {
+        timestamps[next] = now;
+        next = (next + 1) % timestamps.length;
+        if (count < timestamps.length) {
+            count++;
+        }
+        total++;
+    }
+
+    /**
+     * @return number of events within the minute before {@code now}
+     */
+    public synchronized int getPerMinute(long now) {
+        int inWindow = 0;
+        for (int i = 0, index = next; i < count; i++) {
+            index = index == 0 ? timestamps.length - 1 : index - 1;
+            if (now - timestamps[index] >= WINDOW_MILLIS) {
+                break;
+            }
+            inWindow++;
+        }
+        return inWindow;
+    }
+
+    public synchronized long getTotal() {
+        return total;
+    }
+}
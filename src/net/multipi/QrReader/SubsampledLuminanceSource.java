@@ -0,0 +1,96 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A reduced-resolution view of a rectangle of a planar YUV frame. Every {@code factor}-th pixel of
+ * every {@code factor}-th row is sampled, the same way
+ * {@link PlanarYUVLuminanceSource#renderThumbnail()} does, so a 2x view binarizes a quarter of the
+ * pixels. Coordinates reported for this source must be multiplied by {@link #getFactor()} to get
+ * back to the full-resolution rectangle.
+ */
+public final class SubsampledLuminanceSource extends LuminanceSource {
+
+    private final byte[] yuvData;
+    private final int dataWidth;
+    private final int dataHeight;
+    private final int left;
+    private final int top;
+    private final int factor;
+    private final byte[] matrixBuffer;
+
+    /**
+     * @param left         left edge of the sampled rectangle, in full-resolution data coordinates
+     * @param top          top edge of the sampled rectangle, in full-resolution data coordinates
+     * @param width        width of the sampled rectangle at full resolution
+     * @param height       height of the sampled rectangle at full resolution
+     * @param matrixBuffer reused by {@link #getMatrix()} when large enough, may be null
+     */
+    public SubsampledLuminanceSource(byte[] yuvData, int dataWidth, int dataHeight,
+                                     int left, int top, int width, int height, int factor,
+                                     byte[] matrixBuffer) {
+        super(width / factor, height / factor);
+        if (factor < 1) {
+            throw new IllegalArgumentException("Subsampling factor must be positive: " + factor);
+        }
+        if (left + width > dataWidth || top + height > dataHeight) {
+            throw new IllegalArgumentException("Crop rectangle does not fit within image data.");
+        }
+        this.yuvData = yuvData;
+        this.dataWidth = dataWidth;
+        this.dataHeight = dataHeight;
+        this.left = left;
+        this.top = top;
+        this.factor = factor;
+        this.matrixBuffer = matrixBuffer;
+    }
+
+    public int getFactor() {
+        return factor;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        sampleRow(y, row, 0);
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+        int area = width * height;
+        byte[] matrix = matrixBuffer != null && matrixBuffer.length >= area ? matrixBuffer : new byte[area];
+        for (int y = 0; y < height; y++) {
+            sampleRow(y, matrix, y * width);
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isCropSupported() {
+        return true;
+    }
+
+    @Override
+    public LuminanceSource crop(int left, int top, int width, int height) {
+        return new SubsampledLuminanceSource(yuvData, dataWidth, dataHeight,
+                this.left + left * factor, this.top + top * factor, width * factor, height * factor, factor, null);
+    }
+
+    private void sampleRow(int y, byte[] out, int outOffset) {
+        byte[] yuv = yuvData;
+        int inputOffset = (top + y * factor) * dataWidth + left;
+        int width = getWidth();
+        for (int x = 0; x < width; x++, inputOffset += factor) {
+            out[outOffset + x] = yuv[inputOffset];
+        }
+    }
+}
@@ -0,0 +1,457 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decodes a luminance source as a grid of overlapping tiles, in parallel. A tile is a
+ * {@link LuminanceSource#crop} view, so no pixels are copied up front, and a small code takes up
+ * a larger part of its tile than of the whole rect, which the binarizer and the finder pattern
+ * search both favor. Neighboring tiles share {@code overlap} of their size, so a code up to that
+ * size is whole in at least one tile.
+ *
+ * The calling thread hands all tiles but the first to {@code executor}, so a pool of cores - 1
+ * threads keeps every core busy, and decodes the first tile itself. It then takes back any tile no
+ * pool thread has started yet rather than wait for a busy pool to get to it; each tile is claimed
+ * once, by whichever thread gets to it first. {@link #decode} stops at the first hit: tiles
+ * that have not started are skipped, and tiles being decoded give up at their next finder pattern.
+ * {@link #decodeAll} decodes every tile and merges results for the same code found in several tiles.
+ * Both return once no tile is being decoded any more, so the frame can be reused right away, even
+ * when a tile fails; the first failure is then rethrown to the caller.
+ *
+ * Each thread has its own reader, set up once from the {@link DecodeProfile}, and its own binarizer
+ * buffers, which tiles of one size keep reusing. One instance may be shared by several callers.
+ */
+public final class TiledDecoder {
+
+    /** Thrown from the point callback to abandon a tile whose result is no longer needed. */
+    private static final RuntimeException TILE_CANCELLED = new RuntimeException("Tile cancelled") {
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    };
+
+    private final Executor executor;
+    private final int columns;
+    private final int rows;
+    private final float overlap;
+    private final DecodeProfile profile;
+    private final AtomicLong frameCount = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong tileCount = new AtomicLong();
+    private final AtomicLong skippedTileCount = new AtomicLong();
+    private final AtomicLong abandonedTileCount = new AtomicLong();
+
+    private final ThreadLocal<TileReader> readers = new ThreadLocal<TileReader>() {
+        @Override
+        protected TileReader initialValue() {
+            return new TileReader(profile);
+        }
+    };
+
+    /**
+     * @param executor runs all tiles but the first; should have at most one thread per spare core
+     * @param overlap  fraction of a tile's width and height shared with each neighbor, in [0, 1)
+     */
+    public TiledDecoder(Executor executor, int columns, int rows, float overlap, DecodeProfile profile) {
+        if (columns < 1 || rows < 1) {
+            throw new IllegalArgumentException("Tile grid must be at least 1x1: " + columns + "x" + rows);
+        }
+        if (overlap < 0 || overlap >= 1) {
+            throw new IllegalArgumentException("Overlap must be in [0, 1): " + overlap);
+        }
+        this.executor = executor;
+        this.columns = columns;
+        this.rows = rows;
+        this.overlap = overlap;
+        this.profile = profile;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @param source must support cropping
+     * @return the first code found in any tile, with result points in {@code source} coordinates,
+     * or null if no tile decodes
+     */
+    public Result decode(LuminanceSource source) {
+        return decode(source, columns, rows);
+    }
+
+    /**
+     * Like {@link #decode(LuminanceSource)}, with a grid of {@code columns} by {@code rows} tiles
+     * for this call only.
+     */
+    public Result decode(LuminanceSource source, int columns, int rows) {
+        Job job = run(source, columns, rows, true);
+        Result result = job.winner.get();
+        if (result != null) {
+            hitCount.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * @param source must support cropping
+     * @return every code found in any tile, one result per code, with result points in
+     * {@code source} coordinates
+     */
+    public Result[] decodeAll(LuminanceSource source) {
+        return decodeAll(source, columns, rows);
+    }
+
+    /**
+     * Like {@link #decodeAll(LuminanceSource)}, with a grid of {@code columns} by {@code rows} tiles
+     * for this call only.
+     */
+    public Result[] decodeAll(LuminanceSource source, int columns, int rows) {
+        Job job = run(source, columns, rows, false);
+        List<Result> merged = new ArrayList<Result>();
+        for (Result result : job.results) {
+            if (result != null) {
+                merge(merged, result);
+            }
+        }
+        if (!merged.isEmpty()) {
+            hitCount.incrementAndGet();
+        }
+        return merged.toArray(new Result[merged.size()]);
+    }
+
+    /**
+     * Adds {@code result} to {@code results} unless it already holds the same code at an
+     * overlapping position; of the two, the one with more result points is kept.
+     */
+    public static void merge(List<Result> results, Result result) {
+        for (int i = 0; i < results.size(); i++) {
+            Result other = results.get(i);
+            if (other.getText().equals(result.getText()) && overlaps(other, result)) {
+                if (pointCount(result) > pointCount(other)) {
+                    results.set(i, result);
+                }
+                return;
+            }
+        }
+        results.add(result);
+    }
+
+    /**
+     * @return the fewest tiles in a row that cover {@code size} pixels with tiles of at most
+     * {@code maxTileSize}, neighbors sharing {@code overlap} of a tile
+     */
+    public static int countFor(int size, int maxTileSize, float overlap) {
+        if (maxTileSize < 1) {
+            throw new IllegalArgumentException("Tile size must be positive: " + maxTileSize);
+        }
+        int count = 1;
+        while (tileSize(size, count, overlap) > maxTileSize) {
+            count++;
+        }
+        return count;
+    }
+
+    public long getFrameCount() {
+        return frameCount.get();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return tiles decoded so far, not counting skipped ones
+     */
+    public long getTileCount() {
+        return tileCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return columns + "x" + rows + " tiles, " + hitCount.get() + " hits in " + frameCount.get() + " frames, " +
+                tileCount.get() + " tiles decoded, " + skippedTileCount.get() + " skipped, " +
+                abandonedTileCount.get() + " abandoned";
+    }
+
+    private Job run(LuminanceSource source, int columns, int rows, boolean firstHit) {
+        if (columns < 1 || rows < 1) {
+            throw new IllegalArgumentException("Tile grid must be at least 1x1: " + columns + "x" + rows);
+        }
+        frameCount.incrementAndGet();
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int tileWidth = tileSize(width, columns, overlap);
+        int tileHeight = tileSize(height, rows, overlap);
+        Job job = new Job(columns * rows, firstHit);
+        int index = 0;
+        for (int row = 0; row < rows; row++) {
+            int top = rows == 1 ? 0 : row * (height - tileHeight) / (rows - 1);
+            for (int column = 0; column < columns; column++) {
+                int left = columns == 1 ? 0 : column * (width - tileWidth) / (columns - 1);
+                job.tiles[index] = new Tile(job, index, source, left, top, tileWidth, tileHeight);
+                index++;
+            }
+        }
+        boolean handedOut = false;
+        try {
+            for (int i = 1; i < job.tiles.length; i++) {
+                try {
+                    executor.execute(job.tiles[i]);
+                } catch (RejectedExecutionException e) {
+                    // The pool is shutting down; the latch still needs every tile.
+                    job.tiles[i].run();
+                }
+            }
+            job.tiles[0].run();
+            // Work through the queue from its far end, where the pool threads get to last.
+            for (int i = job.tiles.length - 1; i > 0; i--) {
+                job.tiles[i].run();
+            }
+            handedOut = true;
+        } finally {
+            if (!handedOut) {
+                // Tiles that never got to a thread must not hold up the wait below.
+                for (Tile tile : job.tiles) {
+                    tile.skip();
+                }
+            }
+            // Even when failing, the tiles still read the frame, so wait for them.
+            awaitDone(job);
+        }
+        RuntimeException failure = job.failure.get();
+        if (failure != null) {
+            throw failure;
+        }
+        return job;
+    }
+
+    private static void awaitDone(Job job) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                job.done.await();
+                break;
+            } catch (InterruptedException e) {
+                // The tiles still read the frame, so wait for them regardless.
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the size of {@code count} tiles that cover {@code size} with neighbors sharing
+     * {@code overlap} of a tile
+     */
+    private static int tileSize(int size, int count, float overlap) {
+        return Math.min(size, (int) Math.ceil(size / (count - (count - 1) * overlap)));
+    }
+
+    private static boolean overlaps(Result a, Result b) {
+        ResultPoint[] pa = a.getResultPoints();
+        ResultPoint[] pb = b.getResultPoints();
+        if (pa == null || pb == null || pa.length == 0 || pb.length == 0) {
+            return true;
+        }
+        return minX(pa) <= maxX(pb) && minX(pb) <= maxX(pa) && minY(pa) <= maxY(pb) && minY(pb) <= maxY(pa);
+    }
+
+    private static int pointCount(Result result) {
+        return result.getResultPoints() == null ? 0 : result.getResultPoints().length;
+    }
+
+    private static float minX(ResultPoint[] points) {
+        float min = Float.MAX_VALUE;
+        for (ResultPoint point : points) {
+            min = Math.min(min, point.getX());
+        }
+        return min;
+    }
+
+    private static float maxX(ResultPoint[] points) {
+        float max = -Float.MAX_VALUE;
+        for (ResultPoint point : points) {
+            max = Math.max(max, point.getX());
+        }
+        return max;
+    }
+
+    private static float minY(ResultPoint[] points) {
+        float min = Float.MAX_VALUE;
+        for (ResultPoint point : points) {
+            min = Math.min(min, point.getY());
+        }
+        return min;
+    }
+
+    private static float maxY(ResultPoint[] points) {
+        float max = -Float.MAX_VALUE;
+        for (ResultPoint point : points) {
+            max = Math.max(max, point.getY());
+        }
+        return max;
+    }
+
+    /**
+     * One call's tiles and their outcome.
+     */
+    private static final class Job {
+
+        final Tile[] tiles;
+        final Result[] results;
+        final boolean firstHit;
+        final AtomicReference<Result> winner = new AtomicReference<Result>();
+        /** The first tile that failed, rethrown to the caller once every tile is done. */
+        final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+        final CountDownLatch done;
+
+        Job(int tileCount, boolean firstHit) {
+            tiles = new Tile[tileCount];
+            results = new Result[tileCount];
+            this.firstHit = firstHit;
+            done = new CountDownLatch(tileCount);
+        }
+
+        boolean isCancelled() {
+            return firstHit && winner.get() != null;
+        }
+    }
+
+    private final class Tile implements Runnable {
+
+        private final Job job;
+        private final int index;
+        private final LuminanceSource source;
+        private final int left;
+        private final int top;
+        private final int width;
+        private final int height;
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Tile(Job job, int index, LuminanceSource source, int left, int top, int width, int height) {
+            this.job = job;
+            this.index = index;
+            this.source = source;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                if (job.isCancelled()) {
+                    skippedTileCount.incrementAndGet();
+                    return;
+                }
+                tileCount.incrementAndGet();
+                Result result = readers.get().decode(job, source.crop(left, top, width, height));
+                if (result == null) {
+                    return;
+                }
+                result = translate(result, left, top);
+                job.results[index] = result;
+                if (job.firstHit) {
+                    job.winner.compareAndSet(null, result);
+                }
+            } catch (RuntimeException e) {
+                if (e != TILE_CANCELLED) {
+                    job.failure.compareAndSet(null, e);
+                    return;
+                }
+                abandonedTileCount.incrementAndGet();
+            } finally {
+                job.done.countDown();
+            }
+        }
+
+        /**
+         * Counts the tile as done without decoding it, unless it has already started.
+         */
+        void skip() {
+            if (claimed.compareAndSet(false, true)) {
+                skippedTileCount.incrementAndGet();
+                job.done.countDown();
+            }
+        }
+    }
+
+    private static Result translate(Result result, int left, int top) {
+        ResultPoint[] points = result.getResultPoints();
+        if (points == null || (left == 0 && top == 0)) {
+            return result;
+        }
+        ResultPoint[] moved = new ResultPoint[points.length];
+        for (int i = 0; i < points.length; i++) {
+            moved[i] = new ResultPoint(points[i].getX() + left, points[i].getY() + top);
+        }
+        Result translated = new Result(result.getText(), result.getRawBytes(), moved,
+                result.getBarcodeFormat(), result.getTimestamp());
+        translated.putAllMetadata(result.getResultMetadata());
+        return translated;
+    }
+
+    /**
+     * A thread's reader. Its point callback abandons the tile once the job needs no more results.
+     */
+    private static final class TileReader implements ResultPointCallback {
+
+        private final MultiFormatReader reader = new MultiFormatReader();
+        private final ReusableHybridBinarizer.Scratch scratch = new ReusableHybridBinarizer.Scratch();
+        private Job job;
+
+        TileReader(DecodeProfile profile) {
+            Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(profile.getHints());
+            hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, this);
+            reader.setHints(hints);
+        }
+
+        Result decode(Job job, LuminanceSource tile) {
+            this.job = job;
+            try {
+                return reader.decodeWithState(new BinaryBitmap(new ReusableHybridBinarizer(tile, scratch)));
+            } catch (ReaderException re) {
+                return null;
+            } finally {
+                reader.reset();
+                this.job = null;
+            }
+        }
+
+        @Override
+        public void foundPossibleResultPoint(ResultPoint point) {
+            if (job != null && job.isCancelled()) {
+                throw TILE_CANCELLED;
+            }
+        }
+    }
+}
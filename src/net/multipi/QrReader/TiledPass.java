@@ -0,0 +1,57 @@
+package net.multipi.QrReader;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.Result;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The last resort of a {@link DecodeContext}: the whole framing rect decoded once more as tiles by
+ * a {@link TiledDecoder}, light-on-dark too if the profile reads such codes. The decoder may be
+ * shared by every context; a pass is not thread-safe, like the context that owns it.
+ */
+final class TiledPass {
+
+    private final TiledDecoder decoder;
+    private final DecodeProfile profile;
+
+    TiledPass(TiledDecoder decoder, DecodeProfile profile) {
+        this.decoder = decoder;
+        this.profile = profile;
+    }
+
+    /**
+     * @param source       the full-resolution framing rect
+     * @param matrixBuffer buffer the inverted source may use for its matrix
+     * @param metrics      receives the time of the pass, or null
+     * @return the first code found in any tile, with result points relative to {@code source}
+     */
+    Result decode(LuminanceSource source, byte[] matrixBuffer, DecodeMetrics metrics) {
+        long start = System.nanoTime();
+        Result result = decoder.decode(source);
+        if (result == null && profile.isAlsoInverted()) {
+            result = decoder.decode(new InvertedLuminanceSource(source, matrixBuffer));
+        }
+        if (metrics != null) {
+            metrics.record(DecodeMetrics.Stage.TILED_DECODE, System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    /**
+     * @return {@code results} plus the codes only found in tiles of {@code source}
+     */
+    Result[] addAll(Result[] results, LuminanceSource source) {
+        Result[] tileResults = decoder.decodeAll(source);
+        if (tileResults.length == 0) {
+            return results;
+        }
+        List<Result> merged = new ArrayList<Result>(Arrays.asList(results));
+        for (Result result : tileResults) {
+            TiledDecoder.merge(merged, result);
+        }
+        return merged.toArray(new Result[merged.size()]);
+    }
+}
@@ -20,6 +20,7 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.*;
 import android.hardware.Camera;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.Display;
@@ -27,14 +28,14 @@ import android.view.View;
 import android.view.WindowManager;
 import com.google.zxing.ResultPoint;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This view is overlaid on top of the camera preview. It adds the viewfinder rectangle and partial
- * transparency outside it, as well as the laser scanner animation and result points.
+ * transparency outside it, as well as the result points and, optionally, a {@link DecoderOverlay}.
+ * It is only redrawn while points are fading out and when new points or a new overlay picture
+ * arrive, not at a fixed rate.
  *
  * @author dswitkin@google.com (Daniel Switkin)
  */
@@ -44,25 +45,39 @@ public final class ViewfinderView extends View {
   private static final int CURRENT_POINT_OPACITY = 0xA0;
   private static final int MAX_RESULT_POINTS = 20;
   private static final int POINT_SIZE = 6;
+  private static final long POINT_LIFETIME = 2 * ANIMATION_DELAY;
+  private static final int OVERLAY_MARGIN = 8;
+  private static final int OVERLAY_WIDTH_DIVISOR = 3;
 
-    private static final int MIN_FRAME_WIDTH = 240;
-    private static final int MIN_FRAME_HEIGHT = 240;
-    private static final int MAX_FRAME_WIDTH = 960; // = 1920/2
-    private static final int MAX_FRAME_HEIGHT = 540; // = 1080/2
-
-    private static final int MIN_PREVIEW_PIXELS = 470 * 320; // normal screen
-    private static final int MAX_PREVIEW_PIXELS = 1280 * 800;
-
-  private Camera camera;
   private final Paint paint;
   private Bitmap resultBitmap;
   private final int maskColor;
   private final int resultColor;
   private final int resultPointColor;
-  private List<ResultPoint> possibleResultPoints;
-  private List<ResultPoint> lastPossibleResultPoints;
+  private final ResultPointRing possibleResultPoints;
+  // Snapshot buffers for onDraw(), only touched on the UI thread.
+  private final float[] pointXs;
+  private final float[] pointYs;
+  private final float[] pointAges;
+  private final AtomicBoolean redrawPosted = new AtomicBoolean();
+  private volatile DecoderOverlay decoderOverlay;
+  // Overlay picture state, only touched on the UI thread.
+  private Bitmap overlayBitmap;
+  private long overlayVersion;
+  private final Rect overlayRect = new Rect();
+  private final Rect overlayRoi = new Rect();
+  private final DecoderOverlay.Sink overlaySink = new DecoderOverlay.Sink() {
+    @Override
+    public void draw(int[] pixels, int width, int height, int[] roi) {
+      if (overlayBitmap == null || overlayBitmap.getWidth() != width || overlayBitmap.getHeight() != height) {
+        overlayBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+      }
+      overlayBitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+      overlayRoi.set(roi[0], roi[1], roi[0] + roi[2], roi[1] + roi[3]);
+    }
+  };
     private String TAG = ViewfinderView.class.getSimpleName();
-    private Rect framingRect,framingRectInPreview;
+    private volatile Geometry geometry;
 
   // This constructor is used when the class is built from an XML resource.
   public ViewfinderView(Context context, AttributeSet attrs) {
@@ -74,17 +89,73 @@ public final class ViewfinderView extends View {
     maskColor = resources.getColor(R.color.viewfinder_mask);
     resultColor = resources.getColor(R.color.result_view);
     resultPointColor = resources.getColor(R.color.possible_result_points);
-    possibleResultPoints = new ArrayList<ResultPoint>(5);
-    lastPossibleResultPoints = null;
+    possibleResultPoints = new ResultPointRing(MAX_RESULT_POINTS);
+    pointXs = new float[MAX_RESULT_POINTS];
+    pointYs = new float[MAX_RESULT_POINTS];
+    pointAges = new float[MAX_RESULT_POINTS];
+  }
+
+  /**
+   * Computes the scanning geometry for a newly opened camera, or clears it when {@code camera} is null.
+   * The camera is queried only here; everything else reads the snapshot.
+   *
+   * @param rotation clockwise rotation of the preview on screen, as passed to
+   *                 {@code Camera.setDisplayOrientation}
+   */
+  public void setCamera(Camera camera, int rotation) {
+    if (camera == null) {
+      geometry = null;
+      return;
+    }
+    Point screenResolution = getScreenResolution();
+    Point previewSize = findBestPreviewSizeValue(camera.getParameters(), screenResolution);
+    PreviewGeometry values = PreviewGeometry.create(previewSize.x, previewSize.y,
+        screenResolution.x, screenResolution.y, rotation);
+    Log.d(TAG, "Calculated geometry: " + values);
+    geometry = new Geometry(values);
+  }
+
+  /**
+   * @return the current geometry snapshot, or null if no camera is set
+   */
+  public PreviewGeometry getGeometry() {
+    Geometry current = geometry;
+    return current == null ? null : current.values;
   }
 
-  public void setCamera(Camera camera) {
-    this.camera = camera;
+  /**
+   * @param overlay picture of what the decoder sees to show in the top left corner, or null for none
+   */
+  public void setDecoderOverlay(DecoderOverlay overlay) {
+    decoderOverlay = overlay;
+    overlayBitmap = null;
+    overlayVersion = 0;
+  }
+
+  /**
+   * Updates the decoder overlay, if any, with a frame {@code context} has just decoded, and
+   * redraws the view if the picture changed. Call from the decode worker before the frame buffer
+   * is reused.
+   */
+  public void showDecodedFrame(byte[] yuvData, DecodeContext context) {
+    DecoderOverlay overlay = decoderOverlay;
+    Geometry current = geometry;
+    if (overlay == null || current == null) {
+      return;
+    }
+    if (overlay.update(yuvData, current.values, context, possibleResultPoints.getWriteCount())) {
+      postInvalidate();
+    }
   }
 
   @Override
   public void onDraw(Canvas canvas) {
-    Rect frame = getFramingRect();
+    redrawPosted.set(false);
+    Geometry current = geometry;
+    if (current == null) {
+      return;
+    }
+    Rect frame = current.framingRect;
     int width = canvas.getWidth();
     int height = canvas.getHeight();
 
@@ -101,135 +172,90 @@ public final class ViewfinderView extends View {
       canvas.drawBitmap(resultBitmap, null, frame, paint);
     } else {
 
-      Rect previewFrame = getFramingRectInPreview();
-      float scaleX = frame.width() / (float) previewFrame.width();
-      float scaleY = frame.height() / (float) previewFrame.height();
+      // Points are upright, relative to the framing rect in preview pixels.
+      float scaleX = frame.width() / (float) current.values.getShownFramingWidth();
+      float scaleY = frame.height() / (float) current.values.getShownFramingHeight();
 
-      List<ResultPoint> currentPossible = possibleResultPoints;
-      List<ResultPoint> currentLast = lastPossibleResultPoints;
       int frameLeft = frame.left;
       int frameTop = frame.top;
-      if (currentPossible.isEmpty()) {
-        lastPossibleResultPoints = null;
-      } else {
-        possibleResultPoints = new ArrayList<ResultPoint>(5);
-        lastPossibleResultPoints = currentPossible;
-        paint.setAlpha(CURRENT_POINT_OPACITY);
-        paint.setColor(resultPointColor);
-        synchronized (currentPossible) {
-          for (ResultPoint point : currentPossible) {
-            canvas.drawCircle(frameLeft + (int) (point.getX() * scaleX),
-                              frameTop + (int) (point.getY() * scaleY),
-                              POINT_SIZE, paint);
-          }
-        }
-      }
-      if (currentLast != null) {
-        paint.setAlpha(CURRENT_POINT_OPACITY / 2);
-        paint.setColor(resultPointColor);
-        synchronized (currentLast) {
-          float radius = POINT_SIZE / 2.0f;
-          for (ResultPoint point : currentLast) {
-            canvas.drawCircle(frameLeft + (int) (point.getX() * scaleX),
-                              frameTop + (int) (point.getY() * scaleY),
-                              radius, paint);
-          }
-        }
+      // Fresh points are drawn full size, older ones shrink to half and fade out.
+      int count = possibleResultPoints.snapshot(SystemClock.uptimeMillis(), POINT_LIFETIME,
+                                                pointXs, pointYs, pointAges);
+      paint.setColor(resultPointColor);
+      for (int i = 0; i < count; i++) {
+        float age = pointAges[i];
+        paint.setAlpha((int) (CURRENT_POINT_OPACITY * (1.0f - age / 2)));
+        canvas.drawCircle(frameLeft + (int) (pointXs[i] * scaleX),
+                          frameTop + (int) (pointYs[i] * scaleY),
+                          age < 0.5f ? POINT_SIZE : POINT_SIZE / 2.0f, paint);
       }
 
-      // Request another update at the animation interval, but only repaint the laser line,
-      // not the entire viewfinder mask.
-      postInvalidateDelayed(ANIMATION_DELAY,
-                            frame.left - POINT_SIZE,
-                            frame.top - POINT_SIZE,
-                            frame.right + POINT_SIZE,
-                            frame.bottom + POINT_SIZE);
+      // While points are fading, repaint the framing rect at the animation interval, but not the
+      // entire viewfinder mask. Once they are gone, only a new point redraws it.
+      if (count > 0) {
+        postInvalidateDelayed(ANIMATION_DELAY,
+                              frame.left - POINT_SIZE,
+                              frame.top - POINT_SIZE,
+                              frame.right + POINT_SIZE,
+                              frame.bottom + POINT_SIZE);
+      }
     }
+
+    drawDecoderOverlay(canvas, frame);
   }
 
+  /**
+   * Safe to call from any thread.
+   */
   public void addPossibleResultPoint(ResultPoint point) {
-    List<ResultPoint> points = possibleResultPoints;
-    synchronized (points) {
-      points.add(point);
-      int size = points.size();
-      if (size > MAX_RESULT_POINTS) {
-        // trim it
-        points.subList(0, size - MAX_RESULT_POINTS / 2).clear();
-      }
+    possibleResultPoints.add(point.getX(), point.getY(), SystemClock.uptimeMillis());
+    Geometry current = geometry;
+    // One redraw per batch of points: the flag is cleared when it has been drawn.
+    if (current != null && redrawPosted.compareAndSet(false, true)) {
+      Rect frame = current.framingRect;
+      postInvalidate(frame.left - POINT_SIZE,
+                     frame.top - POINT_SIZE,
+                     frame.right + POINT_SIZE,
+                     frame.bottom + POINT_SIZE);
     }
   }
 
-    public synchronized Rect getFramingRectInPreview() {
-        if (framingRectInPreview == null) {
-            if (camera==null) throw new IllegalStateException("Camera is null!");
-            Rect framingRect = getFramingRect();
-            if (framingRect == null) {
-                return null;
-            }
-            Rect rect = new Rect(framingRect);
-            Point cameraResolution = findBestPreviewSizeValue(camera.getParameters());
-            Point screenResolution = getScreenResolution();
-            if (cameraResolution == null || screenResolution == null) {
-                // Called early, before init even finished
-                return null;
-            }
-            rect.left = rect.left * cameraResolution.x / screenResolution.x;
-            rect.right = rect.right * cameraResolution.x / screenResolution.x;
-            rect.top = rect.top * cameraResolution.y / screenResolution.y;
-            rect.bottom = rect.bottom * cameraResolution.y / screenResolution.y;
-            framingRectInPreview = rect;
-        }
-        return framingRectInPreview;
-    }
-
-    public synchronized Rect getFramingRect() {
-        if (framingRect == null) {
-            Point screenResolution = getScreenResolution();
-            if (screenResolution == null) {
-                // Called early, before init even finished
-                return null;
-            }
-
-            int width = findDesiredDimensionInRange(screenResolution.x, MIN_FRAME_WIDTH, MAX_FRAME_WIDTH);
-            int height = findDesiredDimensionInRange(screenResolution.y, MIN_FRAME_HEIGHT, MAX_FRAME_HEIGHT);
-
-            int leftOffset = (screenResolution.x - width) / 2;
-            int topOffset = (screenResolution.y - height) / 2;
-            framingRect = new Rect(leftOffset, topOffset, leftOffset + width, topOffset + height);
-            Log.d(TAG, "Calculated framing rect: " + framingRect);
-        }
-        return framingRect;
+  /**
+   * Draws the decoder overlay picture in the top left corner, a third as wide as the framing rect,
+   * with the part the decoder last looked at outlined.
+   */
+  private void drawDecoderOverlay(Canvas canvas, Rect frame) {
+    DecoderOverlay overlay = decoderOverlay;
+    if (overlay == null) {
+      return;
     }
-
-
-    private static int findDesiredDimensionInRange(int resolution, int hardMin, int hardMax) {
-        int dim = resolution / 2; // Target 50% of each dimension
-        if (dim < hardMin) {
-            return hardMin;
-        }
-        if (dim > hardMax) {
-            return hardMax;
-        }
-        return dim;
+    overlayVersion = overlay.drawTo(overlayVersion, overlaySink);
+    Bitmap bitmap = overlayBitmap;
+    if (bitmap == null) {
+      return;
     }
+    float scale = frame.width() / (float) (OVERLAY_WIDTH_DIVISOR * bitmap.getWidth());
+    overlayRect.set(OVERLAY_MARGIN, OVERLAY_MARGIN,
+                    OVERLAY_MARGIN + (int) (bitmap.getWidth() * scale),
+                    OVERLAY_MARGIN + (int) (bitmap.getHeight() * scale));
+    paint.setAlpha(0xFF);
+    canvas.drawBitmap(bitmap, null, overlayRect, paint);
+    paint.setColor(resultPointColor);
+    paint.setStyle(Paint.Style.STROKE);
+    canvas.drawRect(overlayRect.left + overlayRoi.left * scale,
+                    overlayRect.top + overlayRoi.top * scale,
+                    overlayRect.left + overlayRoi.right * scale,
+                    overlayRect.top + overlayRoi.bottom * scale, paint);
+    paint.setStyle(Paint.Style.FILL);
+  }
 
     private Point getScreenResolution() {
         WindowManager manager = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
         Display display = manager.getDefaultDisplay();
-        int width = display.getWidth();
-        int height = display.getHeight();
-        // We're landscape-only, and have apparently seen issues with display thinking it's portrait
-        // when waking from sleep. If it's not landscape, assume it's mistaken and reverse them:
-        if (width < height) {
-            Log.i(TAG, "Display reports portrait orientation; assuming this is incorrect");
-            int temp = width;
-            width = height;
-            height = temp;
-        }
-        return new Point(width, height);
+        return new Point(display.getWidth(), display.getHeight());
     }
 
-    private Point findBestPreviewSizeValue(Camera.Parameters parameters) {
+    private Point findBestPreviewSizeValue(Camera.Parameters parameters, Point screenResolution) {
 
         List<Camera.Size> rawSupportedSizes = parameters.getSupportedPreviewSizes();
         if (rawSupportedSizes == null) {
@@ -238,67 +264,47 @@ public final class ViewfinderView extends View {
             return new Point(defaultSize.width, defaultSize.height);
         }
 
-        // Sort by size, descending
-        List<Camera.Size> supportedPreviewSizes = new ArrayList<Camera.Size>(rawSupportedSizes);
-        Collections.sort(supportedPreviewSizes, new Comparator<Camera.Size>() {
-            @Override
-            public int compare(Camera.Size a, Camera.Size b) {
-                int aPixels = a.height * a.width;
-                int bPixels = b.height * b.width;
-                if (bPixels < aPixels) {
-                    return -1;
-                }
-                if (bPixels > aPixels) {
-                    return 1;
-                }
-                return 0;
-            }
-        });
+        int[] sizes = new int[rawSupportedSizes.size() * 2];
+        for (int i = 0; i < rawSupportedSizes.size(); i++) {
+            Camera.Size supportedPreviewSize = rawSupportedSizes.get(i);
+            sizes[2 * i] = supportedPreviewSize.width;
+            sizes[2 * i + 1] = supportedPreviewSize.height;
+        }
 
         if (Log.isLoggable(TAG, Log.INFO)) {
             StringBuilder previewSizesString = new StringBuilder();
-            for (Camera.Size supportedPreviewSize : supportedPreviewSizes) {
+            for (Camera.Size supportedPreviewSize : rawSupportedSizes) {
                 previewSizesString.append(supportedPreviewSize.width).append('x')
                         .append(supportedPreviewSize.height).append(' ');
             }
             Log.i(TAG, "Supported preview sizes: " + previewSizesString);
         }
 
-        Point bestSize = null;
-        Point screenResolution = getScreenResolution();
-        float screenAspectRatio = (float) screenResolution.x / (float) screenResolution.y;
-
-        float diff = Float.POSITIVE_INFINITY;
-        for (Camera.Size supportedPreviewSize : supportedPreviewSizes) {
-            int realWidth = supportedPreviewSize.width;
-            int realHeight = supportedPreviewSize.height;
-            int pixels = realWidth * realHeight;
-            if (pixels < MIN_PREVIEW_PIXELS || pixels > MAX_PREVIEW_PIXELS) {
-                continue;
-            }
-            boolean isCandidatePortrait = realWidth < realHeight;
-            int maybeFlippedWidth = isCandidatePortrait ? realHeight : realWidth;
-            int maybeFlippedHeight = isCandidatePortrait ? realWidth : realHeight;
-            if (maybeFlippedWidth == screenResolution.x && maybeFlippedHeight == screenResolution.y) {
-                Point exactPoint = new Point(realWidth, realHeight);
-                Log.i(TAG, "Found preview size exactly matching screen size: " + exactPoint);
-                return exactPoint;
-            }
-            float aspectRatio = (float) maybeFlippedWidth / (float) maybeFlippedHeight;
-            float newDiff = Math.abs(aspectRatio - screenAspectRatio);
-            if (newDiff < diff) {
-                bestSize = new Point(realWidth, realHeight);
-                diff = newDiff;
-            }
-        }
-
-        if (bestSize == null) {
+        int best = PreviewGeometry.findBestPreviewSize(sizes, screenResolution.x, screenResolution.y);
+        if (best < 0) {
             Camera.Size defaultSize = parameters.getPreviewSize();
-            bestSize = new Point(defaultSize.width, defaultSize.height);
+            Point bestSize = new Point(defaultSize.width, defaultSize.height);
             Log.i(TAG, "No suitable preview sizes, using default: " + bestSize);
+            return bestSize;
         }
 
-        Log.i(TAG, "Found best approximate preview size: " + bestSize);
+        Point bestSize = new Point(sizes[best], sizes[best + 1]);
+        Log.i(TAG, "Found best preview size: " + bestSize);
         return bestSize;
     }
+
+    /**
+     * A {@link PreviewGeometry} with its framing rect converted once for drawing.
+     */
+    private static final class Geometry {
+
+        final PreviewGeometry values;
+        final Rect framingRect;
+
+        Geometry(PreviewGeometry values) {
+            this.values = values;
+            framingRect = new Rect(values.getFramingLeft(), values.getFramingTop(),
+                    values.getFramingRight(), values.getFramingBottom());
+        }
+    }
 }